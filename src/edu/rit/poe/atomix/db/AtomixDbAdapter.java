@@ -32,9 +32,9 @@ import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 import android.database.sqlite.SQLiteDatabase.CursorFactory;
 import edu.rit.poe.atomix.R;
-import edu.rit.poe.atomix.util.Point;
+import edu.rit.poe.atomix.levels.Level;
+import edu.rit.poe.atomix.levels.LevelManager;
 import java.util.Calendar;
-import java.util.Map;
 
 /**
  * The Atomix database adapter.
@@ -216,14 +216,15 @@ public class AtomixDbAdapter {
         game.setId( gameId );
         
         // insert the atom locations also
-        Map<Short, Point> atoms = game.getAtoms();
-        for ( Map.Entry<Short, Point> atom : atoms.entrySet() ) {
+        Level level = getLevel( game );
+        int[] atoms = game.getAtoms();
+        for ( int i = 0; i < atoms.length; i++ ) {
             values.clear();
             // populate the values of each atom
             values.put( Game.ATOM_GAME_ID_KEY, game.getId() );
-            values.put( Game.ATOM_MARKER_KEY, atom.getKey() );
-            values.put( Game.ATOM_X_KEY, atom.getValue().x );
-            values.put( Game.ATOM_Y_KEY, atom.getValue().y );
+            values.put( Game.ATOM_MARKER_KEY, level.getAtom( i ).getId() );
+            values.put( Game.ATOM_X_KEY, level.getX( atoms[ i ] ) );
+            values.put( Game.ATOM_Y_KEY, level.getY( atoms[ i ] ) );
             
             // insert each atom, disregard the row ID
             database.insert( ATOM_TABLE_NAME, null, values );
@@ -250,15 +251,17 @@ public class AtomixDbAdapter {
         }
         
         // update atom locations in the game
-        Map<Short, Point> atoms = game.getAtoms();
-        for ( Map.Entry<Short, Point> atom : atoms.entrySet() ) {
+        Level level = getLevel( game );
+        int[] atoms = game.getAtoms();
+        for ( int i = 0; i < atoms.length; i++ ) {
             values.clear();
             // populate the values of each atom
-            values.put( Game.ATOM_X_KEY, atom.getValue().x );
-            values.put( Game.ATOM_Y_KEY, atom.getValue().y );
+            values.put( Game.ATOM_X_KEY, level.getX( atoms[ i ] ) );
+            values.put( Game.ATOM_Y_KEY, level.getY( atoms[ i ] ) );
             
             where = Game.ATOM_GAME_ID_KEY + "=" + game.getId() + " AND "
-                    + Game.ATOM_MARKER_KEY + "=" + atom.getKey();
+                    + Game.ATOM_MARKER_KEY + "="
+                    + level.getAtom( i ).getId();
             if ( database.update(
                     ATOM_TABLE_NAME, values, where, null ) == 0 ) {
                 throw new SQLException( "Error saving atom." );
@@ -339,6 +342,8 @@ public class AtomixDbAdapter {
             
             // if we don't have any elements, ERROR
             if ( atomCursor.getCount() > 0 ) {
+                Level level = getLevel( game );
+                int[] atoms = new int[ level.getAtomCount() ];
                 
                 // populate atom locations
                 for ( int j = 0; j < atomCursor.getCount(); j++ ) {
@@ -350,11 +355,12 @@ public class AtomixDbAdapter {
                             atomCursor.getColumnIndex( Game.ATOM_X_KEY ) );
                     int y = atomCursor.getInt(
                             atomCursor.getColumnIndex( Game.ATOM_Y_KEY ) );
-                    Point point = new Point( x, y );
                     
                     // add the atom location
-                    game.getAtoms().put( atomId, point );
+                    atoms[ level.getAtomById( atomId ).getIndex() ] =
+                            level.cell( x, y );
                 }
+                game.setAtoms( atoms );
             } else {
                 // this should *never* happen
                 assert false;
@@ -415,6 +421,18 @@ public class AtomixDbAdapter {
                 null, null, null, null );
     }
     
+    /**
+     * Returns the level of the specified game, which is needed to translate
+     * the game's atom squares to and from the rows of the atom table.
+     * 
+     * @param   game    the game
+     * 
+     * @return          the game's level
+     */
+    private static Level getLevel( Game game ) {
+        return LevelManager.getInstance().getLevel( game.getLevel() );
+    }
+    
     /**
      * Returns a <tt>Cursor</tt> specifically designed for the Main Menu to view
      * all saved users and their latest game.
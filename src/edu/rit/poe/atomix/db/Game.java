@@ -23,11 +23,8 @@
 
 package edu.rit.poe.atomix.db;
 
-import edu.rit.poe.atomix.util.Point;
 import java.io.Serializable;
 import java.util.Calendar;
-import java.util.HashMap;
-import java.util.Map;
 
 /**
  * This class represents the game state of a single level.  This class is a
@@ -82,13 +79,17 @@ public class Game implements Serializable {
     
     private boolean finished;
     
-    private Map<Short, Point> atoms;
+    /**
+     * The square of every atom, indexed by the atom's index on the level (see
+     * <tt>Atom.getIndex()</tt>).  Squares are row-major indices of the padded
+     * board (see <tt>Level.cell()</tt>).
+     */
+    private int[] atoms;
     
     /**
      * Constructs a new <tt>Game</tt>.
      */
     public Game() {
-        atoms = new HashMap<Short, Point>();
     }
 
     public Calendar getCreated() {
@@ -155,8 +156,12 @@ public class Game implements Serializable {
         this.user = user;
     }
     
-    public Map<Short, Point> getAtoms() {
+    public int[] getAtoms() {
         return atoms;
     }
     
+    public void setAtoms( int[] atoms ) {
+        this.atoms = atoms;
+    }
+    
 } // Game
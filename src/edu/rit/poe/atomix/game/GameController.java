@@ -30,7 +30,9 @@ import edu.rit.poe.atomix.game.GameState.Direction;
 import edu.rit.poe.atomix.levels.Atom;
 import edu.rit.poe.atomix.levels.Level;
 import edu.rit.poe.atomix.levels.LevelManager;
+import edu.rit.poe.atomix.levels.Moves;
 import edu.rit.poe.atomix.levels.Square;
+import edu.rit.poe.atomix.util.Bitboard;
 import edu.rit.poe.atomix.util.Point;
 import java.util.Calendar;
 import java.util.EnumSet;
@@ -84,23 +86,10 @@ public final class GameController {
         game.setMoves( 0 );
         game.setFinished( false );
         
-        // get the gold standard level
+        // get the gold standard level, and start the atoms where it does
         LevelManager levelManager = LevelManager.getInstance();
         Level goldLevel = levelManager.getLevel( level );
-        Square[][] goldBoard = goldLevel.getBoard();
-        
-        // load the atom locations from the user's saved Game
-        Atom atom = null;
-        for ( int y = 0; y < goldBoard.length; y++ ) {
-            for ( int x = 0; x < goldBoard[ 0 ].length; x++ ) {
-                if ( goldBoard[ y ][ x ] instanceof Atom ) {
-                    atom = ( Atom )goldBoard[ y ][ x ];
-                    
-                    // set the atom in the Game
-                    game.getAtoms().put( atom.getId(), new Point( x, y ) );
-                }
-            }
-        }
+        game.setAtoms( goldLevel.getStart() );
         
         return game;
     }
@@ -121,70 +110,30 @@ public final class GameController {
         if ( gameState.selected == null ) {
             throw new GameException( "No currently selected atom." );
         }
-        int endX = gameState.selected.x;
-        int endY = gameState.selected.y;
-        Atom atom = ( Atom )gameState.board[ endY ][ endX ];
-        Point start = new Point( endX, endY );
-        
-        // perform an iterative search for the furthest distance the atom can
-        // travel in the given direction
-        int nextX = endX;
-        int nextY = endY;
-        boolean hit = false;
-        while ( ! hit ) {
-            // is next move in given direction a wall/end of board?
-            switch ( direction ) {
-                case RIGHT: {
-                    nextX++;
-                } break;
-                case LEFT: {
-                    nextX--;
-                } break;
-                case DOWN: {
-                    nextY++;
-                } break;
-                case UP: {
-                    nextY--;
-                } break;
-            }
-            
-            // hit a board boundary?
-            if ( ( nextY == gameState.board.length ) ||
-                    ( nextX == gameState.board[ 0 ].length ) ) {
-                hit = true;
-            } else if ( gameState.board[ nextY ][ nextX ]
-                    instanceof Square.Wall ) {
-                hit = true;
-            } else if ( gameState.board[ nextY ][ nextX ] instanceof Atom ) {
-                hit = true;
-            } else {
-                endX = nextX;
-                endY = nextY;
-            }
-        }
-        Point end = new Point( endX, endY );
+        Level level = gameState.getLevelObj();
         
-        // add this move to the undo stack
-        gameState.undoStack.clear(); // only keep one move (for now?)
-        gameState.undoStack.push( new GameState.Move( start, end ) );
+        // only keep one move on the undo stack (for now?)
+        gameState.undoCount = 0;
         
-        //move the atom
-        gameState.board[ endY ][ endX ] =
-                gameState.board[ gameState.selected.y ][ gameState.selected.x ];
-        gameState.board[ gameState.selected.y ][ gameState.selected.x ] =
-                Square.EMPTY;
-        gameState.selected.set( endX, endY );
-        
-        // update the game's atom
-        gameState.game.getAtoms().put( atom.getId(), new Point( endX, endY ) );
+        // slide the atom until an obstacle is hit, and follow it with the
+        // selection
+        int move = moveAtom( gameState,
+                level.cell( gameState.selected.x, gameState.selected.y ),
+                direction.ordinal() );
+        int to = Moves.getTo( move );
+        int x = level.getX( to );
+        int y = level.getY( to );
+        gameState.selected.set( x, y );
         
         // increment the number of moves in this game's database object
         int moves = gameState.game.getMoves() + 1;
         gameState.game.setMoves( moves );
         
-        // check for win conditions
+        // check for win conditions around the moved atom
         // -- consult the gold standard level object
-        boolean win = gameState.getLevelObj().isComplete( gameState.board );
+        boolean win = level.isComplete( gameState.occupied,
+                gameState.occupiedByType,
+                level.getAtom( Moves.getAtom( move ) ), to );
         gameState.game.setFinished( win );
         
         return win;
@@ -201,39 +150,118 @@ public final class GameController {
         EnumSet<Direction> directions = EnumSet.noneOf( Direction.class );
         
         if ( gameState.selected != null ) {
-            int x = gameState.selected.x;
-            int y = gameState.selected.y;
-            
-            // can we go left?
-            if ( ( ( x - 1 ) >= 0 ) && ( gameState.board[ y ][ x - 1 ]
-                    instanceof Square.Empty ) ) {
-                directions.add( Direction.LEFT );
-            }
-            
-            // can we go right?
-            if ( ( ( x + 1 ) < gameState.board[ 0 ].length ) &&
-                    ( gameState.board[ y ][ x + 1 ] instanceof
-                    Square.Empty ) ) {
-                directions.add( Direction.RIGHT );
-            }
+            Level level = gameState.getLevelObj();
+            long[] occupied = gameState.occupied;
+            int cell = level.cell( gameState.selected.x, gameState.selected.y );
             
-            // can we go up?
-            if ( ( ( y - 1 ) >= 0 ) && ( gameState.board[ y - 1 ][ x ]
-                    instanceof Square.Empty ) ) {
-                directions.add( Direction.UP );
-            }
-            
-            // can we go down?
-            if ( ( ( y + 1 ) < gameState.board.length ) &&
-                    ( gameState.board[ y + 1 ][ x ]
-                    instanceof Square.Empty ) ) {
-                directions.add( Direction.DOWN );
+            // the board is padded with walls, so no neighbour is out of range
+            for ( Direction dir : Direction.values() ) {
+                int next = cell + level.offset( dir.ordinal() );
+                if ( level.isOpen( occupied, next ) ) {
+                    directions.add( dir );
+                }
             }
         }
         
         return directions;
     }
     
+    /**
+     * Writes every legal move in the current position into the specified
+     * buffer, as packed moves (see <tt>Moves</tt>).  Every atom is tried in
+     * every direction, and slides that would leave the atom where it is are
+     * skipped, so each generated move changes the position.
+     * <p>
+     * The buffer must hold at least <tt>Level.DIRECTIONS</tt> times the
+     * level's atom count.  Nothing is allocated, and the position is not
+     * changed.
+     * 
+     * @param   gameState   the game state to generate moves for
+     * @param   moves       the buffer to write the packed moves into
+     * 
+     * @return              the number of moves written to the buffer
+     */
+    public static int generateMoves( GameState gameState, int[] moves ) {
+        Level level = gameState.getLevelObj();
+        long[] occupied = gameState.occupied;
+        long[] occupiedColumns = gameState.occupiedColumns;
+        
+        int[] atoms = gameState.game.getAtoms();
+        
+        int count = 0;
+        for ( int atom = 0; atom < atoms.length; atom++ ) {
+            int from = atoms[ atom ];
+            for ( int dir = 0; dir < Level.DIRECTIONS; dir++ ) {
+                int to = level.slide( occupied, occupiedColumns, from, dir );
+                if ( to != from ) {
+                    moves[ count++ ] = Moves.pack( atom, dir, from, to );
+                }
+            }
+        }
+        return count;
+    }
+    
+    /**
+     * Slides the atom on the specified square in the specified direction until
+     * an obstacle is hit, and pushes the move onto the undo stack.
+     * <p>
+     * This is the allocation-free fast path of <tt>moveSelected()</tt>: it
+     * does not touch the selection, the move count or the win state, so it
+     * can be driven in bulk by simulations and replays.
+     * 
+     * @param   gameState   the game state to move an atom in
+     * @param   from        the row-major index of the atom's square
+     * @param   direction   one of the <tt>Level</tt> direction constants
+     * 
+     * @return              the packed move (see <tt>Moves</tt>)
+     */
+    public static int moveAtom( GameState gameState, int from,
+            int direction ) {
+        Level level = gameState.getLevelObj();
+        Atom atom = level.getAtom( gameState.getAtomAt( from ) );
+        
+        // find the furthest distance the atom can travel in the given
+        // direction with a scan of the bitboards
+        int to = level.slide( gameState.occupied, gameState.occupiedColumns,
+                from, direction );
+        int move = Moves.pack( atom.getIndex(), direction, from, to );
+        
+        // add this move to the undo stack, growing it if needed
+        if ( gameState.undoCount == gameState.undoStack.length ) {
+            int[] stack = new int[ gameState.undoStack.length * 2 ];
+            System.arraycopy( gameState.undoStack, 0, stack, 0,
+                    gameState.undoCount );
+            gameState.undoStack = stack;
+        }
+        gameState.undoStack[ gameState.undoCount++ ] = move;
+        
+        placeAtom( gameState, level, atom, from, to );
+        
+        return move;
+    }
+    
+    /**
+     * Reverts the most recent move on the undo stack.  Like
+     * <tt>moveAtom()</tt>, this does not touch the selection or the move
+     * count.
+     * 
+     * @param   gameState   the game state to undo a move in
+     * 
+     * @return              the packed move that was undone, or
+     *                      <tt>Moves.NONE</tt> if there was nothing to undo
+     */
+    public static int undoMove( GameState gameState ) {
+        int move = Moves.NONE;
+        if ( canUndo( gameState ) ) {
+            move = gameState.undoStack[ --gameState.undoCount ];
+            
+            Level level = gameState.getLevelObj();
+            placeAtom( gameState, level, level.getAtom( Moves.getAtom( move ) ),
+                    Moves.getTo( move ), Moves.getFrom( move ) );
+        }
+        return move;
+    }
+    
     /**
      * Returns whether an undo operation can be performed.
      * 
@@ -243,7 +271,7 @@ public final class GameController {
      *                      <tt>false</tt>
      */
     public static boolean canUndo( GameState gameState ) {
-        return ( ! gameState.undoStack.empty() );
+        return ( gameState.undoCount > 0 );
     }
     
     /**
@@ -253,19 +281,14 @@ public final class GameController {
      */
     public static void undo( GameState gameState ) {
         if ( canUndo( gameState ) ) {
-            GameState.Move move = gameState.undoStack.pop();
-            
-            // move the atom back
-            gameState.board[ move.start.y ][ move.start.x ] =
-                    gameState.board[ move.end.y ][ move.end.x ];
-            gameState.board[ move.end.y ][ move.end.x ] = Square.EMPTY;
-            gameState.selected.set( move.start.x, move.start.y );
-            gameState.setHoverPoint( move.start );
+            Level level = gameState.getLevelObj();
+            int move = undoMove( gameState );
             
-            // update the database copy of the atom's location
-            Atom atom = ( Atom )gameState.board[ move.start.y ][ move.start.x ];
-            gameState.game.getAtoms().put( atom.getId(),
-                    new Point( move.start.x, move.start.y ) );
+            // select the atom where it was moved back to
+            int x = level.getX( Moves.getFrom( move ) );
+            int y = level.getY( Moves.getFrom( move ) );
+            gameState.selected.set( x, y );
+            gameState.setHoverPoint( new Point( x, y ) );
             
             // decrement the number of moves in this game's database object
             int moves = gameState.game.getMoves() - 1;
@@ -274,6 +297,34 @@ public final class GameController {
         }
     }
     
+    /**
+     * Moves an atom from one square to another on the board, in the occupancy
+     * bitboards, in the position hash and in the backing <tt>Game</tt>
+     * object.  Nothing is allocated.
+     * 
+     * @param   gameState   the game state to move the atom in
+     * @param   level       the level the game state is playing
+     * @param   atom        the atom being moved
+     * @param   from        the row-major index the atom is leaving
+     * @param   to          the row-major index the atom is entering
+     */
+    private static void placeAtom( GameState gameState, Level level,
+            Atom atom, int from, int to ) {
+        gameState.setSquare( level, from, Square.EMPTY );
+        gameState.setSquare( level, to, atom );
+        
+        Bitboard.clear( gameState.occupied, from );
+        Bitboard.clear( gameState.occupiedColumns, level.column( from ) );
+        Bitboard.set( gameState.occupied, to );
+        Bitboard.set( gameState.occupiedColumns, level.column( to ) );
+        long[] typeBoard = gameState.occupiedByType[ level.getType( atom ) ];
+        Bitboard.clear( typeBoard, from );
+        Bitboard.set( typeBoard, to );
+        gameState.hash ^= level.getZobristKey( atom, from ) ^
+                level.getZobristKey( atom, to );
+        gameState.game.getAtoms()[ atom.getIndex() ] = to;
+    }
+    
     /**
      * Starts the game timer for the specified game.
      * 
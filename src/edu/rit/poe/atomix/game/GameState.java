@@ -29,10 +29,9 @@ import edu.rit.poe.atomix.levels.Atom;
 import edu.rit.poe.atomix.levels.Level;
 import edu.rit.poe.atomix.levels.LevelManager;
 import edu.rit.poe.atomix.levels.Square;
+import edu.rit.poe.atomix.util.Bitboard;
 import edu.rit.poe.atomix.util.Point;
 import java.io.Serializable;
-import java.util.Map;
-import java.util.Stack;
 
 /**
  * This class represents all in-game state.  It wraps the <tt>User</tt> and
@@ -47,6 +46,9 @@ public class GameState implements Serializable {
     /** The stirng literal key for this object. */
     public static final String GAME_STATE_KEY = "game_state";
     
+    /** The initial number of moves the undo stack can hold. */
+    private static final int INITIAL_UNDO_CAPACITY = 16;
+    
     /**
      * An enumerated type of directions, useful for the game state.
      * 
@@ -74,8 +76,25 @@ public class GameState implements Serializable {
     /** The game's current <tt>Game</tt> object. */
     Game game;
     
-    /** The game's current board configuration. */
-    Square[][] board;
+    /**
+     * The game's current board configuration, built on demand by
+     * <tt>getBoard()</tt>.  Rows are shared with the level's layout until an
+     * atom is placed in them (see <tt>setSquare()</tt>), and the board is
+     * never serialized, since it can be rebuilt from the game object.
+     */
+    transient Square[][] board;
+    
+    /** The squares holding an atom, as a row-major bitboard. */
+    long[] occupied;
+    
+    /** The squares holding an atom, as a column-major bitboard. */
+    long[] occupiedColumns;
+    
+    /** The squares holding each type of atom, as row-major bitboards. */
+    long[][] occupiedByType;
+    
+    /** The Zobrist hash of the atom placements (see <tt>getHash()</tt>). */
+    long hash;
     
     /** The (x,y) location of the currently selected atom. */
     Point selected;
@@ -83,8 +102,11 @@ public class GameState implements Serializable {
     /** The point that is currently being hovered over, or <tt>null</tt>. */
     Point hoverPoint;
     
-    /** The stack of moves to potentially be undone. */
-    Stack<Move> undoStack;
+    /** The stack of packed moves (see <tt>Moves</tt>) to be undone. */
+    int[] undoStack;
+    
+    /** The number of moves on the undo stack. */
+    int undoCount;
     
     /** The last starting time of the game play timer. */
     long timeStarted_sec;
@@ -103,27 +125,23 @@ public class GameState implements Serializable {
         // initialize a default hover point
         hoverPoint = new Point( 0, 0 );
         
-        // make a copy of the level's board, for own own use and modification
-        board = getLevelObj().copyBoard();
-        
-        // remove atoms from the board (we'll place atoms from the game object)
-        for ( int i = 0; i < board.length; i++ ) {
-            for ( int j = 0; j < board[ 0 ].length; j++ ) {
-                if ( board[ i ][ j ] instanceof Atom ) {
-                    board[ i ][ j ] = Square.EMPTY;
-                }
-            }
-        }
-        
-        // set the atom locations from the game object
-        for ( Map.Entry<Short, Point> entry : game.getAtoms().entrySet() ) {
-            Atom atom = getLevelObj().getAtom( entry.getKey() );
-            Point point = entry.getValue();
-            
-            board[ point.y ][ point.x ] = atom;
+        // set the atom locations from the game object (the board itself is
+        // only built if someone asks for it)
+        Level level = getLevelObj();
+        occupied = level.newBitboard();
+        occupiedColumns = level.newBitboard();
+        occupiedByType = level.newTypeBitboards();
+        int[] atoms = game.getAtoms();
+        for ( int i = 0; i < atoms.length; i++ ) {
+            Atom atom = level.getAtom( i );
+            int cell = atoms[ i ];
+            Bitboard.set( occupied, cell );
+            Bitboard.set( occupiedColumns, level.column( cell ) );
+            Bitboard.set( occupiedByType[ level.getType( atom ) ], cell );
+            hash ^= level.getZobristKey( atom, cell );
         }
         
-        undoStack = new Stack<Move>();
+        undoStack = new int[ INITIAL_UNDO_CAPACITY ];
     }
     
     // Simple Accesors/Mutators
@@ -184,14 +202,62 @@ public class GameState implements Serializable {
     }
     
     /**
-     * Returns the game's board.
+     * Returns the game's board.  The board is built from the level's layout
+     * and the game's atom squares the first time it is needed, and kept up to
+     * date by every move after that.
      * 
      * @return  the board's current state
      */
     public Square[][] getBoard() {
+        if ( board == null ) {
+            Level level = getLevelObj();
+            board = level.getLayout().clone();
+            
+            int[] atoms = game.getAtoms();
+            for ( int i = 0; i < atoms.length; i++ ) {
+                setSquare( level, atoms[ i ], level.getAtom( i ) );
+            }
+        }
         return board;
     }
     
+    /**
+     * Sets a square of the board, copying its row first if the row is still
+     * shared with the level's layout.  Does nothing if the board has not been
+     * built yet.
+     * 
+     * @param   level   the current level's object
+     * @param   cell    the row-major index of the square
+     * @param   square  the new contents of the square
+     */
+    void setSquare( Level level, int cell, Square square ) {
+        if ( board != null ) {
+            int y = level.getY( cell );
+            if ( board[ y ] == level.getLayout()[ y ] ) {
+                board[ y ] = board[ y ].clone();
+            }
+            board[ y ][ level.getX( cell ) ] = square;
+        }
+    }
+    
+    /**
+     * Returns the index of the atom on the specified square.
+     * 
+     * @param   cell    the row-major index of the square
+     * 
+     * @return          the atom's index (see <tt>Atom.getIndex()</tt>), or
+     *                  <tt>-1</tt> if the square is empty
+     */
+    int getAtomAt( int cell ) {
+        int[] atoms = game.getAtoms();
+        for ( int i = 0; i < atoms.length; i++ ) {
+            if ( atoms[ i ] == cell ) {
+                return i;
+            }
+        }
+        return -1;
+    }
+    
     /**
      * Returns the game's goal configuration.
      * <p>
@@ -204,6 +270,17 @@ public class GameState implements Serializable {
         return getLevelObj().getGoal();
     }
     
+    /**
+     * Returns the 64-bit Zobrist hash of the current atom placements.  The
+     * hash is kept up to date by every move and undo.  Positions that differ
+     * only by swapping interchangeable atoms have the same hash.
+     * 
+     * @return  the position's hash
+     */
+    public long getHash() {
+        return hash;
+    }
+    
     /**
      * Returned the point location of the currently selected object.
      * 
@@ -249,32 +326,4 @@ public class GameState implements Serializable {
         return game.isFinished();
     }
     
-    /**
-     * This class is a holder of move information that can be reverted.
-     * 
-     * @author  Peter O. Erickson
-     * 
-     * @version $Id$
-     */
-    static class Move implements Serializable {
-        
-        /** The starting location of this move. */
-        Point start;
-        
-        /** The ending location of this move. */
-        Point end;
-        
-        /**
-         * Constructs a new move with the starting and ending location.
-         * 
-         * @param   start   the starting location
-         * @param   end     the ending location
-         */
-        Move( Point start, Point end ) {
-            this.start = start;
-            this.end = end;
-        }
-        
-    } // Move
-    
 } // GameState
@@ -50,6 +50,9 @@ public final class Atom extends Square {
         colorMap.put( 'C', "444444" );
     }
     
+    /** The number of low bits of a type that hold the connector mask. */
+    private static final int CONNECTOR_BITS = 16;
+    
     /** The short ID of this atom. */
     private short id;
     
@@ -59,6 +62,12 @@ public final class Atom extends Square {
     /** The connectors associated with this atom. */
     private Set<Connector> connectors;
     
+    /** The canonical type of this atom (element and connector mask). */
+    private int type;
+    
+    /** The dense index of this atom on its level, assigned by the level. */
+    private int index;
+    
     /**
      * Constructs a new <tt>Atom</tt>.
      * 
@@ -71,12 +80,39 @@ public final class Atom extends Square {
         this.id = id;
         this.element = element;
         this.connectors = connectors;
+        
+        int mask = 0;
+        for ( Connector c : connectors ) {
+            mask |= c.getMask();
+        }
+        this.type = ( ( element << CONNECTOR_BITS ) | mask );
     }
 
     public short getId() {
         return id;
     }
     
+    /**
+     * Returns the dense index of this atom on its level.  Atoms are numbered
+     * from zero to <tt>Level.getAtomCount() - 1</tt> in ID order, so the index
+     * can be used to look up per-atom data in plain arrays.
+     * 
+     * @return  the index of this atom
+     */
+    public int getIndex() {
+        return index;
+    }
+    
+    /**
+     * Sets the dense index of this atom.  Only the level that owns the atom
+     * may call this.
+     * 
+     * @param   index   the index of this atom
+     */
+    void setIndex( int index ) {
+        this.index = index;
+    }
+    
     public String getColor() {
         return colorMap.get( element );
     }
@@ -90,27 +126,34 @@ public final class Atom extends Square {
     }
     
     /**
-     * Compares this <tt>Atom</tt> to the specified object for equality.
+     * Returns the canonical type of this atom: the element letter in the high
+     * bits and the mask of its connectors in the low 16 bits.  Two atoms are
+     * interchangeable exactly when their types are equal.
+     * 
+     * @return  the canonical type of this atom
+     */
+    public int getType() {
+        return type;
+    }
+    
+    /**
+     * Compares this <tt>Atom</tt> to the specified object for equality.  Atoms
+     * are equal if they have the same element and the same connectors,
+     * regardless of their IDs.
      * 
-     * @param   o   
+     * @param   o   the object to compare to
      * 
-     * @return
+     * @return      <tt>true</tt> if the atoms are interchangeable, otherwise
+     *              <tt>false</tt>
      */
     @Override
     public boolean equals( Object o ) {
-        boolean retVal = false;
-        if ( o instanceof Atom ) {
-            Atom a = ( Atom )o;
-            
-            retVal = ( ( element == a.element ) &&
-                    ( connectors.containsAll( a.connectors ) ) );
-        }
-        return retVal;
+        return ( ( o instanceof Atom ) && ( type == ( ( Atom )o ).type ) );
     }
-
+    
     @Override
     public int hashCode() {
-        return id;
+        return type;
     }
     
     /**
@@ -102,6 +102,18 @@ public class Connector implements Serializable {
         return bond;
     }
     
+    /**
+     * Returns this connector as a single bit of a 16-bit mask: one bit for
+     * each combination of direction and bond.  The mask of an atom's
+     * connectors is the bitwise-or of the individual masks.
+     * 
+     * @return  the bit of this connector
+     */
+    public int getMask() {
+        return ( 1 << ( ( direction.ordinal() * Bond.values().length )
+                + bond.ordinal() ) );
+    }
+    
     @Override
     public boolean equals( Object o ) {
         boolean retVal = false;
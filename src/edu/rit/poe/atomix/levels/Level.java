@@ -24,14 +24,18 @@
 package edu.rit.poe.atomix.levels;
 
 import android.util.Log;
+import edu.rit.poe.atomix.util.Bitboard;
 import java.io.BufferedReader;
 import java.io.FileNotFoundException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.util.ArrayList;
 import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.Set;
 
 /**
@@ -39,11 +43,44 @@ import java.util.Set;
  * the board, the atoms on the board, and the solution.
  * 
  * @author  Peter O. Erickson
- *
+ * 
  * @version $Id$
  */
 public class Level implements Comparable<Level> {
     
+    /**
+     * The direction constant for sliding up.  The direction constants share
+     * the ordinals of <tt>GameState.Direction</tt>.
+     */
+    public static final int UP = 0;
+    
+    /** The direction constant for sliding down. */
+    public static final int DOWN = 1;
+    
+    /** The direction constant for sliding right. */
+    public static final int RIGHT = 2;
+    
+    /** The direction constant for sliding left. */
+    public static final int LEFT = 3;
+    
+    /** The number of directions an atom can slide in. */
+    public static final int DIRECTIONS = 4;
+    
+    /** The number of distinct atom IDs (the digits and lowercase letters). */
+    public static final int MAX_ATOM_IDS = 36;
+    
+    /**
+     * The seed of the Zobrist keys.  It is fixed so that a position hashes to
+     * the same value on every run and every device.
+     */
+    private static final long ZOBRIST_SEED = 0x41746f6d6978L;
+    
+    /** The starting value of the FNV-1a hash of a level's contents. */
+    private static final long HASH_BASIS = 0xcbf29ce484222325L;
+    
+    /** The multiplier of the FNV-1a hash of a level's contents. */
+    private static final long HASH_PRIME = 0x100000001b3L;
+    
     /**
      * Enumerated type of sections of a level file.
      * 
@@ -94,7 +131,110 @@ public class Level implements Comparable<Level> {
     
     private Square[][] goal;
     
-    private Map<Short, Atom> atoms;
+    /** The board with every atom removed; shared by every game state. */
+    private Square[][] layout;
+    
+    /** The square each atom starts on, indexed by atom index. */
+    private int[] start;
+    
+    /** The atoms of this level by atom ID (<tt>null</tt> if unused). */
+    private Atom[] atomsById;
+    
+    /** The atoms of this level in ID order, indexed by their dense index. */
+    private Atom[] atoms;
+    
+    /**
+     * The type of every atom, indexed by atom index.  Atoms share a type when
+     * they are interchangeable, i.e. when they have the same element and the
+     * same connectors.
+     */
+    private int[] types;
+    
+    /** The number of distinct atom types on this level. */
+    private int typeCount;
+    
+    /**
+     * The Zobrist key of every atom type on every square, indexed by
+     * <tt>type * cells + cell</tt>.
+     */
+    private long[] zobristKeys;
+    
+    /** The hash of everything in the level file that affects play. */
+    private long hash;
+    
+    /** The width of the board, in squares. */
+    private int width;
+    
+    /** The height of the board, in squares. */
+    private int height;
+    
+    /**
+     * The distance between vertically adjacent squares in the flat board.
+     * The flat board is padded with a ring of walls on every side, so this is
+     * two wider than the board itself.
+     */
+    private int stride;
+    
+    /** The number of squares in the padded flat board. */
+    private int cells;
+    
+    /** The column-major index of every row-major square index. */
+    private int[] columnOf;
+    
+    /** The row-major index of every column-major square index. */
+    private int[] cellOf;
+    
+    /**
+     * The squares that can never be entered (walls, blank space and the
+     * padding ring), indexed row-major by <tt>cell( x, y )</tt>.
+     */
+    private long[] walls;
+    
+    /**
+     * The square an atom stops on when slid from each square in each
+     * direction with no other atoms on the board, indexed by
+     * <tt>cell * DIRECTIONS + direction</tt>.  Walls never move, so this is
+     * computed once when the level is loaded.
+     */
+    private int[] wallStops;
+    
+    /**
+     * The row-major index offsets of the atoms in the goal kernel, relative
+     * to the kernel's top-left corner.
+     */
+    private int[] goalOffsets;
+    
+    /** The types of the atoms in the goal kernel, parallel to goalOffsets. */
+    private int[] goalTypes;
+    
+    /**
+     * The row-major index offsets of the squares in the goal kernel that hold
+     * no atom.
+     */
+    private int[] blankOffsets;
+    
+    /**
+     * The goal kernel offsets at which each atom type appears, indexed by
+     * type.  An atom of a type that is not in the goal has no offsets.
+     */
+    private int[][] typeGoalOffsets;
+    
+    /**
+     * The squares where the top-left corner of the goal kernel can be placed
+     * so that the whole kernel is on the board and no goal atom is on a
+     * wall.
+     */
+    private long[] goalOrigins;
+    
+    /** The squares of <tt>goalOrigins</tt>, in row-major order. */
+    private int[] placements;
+    
+    /**
+     * Whether the board has atoms that are not part of the goal.  Only then
+     * can a move complete the goal without the moved atom being part of it,
+     * and only then must the empty squares of the kernel be checked.
+     */
+    private boolean extraAtoms;
     
     /**
      * Constructs a new <tt>Level</tt>.
@@ -114,6 +254,226 @@ public class Level implements Comparable<Level> {
         return formula;
     }
     
+    /**
+     * Returns the width of the board.
+     * 
+     * @return  the number of columns on the board
+     */
+    public int getWidth() {
+        return width;
+    }
+    
+    /**
+     * Returns the height of the board.
+     * 
+     * @return  the number of rows on the board
+     */
+    public int getHeight() {
+        return height;
+    }
+    
+    /**
+     * Returns the distance between vertically adjacent squares in the padded
+     * flat board.
+     * 
+     * @return  the row stride of the flat board
+     */
+    public int getStride() {
+        return stride;
+    }
+    
+    /**
+     * Returns the number of squares in the padded flat board, which is the
+     * number of bits in a bitboard for this level.
+     * 
+     * @return  the number of squares, including the padding ring
+     */
+    public int getCellCount() {
+        return cells;
+    }
+    
+    /**
+     * Returns the row-major index of the specified square in the padded flat
+     * board.  The coordinates are those of <tt>getBoard()</tt>; the padding
+     * ring sits at <tt>-1</tt> and at <tt>width</tt> / <tt>height</tt>.
+     * 
+     * @param   x   the X coordinate
+     * @param   y   the Y coordinate
+     * 
+     * @return      the row-major index of the square
+     */
+    public int cell( int x, int y ) {
+        return ( ( y + 1 ) * stride + ( x + 1 ) );
+    }
+    
+    /**
+     * Returns the column-major index of the specified square.  This is the
+     * index used for the column bitboards passed to <tt>slide()</tt>.
+     * 
+     * @param   cell    the row-major index of the square
+     * 
+     * @return          the column-major index of the square
+     */
+    public int column( int cell ) {
+        return columnOf[ cell ];
+    }
+    
+    /**
+     * Returns the X coordinate of a row-major square index.
+     * 
+     * @param   cell    the row-major index
+     * 
+     * @return          the X coordinate of the square
+     */
+    public int getX( int cell ) {
+        return ( ( cell % stride ) - 1 );
+    }
+    
+    /**
+     * Returns the Y coordinate of a row-major square index.
+     * 
+     * @param   cell    the row-major index
+     * 
+     * @return          the Y coordinate of the square
+     */
+    public int getY( int cell ) {
+        return ( ( cell / stride ) - 1 );
+    }
+    
+    /**
+     * Returns the change in row-major index of a single step in the specified
+     * direction.
+     * 
+     * @param   direction   one of <tt>UP</tt>, <tt>DOWN</tt>, <tt>RIGHT</tt>
+     *                      or <tt>LEFT</tt>
+     * 
+     * @return              the index offset of one step
+     */
+    public int offset( int direction ) {
+        int offset = 0;
+        switch ( direction ) {
+            case UP: {
+                offset = -stride;
+            } break;
+            case DOWN: {
+                offset = stride;
+            } break;
+            case RIGHT: {
+                offset = 1;
+            } break;
+            case LEFT: {
+                offset = -1;
+            } break;
+        }
+        return offset;
+    }
+    
+    /**
+     * Creates an empty bitboard sized for this level's padded board.
+     * 
+     * @return  a new bitboard with no squares set
+     */
+    public long[] newBitboard() {
+        return Bitboard.create( cells );
+    }
+    
+    /**
+     * Returns whether the specified square is neither a wall nor occupied by
+     * an atom.  Since the board is padded with walls, any neighbour of a
+     * square on the board can be tested without a range check.
+     * 
+     * @param   occupied    the row-major bitboard of occupied squares
+     * @param   cell        the row-major index of the square
+     * 
+     * @return              <tt>true</tt> if an atom could move into the
+     *                      square, otherwise <tt>false</tt>
+     */
+    public boolean isOpen( long[] occupied, int cell ) {
+        return ( ( ! Bitboard.get( walls, cell ) ) &&
+                ( ! Bitboard.get( occupied, cell ) ) );
+    }
+    
+    /**
+     * Returns whether the specified square can never hold an atom: a wall, a
+     * blank square outside the board, or part of the padding.
+     * 
+     * @param   cell    the row-major index of the square
+     * 
+     * @return          <tt>true</tt> if the square is a wall, otherwise
+     *                  <tt>false</tt>
+     */
+    public boolean isWall( int cell ) {
+        return Bitboard.get( walls, cell );
+    }
+    
+    /**
+     * Returns the square an atom stops on when slid in the specified
+     * direction if there were no other atoms on the board.
+     * 
+     * @param   cell        the row-major index of the atom
+     * @param   direction   one of <tt>UP</tt>, <tt>DOWN</tt>, <tt>RIGHT</tt>
+     *                      or <tt>LEFT</tt>
+     * 
+     * @return              the row-major index of the wall stop
+     */
+    public int getWallStop( int cell, int direction ) {
+        return wallStops[ cell * DIRECTIONS + direction ];
+    }
+    
+    /**
+     * Finds the square where an atom comes to rest when slid in the specified
+     * direction.  The atom travels until the next square is a wall or another
+     * atom.
+     * <p>
+     * The stop against the walls is looked up in the precomputed stop table,
+     * and then clipped against the nearest atom on the same line.  That atom
+     * is found with a bit scan along the row-major bitboard for horizontal
+     * slides, or along the column-major bitboard for vertical slides, so the
+     * cost does not depend on how far the atom travels.
+     * 
+     * @param   occupied        the row-major bitboard of occupied squares
+     * @param   occupiedColumns the column-major bitboard of occupied squares
+     * @param   cell            the row-major index of the atom
+     * @param   direction       one of <tt>UP</tt>, <tt>DOWN</tt>,
+     *                          <tt>RIGHT</tt> or <tt>LEFT</tt>
+     * 
+     * @return                  the row-major index of the square the atom
+     *                          stops on
+     */
+    public int slide( long[] occupied, long[] occupiedColumns, int cell,
+            int direction ) {
+        int stop = wallStops[ cell * DIRECTIONS + direction ];
+        switch ( direction ) {
+            case RIGHT: {
+                int atom = Bitboard.nextSetBit( occupied, cell + 1 );
+                if ( ( atom >= 0 ) && ( atom <= stop ) ) {
+                    stop = atom - 1;
+                }
+            } break;
+            case LEFT: {
+                int atom = Bitboard.previousSetBit( occupied, cell - 1 );
+                if ( atom >= stop ) {
+                    stop = atom + 1;
+                }
+            } break;
+            case DOWN: {
+                int atom = Bitboard.nextSetBit( occupiedColumns,
+                        columnOf[ cell ] + 1 );
+                if ( ( atom >= 0 ) && ( atom <= columnOf[ stop ] ) ) {
+                    stop = cellOf[ atom - 1 ];
+                }
+            } break;
+            case UP: {
+                int atom = Bitboard.previousSetBit( occupiedColumns,
+                        columnOf[ cell ] - 1 );
+                if ( atom >= columnOf[ stop ] ) {
+                    stop = cellOf[ atom + 1 ];
+                }
+            } break;
+        }
+        return stop;
+    }
+    
     public Square[][] copyBoard() {
         // make a full copy of the baord
         Square[][] copy = new Square[ board.length ][ board[ 0 ].length ];
@@ -134,15 +494,99 @@ public class Level implements Comparable<Level> {
         return board;
     }
     
+    /**
+     * Returns the level's board with every atom replaced by an empty square:
+     * the walls and open squares that never change during a game.  Game
+     * states share its rows until they place an atom in them, so this must
+     * be treated as immutable -- never change this!
+     * 
+     * @return  the level's layout
+     */
+    public Square[][] getLayout() {
+        return layout;
+    }
+    
     /**
      * Retrieves an <tt>Atom</tt> by its ID.
      * 
      * @param   id  the <tt>short</tt> ID of the atom to be returned
      * 
-     * @return      the atom associated with the specified ID
+     * @return      the atom associated with the specified ID, or <tt>null</tt>
+     *              if there is no such atom
+     */
+    public Atom getAtomById( short id ) {
+        return ( ( id >= 0 ) && ( id < atomsById.length ) ?
+                atomsById[ id ] : null );
+    }
+    
+    /**
+     * Retrieves an <tt>Atom</tt> by its dense index.
+     * 
+     * @param   index   the index of the atom, from zero to
+     *                  <tt>getAtomCount() - 1</tt>
+     * 
+     * @return          the atom with the specified index
+     * 
+     * @see     Atom#getIndex()
+     */
+    public Atom getAtom( int index ) {
+        return atoms[ index ];
+    }
+    
+    /**
+     * Returns the type of the specified atom.  Interchangeable atoms share a
+     * type; types are numbered from zero to <tt>getTypeCount() - 1</tt>.
+     * 
+     * @param   atom    an atom of this level
+     * 
+     * @return          the atom's type
+     */
+    public int getType( Atom atom ) {
+        return types[ atom.getIndex() ];
+    }
+    
+    /**
+     * Returns the number of distinct atom types on this level.
+     * 
+     * @return  the number of atom types
      */
-    public Atom getAtom( Short id ) {
-        return atoms.get( id );
+    public int getTypeCount() {
+        return typeCount;
+    }
+    
+    /**
+     * Returns the Zobrist key of the specified atom on the specified square.
+     * The hash of a position is the exclusive-or of the keys of all its atoms,
+     * so moving an atom updates the hash with two exclusive-ors.  Since the
+     * key depends only on the atom's type, interchangeable atoms hash the
+     * same, and positions that differ only by swapping them share a hash.
+     * 
+     * @param   atom    the atom
+     * @param   cell    the row-major index of the atom's square
+     * 
+     * @return          the Zobrist key
+     */
+    public long getZobristKey( Atom atom, int cell ) {
+        return zobristKeys[ types[ atom.getIndex() ] * cells + cell ];
+    }
+    
+    /**
+     * Returns the number of atoms on this level's board.
+     * 
+     * @return  the number of atoms
+     */
+    public int getAtomCount() {
+        return atoms.length;
+    }
+    
+    /**
+     * Returns the squares the atoms start on, indexed by atom index.  The
+     * returned array is a copy, so it may be used as a new game's position.
+     * 
+     * @return  the row-major index of each atom's starting square
+     */
+    public int[] getStart() {
+        return start.clone();
     }
     
     /**
@@ -156,60 +600,186 @@ public class Level implements Comparable<Level> {
     }
     
     /**
-     * This method is used to check for success conditions on a board.
+     * Returns a 64-bit hash of everything in the level file that affects
+     * play: the board, the atoms and their starting squares, and the goal.
+     * Comments and formatting do not change it.
      * 
-     * @param   board   the board to check for completeness
+     * @return  the hash of the level's contents
+     */
+    public long getHash() {
+        return hash;
+    }
+    
+    /**
+     * Returns the number of atoms in the goal kernel.
      * 
-     * @return          <tt>true</tt> if the board is complete, otherwise
-     *                  <tt>false</tt>
+     * @return  the number of goal atoms
      */
-    public boolean isComplete( Square[][] board ) {
+    public int getGoalAtomCount() {
+        return goalOffsets.length;
+    }
+    
+    /**
+     * Returns the square of a goal atom relative to the kernel's top-left
+     * corner, as a row-major index offset.  Adding it to a goal origin gives
+     * the square the atom must be on.
+     * 
+     * @param   i   the goal atom, from zero to <tt>getGoalAtomCount() - 1</tt>
+     * 
+     * @return      the goal atom's offset
+     */
+    public int getGoalOffset( int i ) {
+        return goalOffsets[ i ];
+    }
+    
+    /**
+     * Returns the type of a goal atom (see <tt>getType()</tt>).
+     * 
+     * @param   i   the goal atom, from zero to <tt>getGoalAtomCount() - 1</tt>
+     * 
+     * @return      the goal atom's type
+     */
+    public int getGoalType( int i ) {
+        return goalTypes[ i ];
+    }
+    
+    /**
+     * Returns whether the goal kernel fits on the board with its top-left
+     * corner on the specified square, with every goal atom off the walls.
+     * 
+     * @param   cell    the row-major index of the square
+     * 
+     * @return          <tt>true</tt> if the square is a goal origin
+     */
+    public boolean isGoalOrigin( int cell ) {
+        return Bitboard.get( goalOrigins, cell );
+    }
+    
+    /**
+     * Returns the number of places the goal kernel fits (see
+     * <tt>isGoalOrigin()</tt>).  Each is a fully specified target: the
+     * square every goal atom must end up on.
+     * 
+     * @return  the number of goal placements
+     */
+    public int getPlacementCount() {
+        return placements.length;
+    }
+    
+    /**
+     * Returns the goal origin of a goal placement.  Adding a goal atom's
+     * offset (see <tt>getGoalOffset()</tt>) to it gives the atom's target
+     * square.
+     * 
+     * @param   i   the placement, from zero to
+     *              <tt>getPlacementCount() - 1</tt>
+     * 
+     * @return      the row-major index of the kernel's top-left corner
+     */
+    public int getPlacement( int i ) {
+        return placements[ i ];
+    }
+    
+    /**
+     * Creates an empty set of per-type occupancy bitboards for this level,
+     * one row-major bitboard for every atom type.
+     * 
+     * @return  a new, empty bitboard for every atom type
+     */
+    public long[][] newTypeBitboards() {
+        long[][] boards = new long[ typeCount ][];
+        for ( int type = 0; type < typeCount; type++ ) {
+            boards[ type ] = newBitboard();
+        }
+        return boards;
+    }
+    
+    /**
+     * This method is used to check for success conditions on a board.  The
+     * goal kernel is tried at every offset where it fits on the board.
+     * 
+     * @param   occupied        the row-major bitboard of occupied squares
+     * @param   occupiedByType  the row-major bitboard of each atom type's
+     *                          squares
+     * 
+     * @return                  <tt>true</tt> if the board is complete,
+     *                          otherwise <tt>false</tt>
+     */
+    public boolean isComplete( long[] occupied, long[][] occupiedByType ) {
         boolean retVal = false;
+        for ( int i = 0; ( i < placements.length ) && ( ! retVal ); i++ ) {
+            retVal = isCompleteAt( occupied, occupiedByType, placements[ i ] );
+        }
+        return retVal;
+    }
+    
+    /**
+     * Checks for success conditions after a single atom has moved.  Unless
+     * the board holds atoms that are not part of the goal, a move can only
+     * complete the goal if the moved atom is part of it, so only the kernel
+     * placements that put one of the atom's goal squares on its destination
+     * are tried.  The cost is proportional to the size of the molecule, not
+     * to the size of the board.
+     * 
+     * @param   occupied        the row-major bitboard of occupied squares
+     * @param   occupiedByType  the row-major bitboard of each atom type's
+     *                          squares
+     * @param   atom            the atom that moved
+     * @param   to              the row-major index the atom moved to
+     * 
+     * @return                  <tt>true</tt> if the board is complete,
+     *                          otherwise <tt>false</tt>
+     */
+    public boolean isComplete( long[] occupied, long[][] occupiedByType,
+            Atom atom, int to ) {
+        if ( extraAtoms ) {
+            return isComplete( occupied, occupiedByType );
+        }
         
-        int ymax = board.length - goal.length;
-        int xmax = board[ 0 ].length - goal[ 0 ].length;
+        boolean retVal = false;
+        int[] offsets = typeGoalOffsets[ types[ atom.getIndex() ] ];
+        for ( int i = 0; ( i < offsets.length ) && ( ! retVal ); i++ ) {
+            int origin = to - offsets[ i ];
+            if ( ( origin >= 0 ) && Bitboard.get( goalOrigins, origin ) ) {
+                retVal = isCompleteAt( occupied, occupiedByType, origin );
+            }
+        }
+        return retVal;
+    }
+    
+    /**
+     * Checks whether the goal kernel is matched with its top-left corner at
+     * the specified square.
+     * 
+     * @param   occupied        the row-major bitboard of occupied squares
+     * @param   occupiedByType  the row-major bitboard of each atom type's
+     *                          squares
+     * @param   origin          the row-major index of the kernel's corner
+     *                          (see <tt>getPlacement()</tt>)
+     * 
+     * @return                  <tt>true</tt> if the goal is matched here
+     */
+    public boolean isCompleteAt( long[] occupied, long[][] occupiedByType,
+            int origin ) {
+        // every goal square must hold an atom of the same type (types make
+        // duplicate atoms interchangeable)...
+        for ( int i = 0; i < goalOffsets.length; i++ ) {
+            if ( ! Bitboard.get( occupiedByType[ goalTypes[ i ] ],
+                    origin + goalOffsets[ i ] ) ) {
+                return false;
+            }
+        }
         
-        // pass a kernel over the board.  not the most efficient, but it works
-        for ( int y = 0; ( ( y < ymax ) && ( ! retVal ) );  y++ ) {
-            for ( int x = 0; ( ( x < xmax ) && ( ! retVal ) ); x++ ) {
-                boolean goalFound = true;
-                
-                // check all parts of the kernel
-                for ( int y0 = 0; ( ( y0 < goal.length ) && goalFound );
-                        y0++ ) {
-                    for ( int x0 = 0; ( ( x0 < goal[ 0 ].length )
-                            && goalFound ); x0++ ) {
-                        
-                        Square boardSqr = board[ y + y0 ][ x + x0 ];
-                        Square goalSqr = goal[ y0 ][ x0 ];
-                        
-                        // @todo fix this mess!!  now hiring: better algorithm
-                        // throwing ideas against a wall: Square.NULL instead of
-                        // using null and use .equals() for all comparison?
-                        // could work........
-                        if ( ( boardSqr instanceof Atom ) &&
-                                ( goalSqr instanceof Atom ) ) {
-                            Atom boardAtom = ( Atom )boardSqr;
-                            Atom goalAtom = ( Atom )goalSqr;
-                            // the .equals() comparison is deep, and checks more
-                            // than just ID, to allow duplicate atoms to be
-                            // interchangeable
-                            if ( ! goalAtom.equals( boardAtom ) ) {
-                                goalFound = false;
-                            }
-                        } else if ( ( goalSqr instanceof Atom ) &&
-                                ( ! ( boardSqr instanceof Atom ) ) ) {
-                            goalFound = false;
-                        } else if ( ( boardSqr instanceof Atom ) &&
-                                ( ! ( goalSqr instanceof Atom ) ) ) {
-                            goalFound = false;
-                        }
-                    }
+        // ...and no other square of the kernel may hold an atom (which can
+        // only happen if there are more atoms than the goal needs)
+        if ( extraAtoms ) {
+            for ( int i = 0; i < blankOffsets.length; i++ ) {
+                if ( Bitboard.get( occupied, origin + blankOffsets[ i ] ) ) {
+                    return false;
                 }
-                retVal = goalFound;
             }
         }
-        return retVal;
+        return true;
     }
     
     /**
@@ -232,7 +802,7 @@ public class Level implements Comparable<Level> {
         
         String line = null;
         LevelFileSection section = null;
-        level.atoms = new HashMap<Short, Atom>();
+        level.atomsById = new Atom[ MAX_ATOM_IDS ];
         int y = -1;
         int goalY = -1;
         try {
@@ -322,7 +892,7 @@ public class Level implements Comparable<Level> {
                                 Atom molecule = new Atom( id, element,
                                         connectors );
                                 
-                                level.atoms.put( id, molecule );
+                                level.atomsById[ id ] = molecule;
                             } catch ( Exception e ) {
                                 throw new LevelFileFormatException(
                                         "Error with atom formats." );
@@ -354,7 +924,7 @@ public class Level implements Comparable<Level> {
                                                     + ( row[ x ] - 'a' ) );
                                         }
                                         
-                                        sqr = level.getAtom( id );
+                                        sqr = level.getAtomById( id );
                                     } catch ( Exception e ) {
                                         Log.e( "LevelLoader",
                                                 Log.getStackTraceString( e ) );
@@ -403,7 +973,7 @@ public class Level implements Comparable<Level> {
                                                     + ( row[ x ] - 'a' ) );
                                         }
                                         
-                                        sqr = level.getAtom( id );
+                                        sqr = level.getAtomById( id );
                                     } catch ( Exception e ) {
                                         Log.e( "LevelLoader",
                                                 Log.getStackTraceString( e ) );
@@ -421,7 +991,241 @@ public class Level implements Comparable<Level> {
                     + Log.getStackTraceString( e ) );
         }
         
+        level.buildBitboards();
+        level.buildAtomIndex();
+        level.buildLayout();
+        level.buildStopTables();
+        level.buildTypes();
+        level.buildGoalTables();
+        level.buildZobristKeys();
+        level.buildHash();
+        
         return level;
     }
     
+    /**
+     * Builds the padded flat board and its wall bitboards from the parsed
+     * board.  Blank space outside the board is treated the same as a wall,
+     * since atoms may never enter it, and a ring of walls is added around
+     * the whole board so that levels whose open squares touch the edge are
+     * still closed.
+     */
+    private void buildBitboards() {
+        height = board.length;
+        width = board[ 0 ].length;
+        stride = width + 2;
+        int columnStride = height + 2;
+        cells = stride * columnStride;
+        if ( cells > Moves.MAX_CELLS ) {
+            throw new LevelFileFormatException( "Board is too large." );
+        }
+        
+        columnOf = new int[ cells ];
+        cellOf = new int[ cells ];
+        walls = newBitboard();
+        for ( int y = -1; y <= height; y++ ) {
+            for ( int x = -1; x <= width; x++ ) {
+                int cell = cell( x, y );
+                int column = ( x + 1 ) * columnStride + ( y + 1 );
+                columnOf[ cell ] = column;
+                cellOf[ column ] = cell;
+                
+                boolean onBoard = ( ( x >= 0 ) && ( x < width ) &&
+                        ( y >= 0 ) && ( y < height ) );
+                Square sqr = ( onBoard ? board[ y ][ x ] : null );
+                if ( ( sqr == null ) || ( sqr instanceof Square.Wall ) ) {
+                    Bitboard.set( walls, cell );
+                }
+            }
+        }
+    }
+    
+    /**
+     * Builds the table of wall-only slide stops for every open square.  Wall
+     * squares are never slid from, so their entries are left as zero.
+     */
+    private void buildStopTables() {
+        wallStops = new int[ cells * DIRECTIONS ];
+        for ( int cell = 0; cell < cells; cell++ ) {
+            if ( ! Bitboard.get( walls, cell ) ) {
+                for ( int dir = 0; dir < DIRECTIONS; dir++ ) {
+                    int step = offset( dir );
+                    int stop = cell;
+                    while ( ! Bitboard.get( walls, stop + step ) ) {
+                        stop += step;
+                    }
+                    wallStops[ cell * DIRECTIONS + dir ] = stop;
+                }
+            }
+        }
+    }
+    
+    /**
+     * Copies the board without its atoms, for game states to share, and
+     * records the square each atom starts on.
+     */
+    private void buildLayout() {
+        layout = copyBoard();
+        start = new int[ atoms.length ];
+        for ( int y = 0; y < height; y++ ) {
+            for ( int x = 0; x < width; x++ ) {
+                if ( layout[ y ][ x ] instanceof Atom ) {
+                    start[ ( ( Atom )layout[ y ][ x ] ).getIndex() ] =
+                            cell( x, y );
+                    layout[ y ][ x ] = Square.EMPTY;
+                }
+            }
+        }
+    }
+    
+    /**
+     * Numbers the atoms densely, in ID order, so that every per-atom table
+     * (and every saved game) can be a plain array.
+     */
+    private void buildAtomIndex() {
+        int count = 0;
+        for ( int id = 0; id < atomsById.length; id++ ) {
+            if ( atomsById[ id ] != null ) {
+                count++;
+            }
+        }
+        
+        atoms = new Atom[ count ];
+        int index = 0;
+        for ( int id = 0; id < atomsById.length; id++ ) {
+            if ( atomsById[ id ] != null ) {
+                atomsById[ id ].setIndex( index );
+                atoms[ index++ ] = atomsById[ id ];
+            }
+        }
+    }
+    
+    /**
+     * Sorts the atoms into types of interchangeable atoms, interning each
+     * atom's canonical type as a small, dense number.  Types are numbered in
+     * atom order, so they are the same every time the level is loaded.
+     */
+    private void buildTypes() {
+        Map<Integer, Integer> interned = new HashMap<Integer, Integer>();
+        types = new int[ atoms.length ];
+        for ( int i = 0; i < atoms.length; i++ ) {
+            Integer type = interned.get( atoms[ i ].getType() );
+            if ( type == null ) {
+                type = interned.size();
+                interned.put( atoms[ i ].getType(), type );
+            }
+            types[ i ] = type;
+        }
+        typeCount = interned.size();
+    }
+    
+    /**
+     * Generates a random Zobrist key for every atom type on every square.
+     */
+    private void buildZobristKeys() {
+        Random random = new Random( ZOBRIST_SEED );
+        zobristKeys = new long[ typeCount * cells ];
+        for ( int i = 0; i < zobristKeys.length; i++ ) {
+            zobristKeys[ i ] = random.nextLong();
+        }
+    }
+    
+    /**
+     * Hashes the board, the atoms and the goal, so that tables derived from
+     * the level can be cached across runs and still be told apart when the
+     * level file changes.
+     */
+    private void buildHash() {
+        long h = HASH_BASIS;
+        h = ( h ^ width ) * HASH_PRIME;
+        h = ( h ^ height ) * HASH_PRIME;
+        for ( int i = 0; i < walls.length; i++ ) {
+            h = ( h ^ walls[ i ] ) * HASH_PRIME;
+        }
+        for ( int i = 0; i < atoms.length; i++ ) {
+            h = ( h ^ start[ i ] ) * HASH_PRIME;
+            h = ( h ^ atoms[ i ].getType() ) * HASH_PRIME;
+        }
+        for ( int y = 0; y < goal.length; y++ ) {
+            for ( int x = 0; x < goal[ y ].length; x++ ) {
+                int type = ( goal[ y ][ x ] instanceof Atom ?
+                        ( ( Atom )goal[ y ][ x ] ).getType() : -1 );
+                h = ( h ^ type ) * HASH_PRIME;
+            }
+            h = ( h ^ -2 ) * HASH_PRIME;
+        }
+        hash = h;
+    }
+    
+    /**
+     * Splits the goal kernel into the offsets of its atoms and the offsets of
+     * its empty squares, indexes the atom offsets by type, and finds every
+     * square where the kernel fits on the board without a goal atom on a
+     * wall, so that win checks never have to walk the kernel or the board.
+     */
+    private void buildGoalTables() {
+        int goalHeight = goal.length;
+        int goalWidth = goal[ 0 ].length;
+        
+        List<Integer> atomOffsets = new ArrayList<Integer>();
+        List<Integer> blanks = new ArrayList<Integer>();
+        for ( int y = 0; y < goalHeight; y++ ) {
+            for ( int x = 0; x < goalWidth; x++ ) {
+                if ( goal[ y ][ x ] instanceof Atom ) {
+                    atomOffsets.add( y * stride + x );
+                } else {
+                    blanks.add( y * stride + x );
+                }
+            }
+        }
+        
+        goalOffsets = new int[ atomOffsets.size() ];
+        goalTypes = new int[ atomOffsets.size() ];
+        int[] typeCounts = new int[ typeCount ];
+        for ( int i = 0; i < goalOffsets.length; i++ ) {
+            int offset = atomOffsets.get( i );
+            Atom atom = ( Atom )goal[ offset / stride ][ offset % stride ];
+            goalOffsets[ i ] = offset;
+            goalTypes[ i ] = types[ atom.getIndex() ];
+            typeCounts[ goalTypes[ i ] ]++;
+        }
+        
+        typeGoalOffsets = new int[ typeCount ][];
+        for ( int type = 0; type < typeCount; type++ ) {
+            typeGoalOffsets[ type ] = new int[ typeCounts[ type ] ];
+            typeCounts[ type ] = 0;
+        }
+        for ( int i = 0; i < goalOffsets.length; i++ ) {
+            int type = goalTypes[ i ];
+            typeGoalOffsets[ type ][ typeCounts[ type ]++ ] = goalOffsets[ i ];
+        }
+        
+        blankOffsets = new int[ blanks.size() ];
+        for ( int i = 0; i < blankOffsets.length; i++ ) {
+            blankOffsets[ i ] = blanks.get( i );
+        }
+        
+        goalOrigins = newBitboard();
+        List<Integer> origins = new ArrayList<Integer>();
+        for ( int y = 0; y <= ( height - goalHeight ); y++ ) {
+            for ( int x = 0; x <= ( width - goalWidth ); x++ ) {
+                int origin = cell( x, y );
+                boolean fits = true;
+                for ( int i = 0; ( i < goalOffsets.length ) && fits; i++ ) {
+                    fits = ! isWall( origin + goalOffsets[ i ] );
+                }
+                if ( fits ) {
+                    Bitboard.set( goalOrigins, origin );
+                    origins.add( origin );
+                }
+            }
+        }
+        placements = new int[ origins.size() ];
+        for ( int i = 0; i < placements.length; i++ ) {
+            placements[ i ] = origins.get( i );
+        }
+        
+        extraAtoms = ( atoms.length > goalOffsets.length );
+    }
+    
 } // Level
@@ -101,13 +101,27 @@ public class LevelManager {
                         + levelFile );
                 level = Level.loadLevel( is );
                 
-                levelMap.put( level.getLevel(), level );
+                addLevel( level );
             }
         } catch ( Exception e ) {
             Log.e( "LevelManager", Log.getStackTraceString( e ) );
         }
     }
     
+    /**
+     * Adds a level to this object, replacing any level with the same level
+     * number.  This lets levels be read from somewhere other than the Android
+     * assets, e.g. by tests that have no application context.
+     * 
+     * @param   level   the level to add
+     */
+    public void addLevel( Level level ) {
+        if ( levelMap == null ) {
+            levelMap = new HashMap<Integer, Level>();
+        }
+        levelMap.put( level.getLevel(), level );
+    }
+    
     /**
      * Returns the level with the specified level number.
      * 
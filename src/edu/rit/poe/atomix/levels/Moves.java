@@ -0,0 +1,175 @@
+/*
+ * Moves.java
+ *
+ * Version:
+ *      $Id$
+ *
+ * Copyright (c) 2009 Peter O. Erickson
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package edu.rit.poe.atomix.levels;
+
+/**
+ * A collection of static methods for packing a move into a single
+ * <tt>int</tt>, so that moves can be generated, stored and undone without
+ * allocating any objects.
+ * <p>
+ * A packed move holds, from the most significant bits down: the atom (6
+ * bits), the direction (2 bits), the square the atom started on (12 bits)
+ * and the square it stopped on (12 bits).  Squares are the row-major indices
+ * of the padded board, as returned by <tt>Level.cell()</tt>.
+ * 
+ * @author  Peter O. Erickson
+ * 
+ * @version $Id$
+ */
+public final class Moves {
+    
+    /** A value that is never a valid packed move. */
+    public static final int NONE = -1;
+    
+    /** The number of squares a packed move can address. */
+    public static final int MAX_CELLS = 1 << 12;
+    
+    /** The number of atoms a packed move can address. */
+    public static final int MAX_ATOMS = 1 << 6;
+    
+    /** The bit position of the starting square. */
+    private static final int FROM_SHIFT = 12;
+    
+    /** The bit position of the direction. */
+    private static final int DIRECTION_SHIFT = 24;
+    
+    /** The bit position of the atom. */
+    private static final int ATOM_SHIFT = 26;
+    
+    /** The mask of a square field. */
+    private static final int CELL_MASK = MAX_CELLS - 1;
+    
+    /** The mask of the direction field. */
+    private static final int DIRECTION_MASK = 3;
+    
+    /**
+     * Constructs a new <tt>Moves</tt> (disabled).
+     */
+    private Moves() {
+    }
+    
+    /**
+     * Packs a move into an <tt>int</tt>.
+     * 
+     * @param   atom        the atom that moved
+     * @param   direction   the direction it moved in
+     * @param   from        the square it started on
+     * @param   to          the square it stopped on
+     * 
+     * @return              the packed move
+     */
+    public static int pack( int atom, int direction, int from, int to ) {
+        return ( ( atom << ATOM_SHIFT ) | ( direction << DIRECTION_SHIFT ) |
+                ( from << FROM_SHIFT ) | to );
+    }
+    
+    /**
+     * Returns the atom of a packed move.
+     * 
+     * @param   move    the packed move
+     * 
+     * @return          the atom that moved
+     */
+    public static int getAtom( int move ) {
+        return ( move >>> ATOM_SHIFT );
+    }
+    
+    /**
+     * Returns the direction of a packed move.
+     * 
+     * @param   move    the packed move
+     * 
+     * @return          one of the <tt>Level</tt> direction constants
+     */
+    public static int getDirection( int move ) {
+        return ( ( move >>> DIRECTION_SHIFT ) & DIRECTION_MASK );
+    }
+    
+    /**
+     * Returns the starting square of a packed move.
+     * 
+     * @param   move    the packed move
+     * 
+     * @return          the row-major index the atom started on
+     */
+    public static int getFrom( int move ) {
+        return ( ( move >>> FROM_SHIFT ) & CELL_MASK );
+    }
+    
+    /**
+     * Returns the ending square of a packed move.
+     * 
+     * @param   move    the packed move
+     * 
+     * @return          the row-major index the atom stopped on
+     */
+    public static int getTo( int move ) {
+        return ( move & CELL_MASK );
+    }
+    
+    /**
+     * Returns whether two moves of different atoms, played one after the
+     * other, would have been the same moves in the other order.  A move's
+     * footprint is the line of squares it slides over, from the square after
+     * its start to the square that stopped it.  The moves commute if neither
+     * one's start or end square is in the other's footprint: then neither
+     * atom is in the other's way, or stops it, before or after.
+     * 
+     * @param   level   the level the moves are on
+     * @param   first   the packed move played first
+     * @param   second  the packed move played second
+     * 
+     * @return          <tt>true</tt> if the moves commute
+     */
+    public static boolean isIndependent( Level level, int first,
+            int second ) {
+        return ( ( getAtom( first ) != getAtom( second ) ) &&
+                ! isOnLine( level, first, getFrom( second ) ) &&
+                ! isOnLine( level, first, getTo( second ) ) &&
+                ! isOnLine( level, second, getFrom( first ) ) &&
+                ! isOnLine( level, second, getTo( first ) ) );
+    }
+    
+    /**
+     * Returns whether a square is in the footprint of a move.
+     * 
+     * @param   level   the level the move is on
+     * @param   move    the packed move
+     * @param   cell    the row-major index of the square
+     * 
+     * @return          <tt>true</tt> if the move slides over the square or
+     *                  is stopped by it
+     */
+    static boolean isOnLine( Level level, int move, int cell ) {
+        int step = level.offset( getDirection( move ) );
+        int from = getFrom( move );
+        int offset = cell - from;
+        if ( offset % step != 0 ) {
+            return false;
+        }
+        int k = offset / step;
+        return ( ( k >= 1 ) && ( k <= ( getTo( move ) - from ) / step + 1 ) );
+    }
+    
+} // Moves
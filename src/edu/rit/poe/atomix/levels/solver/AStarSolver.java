@@ -0,0 +1,210 @@
+/*
+ * AStarSolver.java
+ *
+ * Version:
+ *      $Id$
+ *
+ * Copyright (c) 2009 Peter O. Erickson
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package edu.rit.poe.atomix.levels.solver;
+
+import edu.rit.poe.atomix.levels.Level;
+import edu.rit.poe.atomix.levels.Moves;
+
+/**
+ * A solver that expands positions in order of moves made plus the
+ * heuristic's estimate of moves left (A*).  With an admissible heuristic the
+ * first goal position expanded is reached by a shortest solution.
+ * <p>
+ * The heuristic need not be consistent: a position that is reached again by
+ * a shorter path is reopened.  The open list is a heap of packed entries,
+ * and stale entries are skipped when they surface.
+ * 
+ * @author  Peter O. Erickson
+ * 
+ * @version $Id$
+ */
+public class AStarSolver extends Solver {
+    
+    /** The number of positions the state set is created for. */
+    private static final int INITIAL_CAPACITY = 1 << 16;
+    
+    /** The largest path length an open list entry can hold. */
+    private static final int MAX_COST = 0xffff;
+    
+    /**
+     * The largest estimated total cost an open list entry can hold.  It takes
+     * the top 16 bits of the entry, less the sign bit: <tt>LongHeap</tt>
+     * compares entries as signed values, so a larger estimate would sort
+     * first instead of last.
+     */
+    static final int MAX_ESTIMATE = 0x7fff;
+    
+    /** The heuristic that orders the search. */
+    private final Heuristic heuristic;
+    
+    /**
+     * Constructs a new <tt>AStarSolver</tt> that uses a
+     * <tt>AssignmentHeuristic</tt>.
+     * 
+     * @param   level   the level to solve
+     */
+    public AStarSolver( Level level ) {
+        this( level, new AssignmentHeuristic( level ) );
+    }
+    
+    /**
+     * Constructs a new <tt>AStarSolver</tt> with the specified heuristic.
+     * 
+     * @param   level       the level to solve
+     * @param   heuristic   an admissible heuristic for the level
+     */
+    public AStarSolver( Level level, Heuristic heuristic ) {
+        super( level );
+        this.heuristic = heuristic;
+    }
+    
+    /**
+     * Returns the heuristic that orders the search.
+     * 
+     * @return  the heuristic
+     */
+    public Heuristic getHeuristic() {
+        return heuristic;
+    }
+    
+    /**
+     * Solves the level from the specified position.
+     * 
+     * @param   start   the square of every atom, indexed by atom index
+     * 
+     * @return          a shortest solution, or <tt>null</tt> if there is none
+     *                  (or the state limit was reached first)
+     */
+    @Override
+    public Solution solve( int[] start ) {
+        long begin = System.currentTimeMillis();
+        int atomCount = level.getAtomCount();
+        int words = codec.getWords();
+        
+        int h = heuristic.estimate( start );
+        if ( h == Heuristic.DEAD ) {
+            return null;
+        }
+        
+        StateSet states = new StateSet( words, INITIAL_CAPACITY );
+        int[] costs = new int[ INITIAL_CAPACITY ];
+        LongHeap open = new LongHeap( INITIAL_CAPACITY );
+        long[] key = new long[ words ];
+        int[] cells = new int[ atomCount ];
+        Position position = new Position( level );
+        
+        codec.encode( start, key, 0 );
+        states.add( key, 0, -1, Moves.NONE );
+        open.add( entry( 0, h, 0 ) );
+        
+        long expanded = 0;
+        while ( ! open.isEmpty() ) {
+            long entry = open.poll();
+            int n = ( int )entry;
+            int cost = MAX_COST - ( ( int )( entry >>> 32 ) & MAX_COST );
+            if ( cost != costs[ n ] ) {
+                // a shorter path to this position was found after this
+                // entry was added
+                continue;
+            }
+            
+            codec.decode( states.getKeys(), n * words, cells );
+            position.set( cells );
+            if ( position.isComplete() ) {
+                return new Solution( resolve( start, states.getPath( n ) ),
+                        expanded, System.currentTimeMillis() - begin );
+            }
+            expanded++;
+            
+            for ( int atom = 0; atom < atomCount; atom++ ) {
+                int from = cells[ atom ];
+                for ( int dir = 0; dir < Level.DIRECTIONS; dir++ ) {
+                    int to = position.slide( atom, dir );
+                    if ( to == from ) {
+                        continue;
+                    }
+                    
+                    position.move( atom, to );
+                    codec.encode( position.getCells(), key, 0 );
+                    int move = Moves.pack( atom, dir, from, to );
+                    int child = states.find( key, 0 );
+                    if ( child < 0 ) {
+                        child = states.add( key, 0, n, move );
+                        if ( child == costs.length ) {
+                            int[] grown = new int[ child * 2 ];
+                            System.arraycopy( costs, 0, grown, 0, child );
+                            costs = grown;
+                        }
+                        costs[ child ] = cost + 1;
+                        push( open, position, child, cost + 1 );
+                    } else if ( cost + 1 < costs[ child ] ) {
+                        states.setParent( child, n, move );
+                        costs[ child ] = cost + 1;
+                        push( open, position, child, cost + 1 );
+                    }
+                    position.move( atom, from );
+                }
+            }
+            
+            if ( states.size() > getStateLimit() ) {
+                break;
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * Estimates a newly reached position and adds it to the open list,
+     * unless the goal can no longer be reached from it.
+     * 
+     * @param   open        the open list
+     * @param   position    the position
+     * @param   n           the number of the position
+     * @param   cost        the number of moves made to reach it
+     */
+    private void push( LongHeap open, Position position, int n, int cost ) {
+        int h = heuristic.estimate( position.getCells() );
+        if ( h != Heuristic.DEAD ) {
+            open.add( entry( n, h, cost ) );
+        }
+    }
+    
+    /**
+     * Packs an open list entry.  Entries sort by estimated total cost, then
+     * by most moves made (so ties go deeper), then by position number.
+     * 
+     * @param   n       the number of the position
+     * @param   h       the estimated number of moves left
+     * @param   cost    the number of moves made
+     * 
+     * @return          the packed entry
+     */
+    static long entry( int n, int h, int cost ) {
+        long f = Math.min( MAX_ESTIMATE, ( long )cost + h );
+        return ( ( f << 48 ) | ( ( long )( MAX_COST - cost ) << 32 )
+                | ( n & 0xffffffffL ) );
+    }
+    
+} // AStarSolver
@@ -0,0 +1,417 @@
+/*
+ * AnytimeSolver.java
+ *
+ * Version:
+ *      $Id$
+ *
+ * Copyright (c) 2009 Peter O. Erickson
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package edu.rit.poe.atomix.levels.solver;
+
+import edu.rit.poe.atomix.levels.Level;
+import edu.rit.poe.atomix.levels.Moves;
+
+/**
+ * A solver that returns the best solution it can find within a time budget,
+ * and keeps improving it if given more time.  It runs weighted A* searches
+ * with a decreasing weight: a search at weight <i>w</i> orders positions by
+ * moves made plus <i>w</i> times the heuristic's estimate, so it finds a
+ * solution at most <i>w</i> times longer than a shortest one, quickly.  Each
+ * following search drops positions that cannot beat the best solution so
+ * far, and the last one, at weight 1, is a plain A* search.
+ * <p>
+ * Alongside the best solution the solver keeps a lower bound on the length
+ * of a shortest one, so a caller can tell how far from optimal it is.  Once
+ * the two meet, the solution is known to be a shortest one.  A search cut
+ * short by the time budget is picked up again by the next call to
+ * <tt>improve()</tt>, so a caller can spread the work over several short
+ * calls.
+ * <p>
+ * The best solution and the bound may be read from another thread while the
+ * search runs, such as a UI thread showing a hint.
+ * 
+ * @author  Peter O. Erickson
+ * 
+ * @version $Id$
+ */
+public class AnytimeSolver extends Solver {
+    
+    /** The default time budget of a call, in milliseconds. */
+    public static final long DEFAULT_TIME_BUDGET = 1000;
+    
+    /** The weights of the searches, in tenths, in the order they are run. */
+    private static final int[] WEIGHTS = { 50, 30, 20, 15, 12, 10 };
+    
+    /** The number of positions the state set is created for. */
+    private static final int INITIAL_CAPACITY = 1 << 16;
+    
+    /** The largest path length an entry can hold. */
+    private static final int MAX_COST = 0xffff;
+    
+    /**
+     * The largest weighted cost, in tenths, an entry can hold.  Costs above
+     * it are clamped; they must not reach the sign bit, or the heap would
+     * hand them out first.
+     */
+    static final int MAX_ESTIMATE = 0x7fff;
+    
+    /** The number of expansions between checks of the clock. */
+    private static final int CLOCK_INTERVAL = 256;
+    
+    /** The heuristic that orders the search. */
+    private final Heuristic heuristic;
+    
+    /** The wall-clock time each call may take, in milliseconds. */
+    private long timeBudget;
+    
+    /** The position being solved, or <tt>null</tt> before the first call. */
+    private int[] start;
+    
+    /** The number of the search to run next (see <tt>WEIGHTS</tt>). */
+    private int next;
+    
+    /** The number of positions expanded for the position so far. */
+    private long expanded;
+    
+    /** The time spent on the position so far, in milliseconds. */
+    private long millis;
+    
+    /** The best solution found so far, or <tt>null</tt>. */
+    private volatile Solution best;
+    
+    /** The least length a solution can have, as far as is known. */
+    private volatile int lowerBound;
+    
+    /** Whether the search has nothing left to improve. */
+    private volatile boolean finished;
+    
+    /** The positions reached by the search under way, or <tt>null</tt>. */
+    private StateSet states;
+    
+    /** The moves made to reach each position of the search under way. */
+    private int[] costs;
+    
+    /** The open list of the search under way. */
+    private LongHeap open;
+    
+    /** The length of the best solution when the search under way began. */
+    private int limit;
+    
+    /** Whether the last search ran out of positions to expand. */
+    private boolean exhausted;
+    
+    /** Whether the last search reached the state limit. */
+    private boolean limited;
+    
+    /**
+     * Constructs a new <tt>AnytimeSolver</tt> that uses a
+     * <tt>AssignmentHeuristic</tt>.
+     * 
+     * @param   level   the level to solve
+     */
+    public AnytimeSolver( Level level ) {
+        this( level, new AssignmentHeuristic( level ) );
+    }
+    
+    /**
+     * Constructs a new <tt>AnytimeSolver</tt> with the specified heuristic.
+     * 
+     * @param   level       the level to solve
+     * @param   heuristic   an admissible heuristic for the level
+     */
+    public AnytimeSolver( Level level, Heuristic heuristic ) {
+        super( level );
+        this.heuristic = heuristic;
+        this.timeBudget = DEFAULT_TIME_BUDGET;
+    }
+    
+    /**
+     * Returns the heuristic that orders the search.
+     * 
+     * @return  the heuristic
+     */
+    public Heuristic getHeuristic() {
+        return heuristic;
+    }
+    
+    /**
+     * Returns the wall-clock time each call to <tt>solve()</tt> or
+     * <tt>improve()</tt> may take.
+     * 
+     * @return  the time budget in milliseconds
+     */
+    public long getTimeBudget() {
+        return timeBudget;
+    }
+    
+    /**
+     * Sets the wall-clock time each call to <tt>solve()</tt> or
+     * <tt>improve()</tt> may take.
+     * 
+     * @param   timeBudget  the time budget in milliseconds
+     */
+    public void setTimeBudget( long timeBudget ) {
+        this.timeBudget = timeBudget;
+    }
+    
+    /**
+     * Returns the best solution found so far.
+     * 
+     * @return  the best solution, or <tt>null</tt> if none has been found
+     */
+    public Solution getBest() {
+        return best;
+    }
+    
+    /**
+     * Returns the least number of moves a solution can have, as far as the
+     * search has found out.
+     * 
+     * @return  the lower bound on the length of a shortest solution
+     */
+    public int getLowerBound() {
+        return lowerBound;
+    }
+    
+    /**
+     * Returns the weight of the next search, so the best solution will be at
+     * most this many times longer than a shortest one once it has run.
+     * 
+     * @return  the weight, or 1 once the search is finished
+     */
+    public double getWeight() {
+        return ( finished ? 1.0 : WEIGHTS[ next ] / 10.0 );
+    }
+    
+    /**
+     * Returns whether the search has nothing left to improve: the best
+     * solution is a shortest one, there is no solution, or the state limit
+     * was reached.
+     * 
+     * @return  <tt>true</tt> if more time would not help
+     */
+    public boolean isFinished() {
+        return finished;
+    }
+    
+    /**
+     * Searches the level from the specified position for up to the time
+     * budget.
+     * 
+     * @param   start   the square of every atom, indexed by atom index
+     * 
+     * @return          the best solution found, or <tt>null</tt> if none was
+     *                  found in time (or there is none)
+     */
+    @Override
+    public Solution solve( int[] start ) {
+        this.start = start.clone();
+        next = 0;
+        expanded = 0;
+        millis = 0;
+        best = null;
+        finished = false;
+        states = null;
+        costs = null;
+        open = null;
+        
+        int h = heuristic.estimate( start );
+        lowerBound = ( h == Heuristic.DEAD ? 0 : h );
+        if ( h == Heuristic.DEAD ) {
+            finished = true;
+            return null;
+        }
+        return improve();
+    }
+    
+    /**
+     * Searches the position of the last call to <tt>solve()</tt> for up to
+     * another time budget, starting where that call left off.
+     * 
+     * @return  the best solution found so far, or <tt>null</tt> if none has
+     *          been found (or there is none)
+     */
+    public Solution improve() {
+        if ( start == null ) {
+            throw new IllegalStateException( "Nothing to improve." );
+        }
+        long begin = System.currentTimeMillis();
+        long deadline = begin + timeBudget;
+        
+        while ( ! finished && ( System.currentTimeMillis() < deadline ) ) {
+            int weight = WEIGHTS[ next ];
+            int[] moves = search( weight, deadline );
+            if ( moves != null ) {
+                best = new Solution( resolve( start, moves ), expanded,
+                        millis + System.currentTimeMillis() - begin );
+                
+                // a search at weight w is at most w times too long
+                lowerBound = Math.max( lowerBound,
+                        ( moves.length * 10 + weight - 1 ) / weight );
+                next = Math.min( next + 1, WEIGHTS.length - 1 );
+            } else if ( exhausted ) {
+                // every position that could beat the best was searched
+                lowerBound = ( best == null ? lowerBound : best.getLength() );
+                finished = true;
+            } else if ( limited ) {
+                // a smaller weight would only need more positions
+                finished = true;
+            }
+            if ( ( best != null ) && ( best.getLength() <= lowerBound ) ) {
+                finished = true;
+            }
+        }
+        
+        millis += System.currentTimeMillis() - begin;
+        return best;
+    }
+    
+    /**
+     * Runs one weighted A* search for a solution shorter than the best so
+     * far, or goes on with the one the last deadline cut short.
+     * 
+     * @param   weight      the weight of the estimates, in tenths
+     * @param   deadline    the time to give up at
+     * 
+     * @return              the moves of a shorter solution, or
+     *                      <tt>null</tt> if there is none, or the deadline
+     *                      or the state limit was reached first
+     */
+    private int[] search( int weight, long deadline ) {
+        int atomCount = level.getAtomCount();
+        int words = codec.getWords();
+        long[] key = new long[ words ];
+        int[] cells = new int[ atomCount ];
+        Position position = new Position( level );
+        exhausted = false;
+        limited = false;
+        
+        if ( states == null ) {
+            limit = ( best == null ? MAX_COST : best.getLength() );
+            states = new StateSet( words, INITIAL_CAPACITY );
+            costs = new int[ INITIAL_CAPACITY ];
+            open = new LongHeap( INITIAL_CAPACITY );
+            codec.encode( start, key, 0 );
+            states.add( key, 0, -1, Moves.NONE );
+            open.add( entry( 0, heuristic.estimate( start ), 0, weight ) );
+        }
+        
+        long count = 0;
+        int[] moves = null;
+        while ( ! open.isEmpty() ) {
+            long entry = open.poll();
+            int n = ( int )entry;
+            int cost = MAX_COST - ( ( int )( entry >>> 32 ) & MAX_COST );
+            if ( cost != costs[ n ] ) {
+                // a shorter path to this position was found after this
+                // entry was added
+                continue;
+            }
+            
+            codec.decode( states.getKeys(), n * words, cells );
+            position.set( cells );
+            if ( position.isComplete() ) {
+                moves = states.getPath( n );
+                break;
+            }
+            expanded++;
+            
+            for ( int atom = 0; atom < atomCount; atom++ ) {
+                int from = cells[ atom ];
+                for ( int dir = 0; dir < Level.DIRECTIONS; dir++ ) {
+                    int to = position.slide( atom, dir );
+                    if ( to == from ) {
+                        continue;
+                    }
+                    
+                    position.move( atom, to );
+                    codec.encode( position.getCells(), key, 0 );
+                    int move = Moves.pack( atom, dir, from, to );
+                    int child = states.find( key, 0 );
+                    if ( child < 0 ) {
+                        child = states.add( key, 0, n, move );
+                        if ( child == costs.length ) {
+                            int[] grown = new int[ child * 2 ];
+                            System.arraycopy( costs, 0, grown, 0, child );
+                            costs = grown;
+                        }
+                        costs[ child ] = cost + 1;
+                        push( position, child, cost + 1, weight );
+                    } else if ( cost + 1 < costs[ child ] ) {
+                        states.setParent( child, n, move );
+                        costs[ child ] = cost + 1;
+                        push( position, child, cost + 1, weight );
+                    }
+                    position.move( atom, from );
+                }
+            }
+            
+            if ( states.size() > getStateLimit() ) {
+                limited = true;
+                break;
+            }
+            if ( ( ++count % CLOCK_INTERVAL == 0 ) &&
+                    ( System.currentTimeMillis() >= deadline ) ) {
+                // keep the search to go on with next time
+                return null;
+            }
+        }
+        
+        exhausted = open.isEmpty();
+        states = null;
+        costs = null;
+        open = null;
+        return moves;
+    }
+    
+    /**
+     * Estimates a newly reached position and adds it to the open list,
+     * unless the goal can no longer be reached from it in fewer moves than
+     * the best solution so far.
+     * 
+     * @param   position    the position
+     * @param   n           the number of the position
+     * @param   cost        the number of moves made to reach it
+     * @param   weight      the weight of the estimate, in tenths
+     */
+    private void push( Position position, int n, int cost, int weight ) {
+        int h = heuristic.estimate( position.getCells() );
+        if ( ( h != Heuristic.DEAD ) && ( cost + h < limit ) ) {
+            open.add( entry( n, h, cost, weight ) );
+        }
+    }
+    
+    /**
+     * Packs an open list entry.  Entries sort by weighted estimated total
+     * cost, then by most moves made, then by position number.
+     * 
+     * @param   n       the number of the position
+     * @param   h       the estimated number of moves left
+     * @param   cost    the number of moves made
+     * @param   weight  the weight of the estimate, in tenths
+     * 
+     * @return          the packed entry
+     */
+    static long entry( int n, int h, int cost, int weight ) {
+        long f = Math.min( MAX_ESTIMATE, cost * 10L + ( long )h * weight );
+        return ( ( f << 48 ) | ( ( long )( MAX_COST - cost ) << 32 )
+                | ( n & 0xffffffffL ) );
+    }
+    
+} // AnytimeSolver
@@ -0,0 +1,469 @@
+/*
+ * AssignmentHeuristic.java
+ *
+ * Version:
+ *      $Id$
+ *
+ * Copyright (c) 2009 Peter O. Erickson
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package edu.rit.poe.atomix.levels.solver;
+
+import edu.rit.poe.atomix.levels.Level;
+import edu.rit.poe.atomix.util.Bitboard;
+import java.util.Arrays;
+
+/**
+ * A heuristic that, for every feasible placement of the goal kernel, finds
+ * the cheapest way to send a different atom to each goal square, and takes
+ * the cheapest placement.  The cost of sending an atom to a square is its
+ * slide distance (see <tt>SlideDistances</tt>).
+ * <p>
+ * Goal squares of different types can't compete for atoms, so each type is
+ * a separate assignment problem, solved with the Hungarian algorithm.  When
+ * a goal has several atoms of one type, this no longer lets two goal
+ * squares count the same nearest atom, as <tt>SlideHeuristic</tt> does, so
+ * its estimates are never lower and often much higher.  Atoms that can no
+ * longer get to a goal square (see <tt>Reachability</tt>) are not assigned
+ * to it.
+ * <p>
+ * The cost of every type at every placement is cached with the squares of
+ * that type's atoms.  A move changes the squares of one type only, so the
+ * next estimate solves just that type's problems again.  An instance keeps
+ * scratch state, so each thread needs its own.
+ * 
+ * @author  Peter O. Erickson
+ * 
+ * @version $Id$
+ */
+public class AssignmentHeuristic extends Heuristic {
+    
+    /** The cost of sending an atom to a square it can never get to. */
+    static final int INFINITE = 1 << 20;
+    
+    /** The slide distances of the level. */
+    private final SlideDistances distances;
+    
+    /** The raw distance table, indexed by open square. */
+    private final byte[] table;
+    
+    /**
+     * The table row of every goal square, indexed by placement, by goal
+     * type (in order of first appearance in the goal) and by the square's
+     * number among the goal squares of its type.
+     */
+    private final int[][][] rows;
+    
+    /**
+     * The squares an atom can still get to each goal square from, indexed
+     * like <tt>rows</tt>.
+     */
+    private final long[][][][] sources;
+    
+    /** The atoms of every goal type, indexed by goal type. */
+    private final int[][] atoms;
+    
+    /** The goal type of every goal atom, indexed by goal atom. */
+    private final int[] groups;
+    
+    /** The squares of every goal type's atoms at the last estimate. */
+    private final int[][] last;
+    
+    /**
+     * The cost of every goal type at every placement for the squares in
+     * <tt>last</tt>, or -1 if it has not been worked out.
+     */
+    private final int[][] costs;
+    
+    /** The cost of each goal square and atom of the type being solved. */
+    private final int[] matrix;
+    
+    /** The potentials of the goal squares, from 1. */
+    private final int[] rowPotential;
+    
+    /** The potentials of the atoms, from 1. */
+    private final int[] columnPotential;
+    
+    /** The goal square assigned to each atom, from 1, or 0. */
+    private final int[] assigned;
+    
+    /** The previous atom on the augmenting path to each atom. */
+    private final int[] way;
+    
+    /** The least reduced cost of reaching each atom. */
+    private final int[] slack;
+    
+    /** Whether each atom is on the current alternating tree. */
+    private final boolean[] used;
+    
+    /**
+     * Constructs a new <tt>AssignmentHeuristic</tt> for the specified level.
+     * 
+     * @param   level   the level
+     */
+    public AssignmentHeuristic( Level level ) {
+        this( level, new SlideDistances( level ), new Reachability( level ) );
+    }
+    
+    /**
+     * Constructs a new <tt>AssignmentHeuristic</tt> sharing a distance table
+     * and a reachability analysis.
+     * 
+     * @param   level           the level
+     * @param   distances       the level's slide distances
+     * @param   reachability    the level's reachability analysis
+     */
+    public AssignmentHeuristic( Level level, SlideDistances distances,
+            Reachability reachability ) {
+        this.distances = distances;
+        table = distances.getTable();
+        StateCodec codec = distances.getCodec();
+        int open = codec.getOpenCount();
+        
+        // number the goal types in order of first appearance in the goal
+        int goalAtoms = level.getGoalAtomCount();
+        int[] goalTypeOf = new int[ level.getTypeCount() ];
+        int[] squareCounts = new int[ goalAtoms ];
+        int goalTypes = 0;
+        groups = new int[ goalAtoms ];
+        Arrays.fill( goalTypeOf, -1 );
+        for ( int i = 0; i < goalAtoms; i++ ) {
+            int type = level.getGoalType( i );
+            if ( goalTypeOf[ type ] < 0 ) {
+                goalTypeOf[ type ] = goalTypes++;
+            }
+            groups[ i ] = goalTypeOf[ type ];
+            squareCounts[ groups[ i ] ]++;
+        }
+        
+        atoms = new int[ goalTypes ][];
+        int widest = 1;
+        for ( int g = 0; g < goalTypes; g++ ) {
+            int count = 0;
+            for ( int atom = 0; atom < level.getAtomCount(); atom++ ) {
+                if ( goalTypeOf[ level.getType( level.getAtom( atom ) ) ]
+                        == g ) {
+                    count++;
+                }
+            }
+            atoms[ g ] = new int[ count ];
+            count = 0;
+            for ( int atom = 0; atom < level.getAtomCount(); atom++ ) {
+                if ( goalTypeOf[ level.getType( level.getAtom( atom ) ) ]
+                        == g ) {
+                    atoms[ g ][ count++ ] = atom;
+                }
+            }
+            widest = Math.max( widest, count );
+        }
+        
+        int placements = reachability.getPlacementCount();
+        rows = new int[ placements ][ goalTypes ][];
+        sources = new long[ placements ][ goalTypes ][][];
+        for ( int p = 0; p < placements; p++ ) {
+            int origin = reachability.getPlacementOrigin( p );
+            int[] filled = new int[ goalTypes ];
+            for ( int g = 0; g < goalTypes; g++ ) {
+                rows[ p ][ g ] = new int[ squareCounts[ g ] ];
+                sources[ p ][ g ] = new long[ squareCounts[ g ] ][];
+            }
+            for ( int i = 0; i < goalAtoms; i++ ) {
+                int g = groups[ i ];
+                int cell = origin + level.getGoalOffset( i );
+                rows[ p ][ g ][ filled[ g ] ] = codec.indexOf( cell ) * open;
+                sources[ p ][ g ][ filled[ g ] ] =
+                        reachability.getReaching( p, i );
+                filled[ g ]++;
+            }
+        }
+        
+        last = new int[ goalTypes ][];
+        for ( int g = 0; g < goalTypes; g++ ) {
+            last[ g ] = new int[ atoms[ g ].length ];
+            Arrays.fill( last[ g ], -1 );
+        }
+        costs = new int[ placements ][ goalTypes ];
+        
+        matrix = new int[ widest * widest ];
+        rowPotential = new int[ widest + 1 ];
+        columnPotential = new int[ widest + 1 ];
+        assigned = new int[ widest + 1 ];
+        way = new int[ widest + 1 ];
+        slack = new int[ widest + 1 ];
+        used = new boolean[ widest + 1 ];
+    }
+    
+    /**
+     * Constructs a new <tt>AssignmentHeuristic</tt> that only aims for one
+     * placement of another, sharing its tables.
+     * 
+     * @param   heuristic   the heuristic over every feasible placement
+     * @param   placement   the placement to aim for (see
+     *                      <tt>Reachability.getPlacementOrigin()</tt>)
+     */
+    public AssignmentHeuristic( AssignmentHeuristic heuristic,
+            int placement ) {
+        distances = heuristic.distances;
+        table = heuristic.table;
+        rows = new int[][][] { heuristic.rows[ placement ] };
+        sources = new long[][][][] { heuristic.sources[ placement ] };
+        atoms = heuristic.atoms;
+        groups = heuristic.groups;
+        
+        last = new int[ atoms.length ][];
+        for ( int g = 0; g < atoms.length; g++ ) {
+            last[ g ] = new int[ atoms[ g ].length ];
+            Arrays.fill( last[ g ], -1 );
+        }
+        costs = new int[ 1 ][ atoms.length ];
+        
+        int widest = heuristic.used.length - 1;
+        matrix = new int[ widest * widest ];
+        rowPotential = new int[ widest + 1 ];
+        columnPotential = new int[ widest + 1 ];
+        assigned = new int[ widest + 1 ];
+        way = new int[ widest + 1 ];
+        slack = new int[ widest + 1 ];
+        used = new boolean[ widest + 1 ];
+    }
+    
+    /**
+     * Returns the slide distances this heuristic is built on.
+     * 
+     * @return  the slide distances
+     */
+    public SlideDistances getDistances() {
+        return distances;
+    }
+    
+    @Override
+    public int estimate( int[] cells ) {
+        // forget the costs of every type whose atoms have moved
+        for ( int g = 0; g < atoms.length; g++ ) {
+            int[] group = atoms[ g ];
+            int[] squares = last[ g ];
+            boolean moved = false;
+            for ( int j = 0; j < group.length; j++ ) {
+                if ( squares[ j ] != cells[ group[ j ] ] ) {
+                    squares[ j ] = cells[ group[ j ] ];
+                    moved = true;
+                }
+            }
+            if ( moved ) {
+                for ( int p = 0; p < costs.length; p++ ) {
+                    costs[ p ][ g ] = -1;
+                }
+            }
+        }
+        
+        int best = DEAD;
+        for ( int p = 0; p < costs.length; p++ ) {
+            best = Math.min( best, estimate( cells, p, best ) );
+        }
+        return best;
+    }
+    
+    /**
+     * Estimates the number of moves needed to complete the goal at a single
+     * placement.  Subclasses may replace the cost of some goal types with
+     * something stronger.
+     * 
+     * @param   cells   the square of every atom
+     * @param   p       the placement
+     * @param   best    the best estimate of another placement, above which
+     *                  the sum may be cut short
+     * 
+     * @return          the estimate (at least <tt>best</tt> if cut short),
+     *                  or <tt>DEAD</tt>
+     */
+    int estimate( int[] cells, int p, int best ) {
+        int sum = 0;
+        for ( int g = 0; ( g < atoms.length ) && ( sum < best ); g++ ) {
+            int cost = getCost( cells, p, g );
+            sum = ( cost >= INFINITE ? DEAD : sum + cost );
+        }
+        return sum;
+    }
+    
+    /**
+     * Returns the least total distance of sending a different atom of a
+     * goal type to each of its goal squares at a placement, worked out
+     * again only if the type's atoms have moved.
+     * 
+     * @param   cells   the square of every atom
+     * @param   p       the placement
+     * @param   g       the goal type
+     * 
+     * @return          the least total distance, or at least
+     *                  <tt>INFINITE</tt> if there is no assignment
+     */
+    final int getCost( int[] cells, int p, int g ) {
+        if ( costs[ p ][ g ] < 0 ) {
+            costs[ p ][ g ] = assign( cells, p, g );
+        }
+        return costs[ p ][ g ];
+    }
+    
+    /**
+     * Returns the number of goal types (the distinct types in the goal).
+     * 
+     * @return  the number of goal types
+     */
+    final int getGroupCount() {
+        return atoms.length;
+    }
+    
+    /**
+     * Returns the goal type of a goal atom.
+     * 
+     * @param   i   the goal atom (see <tt>Level.getGoalType()</tt>)
+     * 
+     * @return      its goal type, from zero to
+     *              <tt>getGroupCount() - 1</tt>
+     */
+    final int getGroup( int i ) {
+        return groups[ i ];
+    }
+    
+    /**
+     * Works out the least total distance of sending a different atom of a
+     * goal type to each of its goal squares at a placement.
+     * 
+     * @param   cells   the square of every atom
+     * @param   p       the placement
+     * @param   g       the goal type
+     * 
+     * @return          the least total distance, or at least
+     *                  <tt>INFINITE</tt> if there is no assignment
+     */
+    private int assign( int[] cells, int p, int g ) {
+        int[] targets = rows[ p ][ g ];
+        long[][] from = sources[ p ][ g ];
+        int[] group = atoms[ g ];
+        int n = group.length;
+        StateCodec codec = distances.getCodec();
+        
+        if ( targets.length == 1 ) {
+            // a single goal square just takes the nearest atom
+            int nearest = INFINITE;
+            for ( int j = 0; j < n; j++ ) {
+                int cell = cells[ group[ j ] ];
+                if ( Bitboard.get( from[ 0 ], cell ) ) {
+                    int cost = table[ targets[ 0 ] + codec.indexOf( cell ) ];
+                    if ( cost != SlideDistances.UNREACHABLE ) {
+                        nearest = Math.min( nearest, cost );
+                    }
+                }
+            }
+            return nearest;
+        }
+        
+        int k = targets.length;
+        for ( int i = 0; i < k; i++ ) {
+            for ( int j = 0; j < n; j++ ) {
+                int cell = cells[ group[ j ] ];
+                int cost = INFINITE;
+                if ( Bitboard.get( from[ i ], cell ) ) {
+                    cost = table[ targets[ i ] + codec.indexOf( cell ) ];
+                    if ( cost == SlideDistances.UNREACHABLE ) {
+                        cost = INFINITE;
+                    }
+                }
+                matrix[ i * n + j ] = cost;
+            }
+        }
+        return hungarian( k, n );
+    }
+    
+    /**
+     * Solves the assignment problem in <tt>matrix</tt>: <tt>k</tt> goal
+     * squares, each to get a different one of <tt>n</tt> atoms (<tt>k</tt>
+     * is at most <tt>n</tt>), at the least total cost.  This is the
+     * Hungarian algorithm with potentials, adding one goal square at a time
+     * along a shortest augmenting path, in <tt>O(k * k * n)</tt> time.
+     * 
+     * @param   k   the number of goal squares
+     * @param   n   the number of atoms
+     * 
+     * @return      the least total cost
+     */
+    private int hungarian( int k, int n ) {
+        for ( int j = 0; j <= n; j++ ) {
+            columnPotential[ j ] = 0;
+            assigned[ j ] = 0;
+        }
+        for ( int i = 0; i <= k; i++ ) {
+            rowPotential[ i ] = 0;
+        }
+        
+        for ( int i = 1; i <= k; i++ ) {
+            // grow an alternating tree from goal square i until it reaches
+            // a free atom, then flip the path
+            assigned[ 0 ] = i;
+            int column = 0;
+            for ( int j = 0; j <= n; j++ ) {
+                slack[ j ] = Integer.MAX_VALUE;
+                used[ j ] = false;
+            }
+            do {
+                used[ column ] = true;
+                int row = assigned[ column ];
+                int delta = Integer.MAX_VALUE;
+                int next = 0;
+                for ( int j = 1; j <= n; j++ ) {
+                    if ( ! used[ j ] ) {
+                        int reduced = matrix[ ( row - 1 ) * n + ( j - 1 ) ]
+                                - rowPotential[ row ] - columnPotential[ j ];
+                        if ( reduced < slack[ j ] ) {
+                            slack[ j ] = reduced;
+                            way[ j ] = column;
+                        }
+                        if ( slack[ j ] < delta ) {
+                            delta = slack[ j ];
+                            next = j;
+                        }
+                    }
+                }
+                for ( int j = 0; j <= n; j++ ) {
+                    if ( used[ j ] ) {
+                        rowPotential[ assigned[ j ] ] += delta;
+                        columnPotential[ j ] -= delta;
+                    } else {
+                        slack[ j ] -= delta;
+                    }
+                }
+                column = next;
+            } while ( assigned[ column ] != 0 );
+            
+            do {
+                int previous = way[ column ];
+                assigned[ column ] = assigned[ previous ];
+                column = previous;
+            } while ( column != 0 );
+        }
+        
+        int total = 0;
+        for ( int j = 1; j <= n; j++ ) {
+            if ( assigned[ j ] != 0 ) {
+                total += matrix[ ( assigned[ j ] - 1 ) * n + ( j - 1 ) ];
+            }
+        }
+        return total;
+    }
+    
+} // AssignmentHeuristic
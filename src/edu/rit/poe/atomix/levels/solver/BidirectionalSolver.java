@@ -0,0 +1,296 @@
+/*
+ * BidirectionalSolver.java
+ *
+ * Version:
+ *      $Id$
+ *
+ * Copyright (c) 2009 Peter O. Erickson
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package edu.rit.poe.atomix.levels.solver;
+
+import edu.rit.poe.atomix.levels.Level;
+import edu.rit.poe.atomix.levels.Moves;
+import java.util.Arrays;
+
+/**
+ * A solver that searches breadth-first from the starting position and,
+ * backwards, from every goal position at once, until the two searches meet.
+ * Each step expands a whole layer of whichever side has the smaller
+ * frontier, so the first meeting gives a shortest solution.
+ * <p>
+ * The goal positions are the placements of the goal kernel that a
+ * <tt>Reachability</tt> analysis finds feasible.  The backward search undoes
+ * slides: an atom next to a stopper in some direction may have arrived from
+ * any open square behind it that its type can reach.  The forward search
+ * drops dead positions.
+ * <p>
+ * A goal position only fixes the atoms that are part of the goal.  On a
+ * level with atoms that are not, the backward side cannot be seeded, and
+ * this solver falls back to a <tt>BreadthFirstSolver</tt>.
+ * <p>
+ * Keys do not depend on the order of interchangeable atoms (see
+ * <tt>StateCodec</tt>), so a goal position matches however the forward
+ * search has permuted them; the moves are mapped back to real atoms at the
+ * end.
+ * 
+ * @author  Peter O. Erickson
+ * 
+ * @version $Id$
+ */
+public class BidirectionalSolver extends Solver {
+    
+    /** The number of positions each state set is created for. */
+    private static final int INITIAL_CAPACITY = 1 << 16;
+    
+    /**
+     * Constructs a new <tt>BidirectionalSolver</tt>.
+     * 
+     * @param   level   the level to solve
+     */
+    public BidirectionalSolver( Level level ) {
+        super( level );
+    }
+    
+    /**
+     * Solves the level from the specified position.
+     * 
+     * @param   start   the square of every atom, indexed by atom index
+     * 
+     * @return          a shortest solution, or <tt>null</tt> if there is none
+     *                  (or the state limit was reached first)
+     */
+    @Override
+    public Solution solve( int[] start ) {
+        if ( level.getAtomCount() > level.getGoalAtomCount() ) {
+            BreadthFirstSolver solver = new BreadthFirstSolver( level );
+            solver.setStateLimit( getStateLimit() );
+            return solver.solve( start );
+        }
+        
+        long begin = System.currentTimeMillis();
+        Reachability reachability = getReachability();
+        if ( reachability.isDead( start ) ) {
+            return null;
+        }
+        int words = codec.getWords();
+        long[] key = new long[ words ];
+        int[] cells = new int[ start.length ];
+        
+        StateSet forward = new StateSet( words, INITIAL_CAPACITY );
+        codec.encode( start, key, 0 );
+        forward.add( key, 0, -1, Moves.NONE );
+        
+        StateSet backward = new StateSet( words, INITIAL_CAPACITY );
+        seedGoals( backward, key, cells );
+        if ( backward.find( forward.getKeys(), 0 ) >= 0 ) {
+            return new Solution( new int[ 0 ], 0,
+                    System.currentTimeMillis() - begin );
+        }
+        
+        Position position = new Position( level );
+        int forwardBegin = 0;
+        int backwardBegin = 0;
+        long expanded = 0;
+        while ( ( forwardBegin < forward.size() ) &&
+                ( backwardBegin < backward.size() ) &&
+                ( forward.size() + backward.size() <= getStateLimit() ) ) {
+            boolean isForward = ( forward.size() - forwardBegin <=
+                    backward.size() - backwardBegin );
+            StateSet side = ( isForward ? forward : backward );
+            StateSet other = ( isForward ? backward : forward );
+            int layerBegin = ( isForward ? forwardBegin : backwardBegin );
+            int layerEnd = side.size();
+            
+            for ( int n = layerBegin; n < layerEnd; n++ ) {
+                codec.decode( side.getKeys(), n * words, cells );
+                position.set( cells );
+                expanded++;
+                
+                int child = ( isForward ?
+                        expandForward( side, other, n, position, cells, key ) :
+                        expandBackward( side, other, n, position, cells,
+                        key ) );
+                if ( child >= 0 ) {
+                    int meet = other.find( side.getKeys(), child * words );
+                    int[] moves = ( isForward ?
+                            join( forward, child, backward, meet ) :
+                            join( forward, meet, backward, child ) );
+                    return new Solution( resolve( start, moves ), expanded,
+                            System.currentTimeMillis() - begin );
+                }
+            }
+            
+            if ( isForward ) {
+                forwardBegin = layerEnd;
+            } else {
+                backwardBegin = layerEnd;
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * Adds every goal position of a feasible placement (see
+     * <tt>Reachability</tt>) to the backward state set.
+     * 
+     * @param   backward    the backward state set
+     * @param   key         a buffer for a key
+     * @param   cells       a buffer for a position
+     */
+    private void seedGoals( StateSet backward, long[] key, int[] cells ) {
+        Reachability reachability = getReachability();
+        int goalAtoms = level.getGoalAtomCount();
+        boolean[] used = new boolean[ cells.length ];
+        for ( int p = 0; p < reachability.getPlacementCount(); p++ ) {
+            int origin = reachability.getPlacementOrigin( p );
+            
+            // give every goal square an atom of its type
+            Arrays.fill( used, false );
+            for ( int i = 0; i < goalAtoms; i++ ) {
+                int cell = origin + level.getGoalOffset( i );
+                int atom = 0;
+                while ( used[ atom ] || ( level.getType( level.getAtom( atom ) )
+                        != level.getGoalType( i ) ) ) {
+                    atom++;
+                }
+                used[ atom ] = true;
+                cells[ atom ] = cell;
+            }
+            codec.encode( cells, key, 0 );
+            backward.add( key, 0, -1, Moves.NONE );
+        }
+    }
+    
+    /**
+     * Adds every position one move after the specified one to the forward
+     * state set, and checks each new one against the backward state set.
+     * 
+     * @param   forward     the forward state set
+     * @param   backward    the backward state set
+     * @param   n           the number of the position being expanded
+     * @param   position    the position being expanded
+     * @param   cells       the square of every atom of the position
+     * @param   key         a buffer for a key
+     * 
+     * @return              the number of a new position that the backward
+     *                      search has also reached, or <tt>-1</tt>
+     */
+    private int expandForward( StateSet forward, StateSet backward, int n,
+            Position position, int[] cells, long[] key ) {
+        Reachability reachability = getReachability();
+        for ( int atom = 0; atom < cells.length; atom++ ) {
+            int from = cells[ atom ];
+            for ( int dir = 0; dir < Level.DIRECTIONS; dir++ ) {
+                int to = position.slide( atom, dir );
+                if ( to != from ) {
+                    position.move( atom, to );
+                    if ( reachability.isDead( position.getCells() ) ) {
+                        position.move( atom, from );
+                        continue;
+                    }
+                    codec.encode( position.getCells(), key, 0 );
+                    position.move( atom, from );
+                    
+                    int child = forward.add( key, 0, n,
+                            Moves.pack( atom, dir, from, to ) );
+                    if ( ( child >= 0 ) && ( backward.find( key, 0 ) >= 0 ) ) {
+                        return child;
+                    }
+                }
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * Adds every position one move before the specified one to the backward
+     * state set, and checks each new one against the forward state set.
+     * The move stored with each new position is the forward move that leads
+     * from it to the expanded position.
+     * 
+     * @param   backward    the backward state set
+     * @param   forward     the forward state set
+     * @param   n           the number of the position being expanded
+     * @param   position    the position being expanded
+     * @param   cells       the square of every atom of the position
+     * @param   key         a buffer for a key
+     * 
+     * @return              the number of a new position that the forward
+     *                      search has also reached, or <tt>-1</tt>
+     */
+    private int expandBackward( StateSet backward, StateSet forward, int n,
+            Position position, int[] cells, long[] key ) {
+        Reachability reachability = getReachability();
+        for ( int atom = 0; atom < cells.length; atom++ ) {
+            int type = level.getType( level.getAtom( atom ) );
+            int to = cells[ atom ];
+            for ( int dir = 0; dir < Level.DIRECTIONS; dir++ ) {
+                int step = level.offset( dir );
+                if ( position.isOpen( to + step ) ) {
+                    // nothing would have stopped the atom here
+                    continue;
+                }
+                
+                for ( int from = to - step; position.isOpen( from );
+                        from -= step ) {
+                    if ( ! reachability.canReach( type, from ) ) {
+                        // the start can never lead here
+                        continue;
+                    }
+                    position.move( atom, from );
+                    codec.encode( position.getCells(), key, 0 );
+                    position.move( atom, to );
+                    
+                    int child = backward.add( key, 0, n,
+                            Moves.pack( atom, dir, from, to ) );
+                    if ( ( child >= 0 ) && ( forward.find( key, 0 ) >= 0 ) ) {
+                        return child;
+                    }
+                }
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * Joins a forward path and a backward path that meet in one position.
+     * 
+     * @param   forward     the forward state set
+     * @param   f           the number of the meeting position in it
+     * @param   backward    the backward state set
+     * @param   b           the number of the meeting position in it
+     * 
+     * @return              the moves from the start to a goal position
+     */
+    private static int[] join( StateSet forward, int f, StateSet backward,
+            int b ) {
+        int[] head = forward.getPath( f );
+        int[] tail = backward.getPath( b );
+        int[] moves = new int[ head.length + tail.length ];
+        System.arraycopy( head, 0, moves, 0, head.length );
+        
+        // the backward path runs from a goal to the meeting position, and
+        // each of its moves leads towards the goal
+        for ( int i = 0; i < tail.length; i++ ) {
+            moves[ head.length + i ] = tail[ tail.length - 1 - i ];
+        }
+        return moves;
+    }
+    
+} // BidirectionalSolver
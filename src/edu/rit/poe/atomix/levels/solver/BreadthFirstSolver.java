@@ -0,0 +1,126 @@
+/*
+ * BreadthFirstSolver.java
+ *
+ * Version:
+ *      $Id$
+ *
+ * Copyright (c) 2009 Peter O. Erickson
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package edu.rit.poe.atomix.levels.solver;
+
+import edu.rit.poe.atomix.levels.Level;
+import edu.rit.poe.atomix.levels.Moves;
+
+/**
+ * A solver that searches positions in order of the number of moves needed to
+ * reach them, so the first solution it finds is a shortest one.
+ * <p>
+ * Every position reached is kept in a <tt>StateSet</tt>, which doubles as the
+ * search queue: positions are expanded in the order they were added.
+ * 
+ * @author  Peter O. Erickson
+ * 
+ * @version $Id$
+ */
+public class BreadthFirstSolver extends Solver {
+    
+    /** The number of positions the state set is created for. */
+    private static final int INITIAL_CAPACITY = 1 << 16;
+    
+    /**
+     * Constructs a new <tt>BreadthFirstSolver</tt>.
+     * 
+     * @param   level   the level to solve
+     */
+    public BreadthFirstSolver( Level level ) {
+        super( level );
+    }
+    
+    /**
+     * Solves the level from the specified position.
+     * 
+     * @param   start   the square of every atom, indexed by atom index
+     * 
+     * @return          a shortest solution, or <tt>null</tt> if there is none
+     *                  (or the state limit was reached first)
+     */
+    @Override
+    public Solution solve( int[] start ) {
+        long begin = System.currentTimeMillis();
+        int atomCount = level.getAtomCount();
+        int words = codec.getWords();
+        
+        Position position = new Position( level );
+        position.set( start );
+        if ( position.isComplete() ) {
+            return new Solution( new int[ 0 ], 0,
+                    System.currentTimeMillis() - begin );
+        }
+        Reachability reachability = getReachability();
+        if ( reachability.isDead( start ) ) {
+            return null;
+        }
+        
+        StateSet states = new StateSet( words, INITIAL_CAPACITY );
+        long[] key = new long[ words ];
+        int[] cells = new int[ atomCount ];
+        codec.encode( start, key, 0 );
+        states.add( key, 0, -1, Moves.NONE );
+        
+        // the state set is the queue: expand positions in the order they
+        // were reached, which is also the order of their distance
+        long expanded = 0;
+        for ( int n = 0; n < states.size(); n++ ) {
+            codec.decode( states.getKeys(), n * words, cells );
+            position.set( cells );
+            expanded++;
+            
+            for ( int atom = 0; atom < atomCount; atom++ ) {
+                int from = cells[ atom ];
+                for ( int dir = 0; dir < Level.DIRECTIONS; dir++ ) {
+                    int to = position.slide( atom, dir );
+                    if ( to == from ) {
+                        continue;
+                    }
+                    
+                    position.move( atom, to );
+                    if ( reachability.isDead( position.getCells() ) ) {
+                        position.move( atom, from );
+                        continue;
+                    }
+                    codec.encode( position.getCells(), key, 0 );
+                    int child = states.add( key, 0, n,
+                            Moves.pack( atom, dir, from, to ) );
+                    if ( ( child >= 0 ) && position.isComplete( atom ) ) {
+                        return new Solution(
+                                resolve( start, states.getPath( child ) ),
+                                expanded, System.currentTimeMillis() - begin );
+                    }
+                    position.move( atom, from );
+                }
+            }
+            
+            if ( states.size() > getStateLimit() ) {
+                break;
+            }
+        }
+        return null;
+    }
+    
+} // BreadthFirstSolver
@@ -0,0 +1,1126 @@
+/*
+ * ExternalBreadthFirstSolver.java
+ *
+ * Version:
+ *      $Id$
+ *
+ * Copyright (c) 2009 Peter O. Erickson
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package edu.rit.poe.atomix.levels.solver;
+
+import edu.rit.poe.atomix.levels.Level;
+import edu.rit.poe.atomix.levels.Moves;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A breadth-first solver that keeps its layers on disk, for levels whose
+ * reached set does not fit in memory.  Memory use is bounded by the size of
+ * the sort buffer, whatever the number of positions.
+ * <p>
+ * Each layer is a file of keys (see <tt>StateCodec</tt>) in sorted order.
+ * Expanding a layer streams it back, and the new positions are gathered in
+ * the buffer; whenever it fills, it is sorted and written out as a run.  The
+ * runs are then merged, and every key already in an earlier layer is
+ * dropped in the same pass, which leaves the next layer.  Slides cannot
+ * always be undone, so the merge checks every earlier layer, not just the
+ * last two.
+ * <p>
+ * Keys are written as the difference from the key before them, in base-128
+ * varints, so a sorted layer takes a few bytes a position.  Files are read
+ * and written a buffer at a time, through plain streams rather than
+ * channels: an interrupt would close a channel part way through a write.
+ * <p>
+ * No parents are stored.  Once a goal position is reached, the moves are
+ * found by streaming each layer again, from the last back to the first,
+ * for a position with a move to the one after it.
+ * <p>
+ * Since layers and runs are only ever written once, they double as a
+ * checkpoint.  With a checkpoint directory set, a small file recording how
+ * far the search has got is rewritten after every run and every layer, and
+ * a search from the same position picks up from it.  Taking a checkpoint
+ * costs one small write and two syncs, so it never holds the search up for
+ * long.  Interrupting the thread stops the search at its next checkpoint
+ * (after the next run or layer), leaving the interrupt set.
+ * 
+ * @author  Peter O. Erickson
+ * 
+ * @version $Id$
+ */
+public class ExternalBreadthFirstSolver extends Solver {
+    
+    /**
+     * The state limit that means no limit at all.  The count of positions
+     * kept on disk is a <tt>long</tt>, so it can pass any <tt>int</tt>
+     * limit.
+     */
+    public static final int NO_STATE_LIMIT = Integer.MAX_VALUE;
+    
+    /** The default number of keys the sort buffer holds. */
+    public static final int DEFAULT_BUFFER_KEYS = 1 << 20;
+    
+    /** The size of the buffer of each open file, in bytes. */
+    private static final int FILE_BUFFER_BYTES = 1 << 16;
+    
+    /** The name of the checkpoint file. */
+    private static final String CHECKPOINT = "checkpoint";
+    
+    /** The first word of a checkpoint file. */
+    private static final int CHECKPOINT_MAGIC = 0x41424653;
+    
+    /** The most files a merge reads at once. */
+    private static final int MAX_FAN_IN = 32;
+    
+    /** The most bytes a varint can take. */
+    private static final int MAX_VARINT_BYTES = 10;
+    
+    /** The directory the work files are made in. */
+    private File directory;
+    
+    /** The number of keys the sort buffer holds. */
+    private int bufferKeys;
+    
+    /** The directory checkpoints are kept in, or <tt>null</tt>. */
+    private File checkpoint;
+    
+    /** The directory of the search under way. */
+    private File work;
+    
+    /** The key of the position being solved. */
+    private long[] startKey;
+    
+    /** The files of the finished layers, the start first. */
+    private List<File> layers;
+    
+    /** The runs written so far while expanding the last layer. */
+    private List<File> runs;
+    
+    /** The number of positions of the last layer already expanded. */
+    private long done;
+    
+    /** The number of positions reached so far. */
+    private long reached;
+    
+    /** The number of positions expanded so far. */
+    private long expanded;
+    
+    /**
+     * The time spent on the search before this call, in milliseconds, less
+     * the time this call began.
+     */
+    private long elapsed;
+    
+    /**
+     * Constructs a new <tt>ExternalBreadthFirstSolver</tt> that works in the
+     * system's temporary directory, with no state limit (see
+     * <tt>NO_STATE_LIMIT</tt>).
+     * 
+     * @param   level   the level to solve
+     */
+    public ExternalBreadthFirstSolver( Level level ) {
+        super( level );
+        this.directory = new File( System.getProperty( "java.io.tmpdir" ) );
+        this.bufferKeys = DEFAULT_BUFFER_KEYS;
+        setStateLimit( NO_STATE_LIMIT );
+    }
+    
+    /**
+     * Returns the directory the work files are made in.
+     * 
+     * @return  the work directory
+     */
+    public File getDirectory() {
+        return directory;
+    }
+    
+    /**
+     * Sets the directory the work files are made in.  Each search makes its
+     * own subdirectory, and deletes it when it is done.
+     * 
+     * @param   directory   the work directory
+     */
+    public void setDirectory( File directory ) {
+        this.directory = directory;
+    }
+    
+    /**
+     * Returns the number of keys the sort buffer holds.
+     * 
+     * @return  the sort buffer size in keys
+     */
+    public int getBufferKeys() {
+        return bufferKeys;
+    }
+    
+    /**
+     * Sets the number of keys the sort buffer holds, which bounds the memory
+     * the search uses.
+     * 
+     * @param   bufferKeys  the sort buffer size in keys
+     */
+    public void setBufferKeys( int bufferKeys ) {
+        this.bufferKeys = Math.max( 1, bufferKeys );
+    }
+    
+    /**
+     * Returns the directory checkpoints are kept in.
+     * 
+     * @return  the checkpoint directory, or <tt>null</tt> if checkpoints are
+     *          off
+     */
+    public File getCheckpoint() {
+        return checkpoint;
+    }
+    
+    /**
+     * Sets the directory checkpoints are kept in.  With a checkpoint
+     * directory, the search works there instead of in a temporary
+     * directory, and leaves its files behind if it stops without an answer
+     * (because it was killed, or reached the state limit).  A later search
+     * of the same level from the same position picks up from them.
+     * 
+     * @param   checkpoint  the checkpoint directory, or <tt>null</tt> to
+     *                      turn checkpoints off
+     */
+    public void setCheckpoint( File checkpoint ) {
+        this.checkpoint = checkpoint;
+    }
+    
+    /**
+     * Solves the level from the specified position, resuming from the
+     * checkpoint if there is one for it.
+     * 
+     * @param   start   the square of every atom, indexed by atom index
+     * 
+     * @return          a shortest solution, or <tt>null</tt> if there is none
+     *                  (or the state limit was reached first)
+     * 
+     * @throws  IllegalStateException   if the work files can't be written or
+     *                                  read
+     */
+    @Override
+    public Solution solve( int[] start ) {
+        long begin = System.currentTimeMillis();
+        Position position = new Position( level );
+        position.set( start );
+        if ( position.isComplete() ) {
+            return new Solution( new int[ 0 ], 0,
+                    System.currentTimeMillis() - begin );
+        }
+        if ( getReachability().isDead( start ) ) {
+            return null;
+        }
+        
+        int words = codec.getWords();
+        startKey = new long[ words ];
+        codec.encode( start, startKey, 0 );
+        layers = new ArrayList<File>();
+        runs = new ArrayList<File>();
+        boolean finished = false;
+        try {
+            if ( checkpoint == null ) {
+                work = File.createTempFile( "atomix", ".bfs", directory );
+                if ( ! work.delete() || ! work.mkdir() ) {
+                    throw new IOException( "Can't make " + work );
+                }
+            } else {
+                work = checkpoint;
+                if ( ! work.isDirectory() && ! work.mkdirs() ) {
+                    throw new IOException( "Can't make " + work );
+                }
+            }
+            
+            if ( ( checkpoint == null ) || ! readCheckpoint() ) {
+                layers.add( new File( work, "layer0" ) );
+                KeyWriter writer = new KeyWriter( layers.get( 0 ), words );
+                writer.write( startKey, 0 );
+                writer.close();
+                reached = 1;
+                expanded = 0;
+                elapsed = -begin;
+                done = 0;
+                if ( checkpoint != null ) {
+                    sync( layers.get( 0 ) );
+                    writeCheckpoint();
+                }
+            } else {
+                elapsed -= begin;
+            }
+            
+            long[] goal = null;
+            while ( goal == null ) {
+                goal = expand( layers.get( layers.size() - 1 ), words );
+                if ( goal != null ) {
+                    break;
+                }
+                
+                File next = new File( work, "layer" + layers.size() );
+                long size = collect( next );
+                layers.add( next );
+                reached += size;
+                done = 0;
+                List<File> merged = runs;
+                runs = new ArrayList<File>();
+                if ( checkpoint != null ) {
+                    sync( next );
+                    writeCheckpoint();
+                }
+                delete( merged );
+                checkInterrupt();
+                
+                if ( size == 0 ) {
+                    finished = true;
+                    return null;
+                }
+                if ( isOverLimit( reached ) ) {
+                    return null;
+                }
+            }
+            
+            finished = true;
+            return new Solution( resolve( start, getPath( layers, goal ) ),
+                    expanded, elapsed + System.currentTimeMillis() );
+        } catch ( InterruptedIOException e ) {
+            // stopped at a checkpoint; the interrupt stays set
+            return null;
+        } catch ( IOException e ) {
+            throw new IllegalStateException( e );
+        } finally {
+            if ( work != null ) {
+                clean( work, finished || ( checkpoint == null ) );
+                if ( checkpoint == null ) {
+                    work.delete();
+                }
+            }
+            work = null;
+            layers = null;
+            runs = null;
+        }
+    }
+    
+    /**
+     * Expands the positions of a layer from the first one not yet expanded,
+     * writing the positions they lead to out as sorted runs.  A checkpoint
+     * is taken after every run.
+     * 
+     * @param   layer       the file of the layer
+     * @param   words       the number of words in a key
+     * 
+     * @return              the key of a goal position, if one was reached,
+     *                      otherwise <tt>null</tt>
+     * 
+     * @throws  IOException if a file can't be read or written
+     */
+    private long[] expand( File layer, int words ) throws IOException {
+        int atomCount = level.getAtomCount();
+        Reachability reachability = getReachability();
+        Position position = new Position( level );
+        long[] key = new long[ words ];
+        int[] cells = new int[ atomCount ];
+        long[] buffer = new long[ bufferKeys * words ];
+        int count = 0;
+        long i = 0;
+        
+        KeyReader reader = new KeyReader( layer, words );
+        try {
+            for ( ; reader.next( key, 0 ); i++ ) {
+                if ( i < done ) {
+                    // expanded before the checkpoint
+                    continue;
+                }
+                codec.decode( key, 0, cells );
+                position.set( cells );
+                expanded++;
+                
+                for ( int atom = 0; atom < atomCount; atom++ ) {
+                    int from = cells[ atom ];
+                    for ( int dir = 0; dir < Level.DIRECTIONS; dir++ ) {
+                        int to = position.slide( atom, dir );
+                        if ( to == from ) {
+                            continue;
+                        }
+                        position.move( atom, to );
+                        if ( ! reachability.isDead( position.getCells() ) ) {
+                            codec.encode( position.getCells(), buffer,
+                                    count * words );
+                            if ( position.isComplete( atom ) ) {
+                                long[] goal = new long[ words ];
+                                System.arraycopy( buffer, count * words, goal,
+                                        0, words );
+                                return goal;
+                            }
+                            if ( ++count == bufferKeys ) {
+                                // this position is expanded again on resume,
+                                // and its repeats merged away
+                                done = i;
+                                writeRun( buffer, count );
+                                count = 0;
+                            }
+                        }
+                        position.move( atom, from );
+                    }
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        
+        if ( count > 0 ) {
+            // the whole layer is in the runs, so a resume goes straight on
+            // to the merge
+            done = i;
+            writeRun( buffer, count );
+        }
+        return null;
+    }
+    
+    /**
+     * Sorts the keys in the buffer, writes them out without repeats as the
+     * next run, and takes a checkpoint if checkpoints are on.
+     * 
+     * @param   buffer  the sort buffer
+     * @param   count   the number of keys in it
+     * 
+     * @throws  IOException if the file can't be written
+     */
+    private void writeRun( long[] buffer, int count ) throws IOException {
+        int words = codec.getWords();
+        if ( words == 1 ) {
+            Arrays.sort( buffer, 0, count );
+        } else {
+            sort( buffer, words, 0, count - 1 );
+        }
+        
+        File run = new File( work, "run" + runs.size() );
+        KeyWriter writer = new KeyWriter( run, words );
+        try {
+            for ( int i = 0; i < count; i++ ) {
+                if ( ( i == 0 ) || ( compare( buffer, ( i - 1 ) * words,
+                        buffer, i * words, words ) != 0 ) ) {
+                    writer.write( buffer, i * words );
+                }
+            }
+        } finally {
+            writer.close();
+        }
+        runs.add( run );
+        
+        if ( checkpoint != null ) {
+            sync( run );
+            writeCheckpoint();
+        }
+        checkInterrupt();
+    }
+    
+    /**
+     * Returns whether the search has reached more positions than the state
+     * limit allows.  <tt>NO_STATE_LIMIT</tt> is never passed, however many
+     * positions there are.
+     * 
+     * @param   reached the number of positions reached so far
+     * 
+     * @return          <tt>true</tt> if the search should give up
+     */
+    boolean isOverLimit( long reached ) {
+        return ( ( getStateLimit() != NO_STATE_LIMIT ) &&
+                ( reached > getStateLimit() ) );
+    }
+    
+    /**
+     * Stops the search if its thread has been interrupted.  This is only
+     * called just after a checkpoint, so the search can be picked up again
+     * from there.
+     * 
+     * @throws  InterruptedIOException  if the thread has been interrupted
+     */
+    private static void checkInterrupt() throws InterruptedIOException {
+        if ( Thread.currentThread().isInterrupted() ) {
+            throw new InterruptedIOException( "Search interrupted." );
+        }
+    }
+    
+    /**
+     * Writes the checkpoint file: the level and position being solved, the
+     * number of finished layers and runs, how far the last layer has been
+     * expanded, and the statistics so far.  The file is written under
+     * another name and then renamed, so a crash leaves the old one whole.
+     * 
+     * @throws  IOException if the file can't be written
+     */
+    private void writeCheckpoint() throws IOException {
+        File temp = new File( work, CHECKPOINT + ".tmp" );
+        FileOutputStream file = new FileOutputStream( temp );
+        try {
+            DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream( file ) );
+            out.writeInt( CHECKPOINT_MAGIC );
+            out.writeLong( level.getHash() );
+            out.writeInt( startKey.length );
+            for ( int i = 0; i < startKey.length; i++ ) {
+                out.writeLong( startKey[ i ] );
+            }
+            out.writeInt( layers.size() );
+            out.writeInt( runs.size() );
+            out.writeLong( done );
+            out.writeLong( reached );
+            out.writeLong( expanded );
+            out.writeLong( elapsed + System.currentTimeMillis() );
+            out.flush();
+            file.getFD().sync();
+        } finally {
+            file.close();
+        }
+        
+        File target = new File( work, CHECKPOINT );
+        if ( ! temp.renameTo( target ) ) {
+            // some platforms won't rename over an existing file
+            target.delete();
+            if ( ! temp.renameTo( target ) ) {
+                throw new IOException( "Can't write " + target );
+            }
+        }
+    }
+    
+    /**
+     * Reads the checkpoint file, if there is one for the level and position
+     * being solved, and restores the search from it.
+     * 
+     * @return  <tt>true</tt> if the search was restored
+     * 
+     * @throws  IOException if the file can't be read
+     */
+    private boolean readCheckpoint() throws IOException {
+        File file = new File( work, CHECKPOINT );
+        if ( ! file.isFile() ) {
+            return false;
+        }
+        
+        DataInputStream in = new DataInputStream( new BufferedInputStream(
+                new FileInputStream( file ) ) );
+        try {
+            if ( ( in.readInt() != CHECKPOINT_MAGIC ) ||
+                    ( in.readLong() != level.getHash() ) ||
+                    ( in.readInt() != startKey.length ) ) {
+                return false;
+            }
+            for ( int i = 0; i < startKey.length; i++ ) {
+                if ( in.readLong() != startKey[ i ] ) {
+                    return false;
+                }
+            }
+            int layerCount = in.readInt();
+            int runCount = in.readInt();
+            if ( ( layerCount < 1 ) || ( runCount < 0 ) ) {
+                return false;
+            }
+            done = in.readLong();
+            reached = in.readLong();
+            expanded = in.readLong();
+            elapsed = in.readLong();
+            
+            for ( int i = 0; i < layerCount; i++ ) {
+                layers.add( new File( work, "layer" + i ) );
+            }
+            for ( int i = 0; i < runCount; i++ ) {
+                runs.add( new File( work, "run" + i ) );
+            }
+        } catch ( EOFException e ) {
+            return false;
+        } finally {
+            in.close();
+        }
+        
+        for ( File layer : layers ) {
+            if ( ! layer.isFile() ) {
+                throw new IOException( "Checkpoint is missing " + layer );
+            }
+        }
+        for ( File run : runs ) {
+            if ( ! run.isFile() ) {
+                throw new IOException( "Checkpoint is missing " + run );
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Deletes the work files of a search from a directory.
+     * 
+     * @param   work    the work directory
+     * @param   all     <tt>true</tt> to delete every work file, or
+     *                  <tt>false</tt> to keep the files the checkpoint needs
+     */
+    private static void clean( File work, boolean all ) {
+        File[] files = work.listFiles();
+        if ( files == null ) {
+            return;
+        }
+        for ( File file : files ) {
+            String name = file.getName();
+            if ( name.startsWith( "merged" ) ||
+                    name.equals( CHECKPOINT + ".tmp" ) || ( all &&
+                    ( name.startsWith( "layer" ) || name.startsWith( "run" )
+                    || name.equals( CHECKPOINT ) ) ) ) {
+                file.delete();
+            }
+        }
+    }
+    
+    /**
+     * Forces a file's contents out to the disk.
+     * 
+     * @param   file    the file
+     * 
+     * @throws  IOException if the file can't be synced
+     */
+    private static void sync( File file ) throws IOException {
+        RandomAccessFile access = new RandomAccessFile( file, "rw" );
+        try {
+            access.getFD().sync();
+        } finally {
+            access.close();
+        }
+    }
+    
+    /**
+     * Merges the runs of the last layer into the next layer, dropping every
+     * key that is in an earlier layer.  No merge reads more than
+     * <tt>MAX_FAN_IN</tt> files: runs are first merged in groups until at
+     * most half that many are left, and the earlier layers are then checked
+     * a group at a time.  The runs themselves are kept, for the checkpoint.
+     * 
+     * @param   next    the file of the next layer
+     * 
+     * @return          the number of keys in the next layer
+     * 
+     * @throws  IOException if a file can't be read or written
+     */
+    private long collect( File next ) throws IOException {
+        List<File> none = new ArrayList<File>();
+        List<File> inputs = runs;
+        int made = 0;
+        while ( inputs.size() > MAX_FAN_IN / 2 ) {
+            List<File> merged = new ArrayList<File>();
+            for ( int i = 0; i < inputs.size(); i += MAX_FAN_IN ) {
+                File run = new File( work, "merged" + made++ );
+                merge( inputs.subList( i, Math.min( inputs.size(),
+                        i + MAX_FAN_IN ) ), none, run );
+                merged.add( run );
+            }
+            if ( inputs != runs ) {
+                delete( inputs );
+            }
+            inputs = merged;
+        }
+        
+        long size = 0;
+        int group = MAX_FAN_IN - inputs.size();
+        for ( int i = 0; i < layers.size(); i += group ) {
+            int end = Math.min( layers.size(), i + group );
+            File out = ( end == layers.size() ? next :
+                    new File( work, "merged" + made++ ) );
+            size = merge( inputs, layers.subList( i, end ), out );
+            if ( inputs != runs ) {
+                delete( inputs );
+            }
+            inputs = new ArrayList<File>();
+            inputs.add( out );
+        }
+        return size;
+    }
+    
+    /**
+     * Deletes files.
+     * 
+     * @param   files   the files to delete
+     */
+    private static void delete( List<File> files ) {
+        for ( File file : files ) {
+            file.delete();
+        }
+    }
+    
+    /**
+     * Merges runs into one file, dropping every key that is in one of the
+     * specified layers.
+     * 
+     * @param   runs    the run files
+     * @param   layers  the files of the layers
+     * @param   next    the file to write
+     * 
+     * @return          the number of keys written
+     * 
+     * @throws  IOException if a file can't be read or written
+     */
+    private long merge( List<File> runs, List<File> layers, File next )
+            throws IOException {
+        int words = codec.getWords();
+        KeyReader[] inputs = new KeyReader[ runs.size() + layers.size() ];
+        long[] heads = new long[ inputs.length * words ];
+        boolean[] live = new boolean[ inputs.length ];
+        long[] key = new long[ words ];
+        KeyWriter writer = null;
+        try {
+            for ( int i = 0; i < inputs.length; i++ ) {
+                inputs[ i ] = new KeyReader( ( i < runs.size() ?
+                        runs.get( i ) : layers.get( i - runs.size() ) ),
+                        words );
+                live[ i ] = inputs[ i ].next( heads, i * words );
+            }
+            writer = new KeyWriter( next, words );
+            
+            while ( true ) {
+                // the least key at the head of a run
+                int least = -1;
+                for ( int i = 0; i < runs.size(); i++ ) {
+                    if ( live[ i ] && ( ( least < 0 ) || ( compare( heads,
+                            i * words, heads, least * words, words ) < 0 ) ) ) {
+                        least = i;
+                    }
+                }
+                if ( least < 0 ) {
+                    break;
+                }
+                System.arraycopy( heads, least * words, key, 0, words );
+                for ( int i = 0; i < runs.size(); i++ ) {
+                    while ( live[ i ] && ( compare( heads, i * words, key, 0,
+                            words ) == 0 ) ) {
+                        live[ i ] = inputs[ i ].next( heads, i * words );
+                    }
+                }
+                
+                // skip it if an earlier layer has it
+                boolean seen = false;
+                for ( int i = runs.size(); i < inputs.length; i++ ) {
+                    while ( live[ i ] && ( compare( heads, i * words, key, 0,
+                            words ) < 0 ) ) {
+                        live[ i ] = inputs[ i ].next( heads, i * words );
+                    }
+                    if ( live[ i ] && ( compare( heads, i * words, key, 0,
+                            words ) == 0 ) ) {
+                        seen = true;
+                        break;
+                    }
+                }
+                if ( ! seen ) {
+                    writer.write( key, 0 );
+                }
+            }
+            return writer.getCount();
+        } finally {
+            for ( int i = 0; i < inputs.length; i++ ) {
+                if ( inputs[ i ] != null ) {
+                    inputs[ i ].close();
+                }
+            }
+            if ( writer != null ) {
+                writer.close();
+            }
+        }
+    }
+    
+    /**
+     * Finds the moves that lead from the start to a goal position, by
+     * looking in each layer for a position with a move to the one after it.
+     * 
+     * @param   layers  the files of the layers, the start first
+     * @param   goal    the key of the goal position, one layer past the last
+     * 
+     * @return          the packed moves, in the order they are played
+     * 
+     * @throws  IOException if a file can't be read
+     */
+    private int[] getPath( List<File> layers, long[] goal )
+            throws IOException {
+        int words = codec.getWords();
+        int atomCount = level.getAtomCount();
+        Position position = new Position( level );
+        long[] key = new long[ words ];
+        long[] child = new long[ words ];
+        long[] target = goal.clone();
+        int[] cells = new int[ atomCount ];
+        int[] path = new int[ layers.size() ];
+        
+        for ( int d = layers.size() - 1; d >= 0; d-- ) {
+            KeyReader reader = new KeyReader( layers.get( d ), words );
+            try {
+                int move = Moves.NONE;
+                while ( ( move == Moves.NONE ) && reader.next( key, 0 ) ) {
+                    codec.decode( key, 0, cells );
+                    position.set( cells );
+                    move = findMove( position, cells, target, child );
+                }
+                if ( move == Moves.NONE ) {
+                    throw new IOException( "Layer " + d + " is corrupt." );
+                }
+                path[ d ] = move;
+                System.arraycopy( key, 0, target, 0, words );
+            } finally {
+                reader.close();
+            }
+        }
+        return path;
+    }
+    
+    /**
+     * Returns the move that leads from a position to another.
+     * 
+     * @param   position    the position
+     * @param   cells       the square of every atom of the position
+     * @param   target      the key of the position to reach
+     * @param   child       a buffer for a key
+     * 
+     * @return              the packed move, or <tt>Moves.NONE</tt> if there
+     *                      is none
+     */
+    private int findMove( Position position, int[] cells, long[] target,
+            long[] child ) {
+        int words = codec.getWords();
+        for ( int atom = 0; atom < cells.length; atom++ ) {
+            int from = cells[ atom ];
+            for ( int dir = 0; dir < Level.DIRECTIONS; dir++ ) {
+                int to = position.slide( atom, dir );
+                if ( to == from ) {
+                    continue;
+                }
+                position.move( atom, to );
+                codec.encode( position.getCells(), child, 0 );
+                position.move( atom, from );
+                if ( compare( child, 0, target, 0, words ) == 0 ) {
+                    return Moves.pack( atom, dir, from, to );
+                }
+            }
+        }
+        return Moves.NONE;
+    }
+    
+    /**
+     * Compares two keys word by word.
+     * 
+     * @param   a       the array holding the first key
+     * @param   aOffset the index of the first key's first word
+     * @param   b       the array holding the second key
+     * @param   bOffset the index of the second key's first word
+     * @param   words   the number of words in a key
+     * 
+     * @return          a negative number, zero or a positive number as the
+     *                  first key is less than, equal to or greater than the
+     *                  second
+     */
+    private static int compare( long[] a, int aOffset, long[] b, int bOffset,
+            int words ) {
+        for ( int i = 0; i < words; i++ ) {
+            long x = a[ aOffset + i ];
+            long y = b[ bOffset + i ];
+            if ( x != y ) {
+                return ( x < y ? -1 : 1 );
+            }
+        }
+        return 0;
+    }
+    
+    /**
+     * Sorts a range of multi-word keys in place (quicksort).
+     * 
+     * @param   keys    the array of keys
+     * @param   words   the number of words in a key
+     * @param   lo      the first key of the range
+     * @param   hi      the last key of the range
+     */
+    private static void sort( long[] keys, int words, int lo, int hi ) {
+        while ( lo < hi ) {
+            swap( keys, words, lo, ( lo + hi ) >>> 1 );
+            int last = lo;
+            for ( int i = lo + 1; i <= hi; i++ ) {
+                if ( compare( keys, i * words, keys, lo * words, words ) < 0 ) {
+                    swap( keys, words, ++last, i );
+                }
+            }
+            swap( keys, words, lo, last );
+            
+            // recurse into the smaller side, so the stack stays shallow
+            if ( last - lo < hi - last ) {
+                sort( keys, words, lo, last - 1 );
+                lo = last + 1;
+            } else {
+                sort( keys, words, last + 1, hi );
+                hi = last - 1;
+            }
+        }
+    }
+    
+    /**
+     * Swaps two multi-word keys.
+     * 
+     * @param   keys    the array of keys
+     * @param   words   the number of words in a key
+     * @param   i       the first key
+     * @param   j       the second key
+     */
+    private static void swap( long[] keys, int words, int i, int j ) {
+        for ( int w = 0; w < words; w++ ) {
+            long t = keys[ i * words + w ];
+            keys[ i * words + w ] = keys[ j * words + w ];
+            keys[ j * words + w ] = t;
+        }
+    }
+    
+    /**
+     * A writer of a sorted key file.  Each key is written as the number of
+     * leading words it shares with the key before it (for keys of more than
+     * one word), the difference of the first word that differs, and the
+     * words after that, all as varints.
+     * 
+     * @author  Peter O. Erickson
+     */
+    static final class KeyWriter {
+        
+        /** The file being written. */
+        private final FileOutputStream out;
+        
+        /** The buffer of bytes to write. */
+        private final ByteBuffer buffer;
+        
+        /** The number of words in a key. */
+        private final int words;
+        
+        /** The key written last. */
+        private final long[] last;
+        
+        /** The number of keys written. */
+        private long count;
+        
+        /**
+         * Constructs a new <tt>KeyWriter</tt>, creating the file.
+         * 
+         * @param   file    the file to write
+         * @param   words   the number of words in a key
+         * 
+         * @throws  IOException if the file can't be created
+         */
+        KeyWriter( File file, int words ) throws IOException {
+            this.out = new FileOutputStream( file );
+            this.buffer = ByteBuffer.allocate( FILE_BUFFER_BYTES );
+            this.words = words;
+            this.last = new long[ words ];
+        }
+        
+        /**
+         * Returns the number of keys written.
+         * 
+         * @return  the number of keys
+         */
+        long getCount() {
+            return count;
+        }
+        
+        /**
+         * Writes a key, which must not be less than the one before it.
+         * 
+         * @param   key     the array holding the key
+         * @param   offset  the index of the key's first word
+         * 
+         * @throws  IOException if the file can't be written
+         */
+        void write( long[] key, int offset ) throws IOException {
+            int shared = 0;
+            while ( ( shared < words - 1 ) &&
+                    ( key[ offset + shared ] == last[ shared ] ) ) {
+                shared++;
+            }
+            if ( words > 1 ) {
+                writeVarint( shared );
+            }
+            writeVarint( key[ offset + shared ] - last[ shared ] );
+            for ( int i = shared + 1; i < words; i++ ) {
+                writeVarint( key[ offset + i ] );
+            }
+            System.arraycopy( key, offset, last, 0, words );
+            count++;
+        }
+        
+        /**
+         * Writes an unsigned varint: seven bits a byte, low bits first, the
+         * high bit set on every byte but the last.
+         * 
+         * @param   value   the value, read as unsigned
+         * 
+         * @throws  IOException if the file can't be written
+         */
+        private void writeVarint( long value ) throws IOException {
+            if ( buffer.remaining() < MAX_VARINT_BYTES ) {
+                drain();
+            }
+            while ( ( value & ~0x7fL ) != 0 ) {
+                buffer.put( ( byte )( ( value & 0x7f ) | 0x80 ) );
+                value >>>= 7;
+            }
+            buffer.put( ( byte )value );
+        }
+        
+        /**
+         * Writes out the buffered bytes.
+         * 
+         * @throws  IOException if the file can't be written
+         */
+        private void drain() throws IOException {
+            out.write( buffer.array(), 0, buffer.position() );
+            buffer.clear();
+        }
+        
+        /**
+         * Writes out the buffered bytes and closes the file.
+         * 
+         * @throws  IOException if the file can't be written
+         */
+        void close() throws IOException {
+            try {
+                drain();
+            } finally {
+                out.close();
+            }
+        }
+        
+    } // KeyWriter
+    
+    /**
+     * A reader of a key file written by a <tt>KeyWriter</tt>.
+     * 
+     * @author  Peter O. Erickson
+     */
+    static final class KeyReader {
+        
+        /** The file being read. */
+        private final FileInputStream in;
+        
+        /** The buffer of bytes read. */
+        private final ByteBuffer buffer;
+        
+        /** The number of words in a key. */
+        private final int words;
+        
+        /** The key read last. */
+        private final long[] last;
+        
+        /** Whether the end of the file has been read into the buffer. */
+        private boolean ended;
+        
+        /**
+         * Constructs a new <tt>KeyReader</tt>.
+         * 
+         * @param   file    the file to read
+         * @param   words   the number of words in a key
+         * 
+         * @throws  IOException if the file can't be opened
+         */
+        KeyReader( File file, int words ) throws IOException {
+            this.in = new FileInputStream( file );
+            this.buffer = ByteBuffer.allocate( FILE_BUFFER_BYTES );
+            this.words = words;
+            this.last = new long[ words ];
+            buffer.flip();
+        }
+        
+        /**
+         * Reads the next key.
+         * 
+         * @param   key     the array to read the key into
+         * @param   offset  the index of the key's first word
+         * 
+         * @return          <tt>false</tt> if there are no keys left
+         * 
+         * @throws  IOException if the file can't be read
+         */
+        boolean next( long[] key, int offset ) throws IOException {
+            if ( ! fill() ) {
+                return false;
+            }
+            int shared = ( words > 1 ? ( int )readVarint() : 0 );
+            last[ shared ] += readVarint();
+            for ( int i = shared + 1; i < words; i++ ) {
+                last[ i ] = readVarint();
+            }
+            System.arraycopy( last, 0, key, offset, words );
+            return true;
+        }
+        
+        /**
+         * Reads an unsigned varint written by <tt>KeyWriter</tt>.
+         * 
+         * @return  the value
+         * 
+         * @throws  IOException if the file can't be read, or ends inside
+         *                      the varint
+         */
+        private long readVarint() throws IOException {
+            long value = 0;
+            for ( int shift = 0; ; shift += 7 ) {
+                if ( ! fill() ) {
+                    throw new IOException( "Key file is truncated." );
+                }
+                byte b = buffer.get();
+                value |= ( long )( b & 0x7f ) << shift;
+                if ( b >= 0 ) {
+                    return value;
+                }
+            }
+        }
+        
+        /**
+         * Makes sure there is a byte to read in the buffer.
+         * 
+         * @return  <tt>false</tt> if the end of the file was reached
+         * 
+         * @throws  IOException if the file can't be read
+         */
+        private boolean fill() throws IOException {
+            while ( ! buffer.hasRemaining() && ! ended ) {
+                int count = in.read( buffer.array(), 0, buffer.capacity() );
+                ended = ( count < 0 );
+                buffer.clear();
+                buffer.limit( Math.max( count, 0 ) );
+            }
+            return buffer.hasRemaining();
+        }
+        
+        /**
+         * Closes the file.
+         * 
+         * @throws  IOException if the file can't be closed
+         */
+        void close() throws IOException {
+            in.close();
+        }
+        
+    } // KeyReader
+    
+} // ExternalBreadthFirstSolver
@@ -0,0 +1,51 @@
+/*
+ * Heuristic.java
+ *
+ * Version:
+ *      $Id$
+ *
+ * Copyright (c) 2009 Peter O. Erickson
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package edu.rit.poe.atomix.levels.solver;
+
+/**
+ * An estimate of the number of moves left to complete a level's goal.  The
+ * informed solvers only return shortest solutions if the estimate never
+ * exceeds the true number of moves (it is admissible).
+ * 
+ * @author  Peter O. Erickson
+ * 
+ * @version $Id$
+ */
+public abstract class Heuristic {
+    
+    /** The estimate of a position from which the goal can never be reached. */
+    public static final int DEAD = Integer.MAX_VALUE;
+    
+    /**
+     * Estimates the number of moves needed to complete the goal.
+     * 
+     * @param   cells   the square of every atom, indexed by atom index
+     * 
+     * @return          a lower bound on the number of moves, or <tt>DEAD</tt>
+     *                  if the goal can never be completed
+     */
+    public abstract int estimate( int[] cells );
+    
+} // Heuristic
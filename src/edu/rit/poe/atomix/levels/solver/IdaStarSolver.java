@@ -0,0 +1,460 @@
+/*
+ * IdaStarSolver.java
+ *
+ * Version:
+ *      $Id$
+ *
+ * Copyright (c) 2009 Peter O. Erickson
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package edu.rit.poe.atomix.levels.solver;
+
+import edu.rit.poe.atomix.levels.Level;
+import edu.rit.poe.atomix.levels.Moves;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A solver that runs depth-first searches bounded by moves made plus the
+ * heuristic's estimate, raising the bound to the smallest value that was cut
+ * off until a solution is found (IDA*).  With an admissible heuristic the
+ * solution is a shortest one.
+ * <p>
+ * Only the current path is kept, so memory use does not grow with the size
+ * of the search.  An optional <tt>TranspositionTable</tt>, sized from a byte
+ * budget, prunes positions already searched with no more moves in the
+ * current iteration.  The table is keyed by the position's Zobrist hash (see
+ * <tt>Level.getZobristKey()</tt>), which depends only on the type of each
+ * atom, so permutations of interchangeable atoms share an entry.  Each
+ * iteration is a new generation, and the depth stored is the number of
+ * moves left under the bound, so entries near the root outlive those near
+ * the leaves.
+ * <p>
+ * Two moves of different atoms that stay out of each other's way reach the
+ * same position in either order.  The search only plays such a pair with
+ * the lower atom first (see <tt>Moves.isIndependent()</tt>), which cuts a
+ * large share of the paths a search without a full visited set would
+ * otherwise repeat.
+ * 
+ * @author  Peter O. Erickson
+ * 
+ * @version $Id$
+ */
+public class IdaStarSolver extends Solver {
+    
+    /** The default byte budget of the transposition cache. */
+    public static final int DEFAULT_CACHE_BYTES = 1 << 22;
+    
+    /** The result of a bounded search that found a solution. */
+    static final int FOUND = -1;
+    
+    /** The heuristic that bounds the search. */
+    private final Heuristic heuristic;
+    
+    /** The byte budget of the transposition cache. */
+    private int cacheBytes;
+    
+    /** The number of positions to expand before giving up. */
+    private long nodeLimit;
+    
+    /** Whether moves that commute with the last move are ordered. */
+    private boolean reducing;
+    
+    /** The only goal origin to aim for, or -1 for any placement. */
+    private int target;
+    
+    /**
+     * The length of the best solution found elsewhere, which this search
+     * gives up on matching, or <tt>null</tt>.
+     */
+    private AtomicInteger ceiling;
+    
+    /** The position being searched. */
+    private Position position;
+    
+    /** The moves of the current path. */
+    private int[] path;
+    
+    /** The length of the solution, once one is found. */
+    private int length;
+    
+    /** The Zobrist hash of the current position. */
+    private long hash;
+    
+    /** The transposition cache, or <tt>null</tt> if it is off. */
+    private TranspositionTable table;
+    
+    /** The bound of the current iteration. */
+    private int bound;
+    
+    /** The number of positions expanded so far. */
+    private long expanded;
+    
+    /**
+     * Constructs a new <tt>IdaStarSolver</tt> that uses a
+     * <tt>AssignmentHeuristic</tt>.
+     * 
+     * @param   level   the level to solve
+     */
+    public IdaStarSolver( Level level ) {
+        this( level, new AssignmentHeuristic( level ) );
+    }
+    
+    /**
+     * Constructs a new <tt>IdaStarSolver</tt> with the specified heuristic.
+     * 
+     * @param   level       the level to solve
+     * @param   heuristic   an admissible heuristic for the level
+     */
+    public IdaStarSolver( Level level, Heuristic heuristic ) {
+        super( level );
+        this.heuristic = heuristic;
+        this.cacheBytes = DEFAULT_CACHE_BYTES;
+        this.nodeLimit = Long.MAX_VALUE;
+        this.reducing = true;
+        this.target = -1;
+    }
+    
+    /**
+     * Returns the byte budget of the transposition cache.
+     * 
+     * @return  the cache budget in bytes
+     */
+    public int getCacheBytes() {
+        return cacheBytes;
+    }
+    
+    /**
+     * Sets the byte budget of the transposition cache.  The cache is sized to
+     * the largest power of two number of entries that fits; a budget below
+     * <tt>TranspositionTable.MIN_BYTES</tt> turns the cache off.
+     * 
+     * @param   cacheBytes  the cache budget in bytes
+     */
+    public void setCacheBytes( int cacheBytes ) {
+        this.cacheBytes = cacheBytes;
+    }
+    
+    /**
+     * Returns the transposition cache of the last solve, whose hit rate and
+     * occupancy show whether the budget suits the level and device.
+     * 
+     * @return  the transposition cache, or <tt>null</tt> if it is off
+     */
+    public TranspositionTable getTable() {
+        return table;
+    }
+    
+    /**
+     * Returns the number of positions the solver may expand before giving
+     * up.
+     * 
+     * @return  the node limit
+     */
+    public long getNodeLimit() {
+        return nodeLimit;
+    }
+    
+    /**
+     * Sets the number of positions the solver may expand before giving up.
+     * 
+     * @param   nodeLimit   the new node limit
+     */
+    public void setNodeLimit( long nodeLimit ) {
+        this.nodeLimit = nodeLimit;
+    }
+    
+    /**
+     * Returns whether the search plays only one order of moves that
+     * commute.
+     * 
+     * @return  <tt>true</tt> if commuting moves are reduced
+     */
+    public boolean isReducing() {
+        return reducing;
+    }
+    
+    /**
+     * Sets whether the search plays only one order of moves that commute
+     * (see <tt>Moves.isIndependent()</tt>).  It is on by default.
+     * 
+     * @param   reducing    <tt>true</tt> to reduce commuting moves
+     */
+    public void setReducing( boolean reducing ) {
+        this.reducing = reducing;
+    }
+    
+    /**
+     * Returns the number of positions expanded by the last solve, whether
+     * or not it found a solution.
+     * 
+     * @return  the number of expanded positions
+     */
+    public long getExpanded() {
+        return expanded;
+    }
+    
+    /**
+     * Restricts the goal to a single placement of the goal kernel.
+     * 
+     * @param   origin  the goal origin (see <tt>Level.getPlacement()</tt>),
+     *                  or <tt>-1</tt> for any placement
+     */
+    void setTarget( int origin ) {
+        this.target = origin;
+    }
+    
+    /**
+     * Shares a bound with other searches: once it holds the length of a
+     * solution found elsewhere, this search stops looking for solutions
+     * that are not shorter.
+     * 
+     * @param   ceiling     the length of the best solution so far, or
+     *                      <tt>null</tt> for no shared bound
+     */
+    void setCeiling( AtomicInteger ceiling ) {
+        this.ceiling = ceiling;
+    }
+    
+    /**
+     * Solves the level from the specified position.
+     * 
+     * @param   start   the square of every atom, indexed by atom index
+     * 
+     * @return          a shortest solution, or <tt>null</tt> if there is none
+     *                  (or the node limit was reached first)
+     */
+    @Override
+    public Solution solve( int[] start ) {
+        long begin = System.currentTimeMillis();
+        expanded = 0;
+        if ( prepare( start ) ) {
+            position = null;
+            return new Solution( new int[ 0 ], 0,
+                    System.currentTimeMillis() - begin );
+        }
+        
+        // reuse the table of the last solve when the budget is unchanged
+        if ( cacheBytes < TranspositionTable.MIN_BYTES ) {
+            table = null;
+        } else if ( ( table == null ) || ( table.getCapacity()
+                != TranspositionTable.getCapacity( cacheBytes ) ) ) {
+            table = new TranspositionTable( cacheBytes );
+        } else {
+            table.clear();
+        }
+        
+        Solution solution = null;
+        bound = heuristic.estimate( start );
+        while ( ( bound != Heuristic.DEAD ) && ( expanded < nodeLimit ) &&
+                ( bound < getCeiling() ) ) {
+            int next = iterate();
+            if ( next == FOUND ) {
+                solution = new Solution( getMoves(), expanded,
+                        System.currentTimeMillis() - begin );
+                break;
+            }
+            bound = next;
+        }
+        
+        position = null;
+        path = null;
+        return solution;
+    }
+    
+    /**
+     * Runs a single iteration from the specified position at a bound chosen
+     * by the caller, with a transposition cache the caller owns.  This lets
+     * several searches be deepened together; the cache may be shared by
+     * searches run one after another, since each iteration is a new
+     * generation of it.  The positions expanded add up over the calls.
+     * 
+     * @param   start       the square of every atom, which must not complete
+     *                      the goal
+     * @param   passBound   the bound of the iteration
+     * @param   passTable   the transposition cache, or <tt>null</tt>
+     * 
+     * @return              <tt>FOUND</tt> if a solution was found (see
+     *                      <tt>getMoves()</tt>), otherwise the smallest
+     *                      estimated total cost that exceeded the bound (or
+     *                      <tt>Heuristic.DEAD</tt> if none did, or the node
+     *                      limit or the shared bound was reached)
+     */
+    int iterate( int[] start, int passBound, TranspositionTable passTable ) {
+        prepare( start );
+        table = passTable;
+        bound = passBound;
+        int next = iterate();
+        position = null;
+        table = null;
+        return next;
+    }
+    
+    /**
+     * Returns the moves of the solution the last iteration found.
+     * 
+     * @return  the packed moves, in the order they are played
+     */
+    int[] getMoves() {
+        int[] moves = new int[ length ];
+        System.arraycopy( path, 0, moves, 0, length );
+        return moves;
+    }
+    
+    /**
+     * Sets up the position and its hash to search from.
+     * 
+     * @param   start   the square of every atom
+     * 
+     * @return          <tt>true</tt> if the position already completes the
+     *                  goal
+     */
+    private boolean prepare( int[] start ) {
+        position = new Position( level );
+        position.set( start );
+        hash = 0;
+        for ( int atom = 0; atom < start.length; atom++ ) {
+            hash ^= level.getZobristKey( level.getAtom( atom ), start[ atom ] );
+        }
+        return ( ( target < 0 ) ? position.isComplete() :
+                position.isCompleteAt( target ) );
+    }
+    
+    /**
+     * Runs one iteration from the prepared position at the current bound.
+     * 
+     * @return  <tt>FOUND</tt> if a solution was found, otherwise the next
+     *          bound (see <tt>search()</tt>)
+     */
+    private int iterate() {
+        path = new int[ bound + 1 ];
+        if ( table != null ) {
+            table.nextGeneration();
+        }
+        return search( 0, Moves.NONE );
+    }
+    
+    /**
+     * Searches below the current position.
+     * 
+     * @param   cost        the number of moves made to reach the position
+     * @param   last        the packed move that reached it, or
+     *                      <tt>Moves.NONE</tt>
+     * 
+     * @return              <tt>FOUND</tt> if a solution was found, otherwise
+     *                      the smallest estimated total cost that exceeded
+     *                      the bound (or <tt>Heuristic.DEAD</tt> if none did)
+     */
+    private int search( int cost, int last ) {
+        if ( ( ++expanded > nodeLimit ) || ( bound >= getCeiling() ) ) {
+            return Heuristic.DEAD;
+        }
+        
+        int[] cells = position.getCells();
+        int lastAtom = ( last == Moves.NONE ? -1 : Moves.getAtom( last ) );
+        int lastFrom = ( last == Moves.NONE ? -1 : Moves.getFrom( last ) );
+        int min = Heuristic.DEAD;
+        for ( int atom = 0; atom < cells.length; atom++ ) {
+            int from = cells[ atom ];
+            for ( int dir = 0; dir < Level.DIRECTIONS; dir++ ) {
+                int to = position.slide( atom, dir );
+                if ( ( to == from ) ||
+                        ( ( atom == lastAtom ) && ( to == lastFrom ) ) ) {
+                    // no move, or straight back to the parent position
+                    continue;
+                }
+                int move = Moves.pack( atom, dir, from, to );
+                if ( reducing && ( atom < lastAtom ) &&
+                        Moves.isIndependent( level, last, move ) ) {
+                    // the same position, played in the other order, is
+                    // searched from the parent
+                    continue;
+                }
+                
+                long keys = level.getZobristKey( level.getAtom( atom ), from )
+                        ^ level.getZobristKey( level.getAtom( atom ), to );
+                position.move( atom, to );
+                hash ^= keys;
+                path[ cost ] = move;
+                
+                int result = Heuristic.DEAD;
+                if ( ( ( target < 0 ) ? position.isComplete( atom ) :
+                        position.isCompleteAt( target ) ) &&
+                        ( cost + 1 <= bound ) ) {
+                    length = cost + 1;
+                    return FOUND;
+                } else {
+                    // cut off before the cache is consulted, so only
+                    // positions with moves left under the bound are cached
+                    int h = heuristic.estimate( cells );
+                    if ( h == Heuristic.DEAD ) {
+                        // the goal can't be reached from here
+                    } else if ( cost + 1 + h > bound ) {
+                        result = cost + 1 + h;
+                    } else if ( ! isCached( cost + 1 ) ) {
+                        result = search( cost + 1, move );
+                        if ( result == FOUND ) {
+                            return FOUND;
+                        }
+                    }
+                }
+                min = Math.min( min, result );
+                
+                position.move( atom, from );
+                hash ^= keys;
+            }
+        }
+        return min;
+    }
+    
+    /**
+     * Returns the shared bound, if there is one.
+     * 
+     * @return  the length of the best solution found elsewhere, or
+     *          <tt>Integer.MAX_VALUE</tt>
+     */
+    private int getCeiling() {
+        return ( ceiling == null ? Integer.MAX_VALUE : ceiling.get() );
+    }
+    
+    /**
+     * Checks the current position against the transposition cache, and
+     * records it if it is not pruned.  The position must be within the
+     * bound.
+     * 
+     * @param   cost    the number of moves made to reach the position, at
+     *                  most the bound
+     * 
+     * @return          <tt>true</tt> if the position was already searched in
+     *                  this iteration with no more moves made
+     */
+    private boolean isCached( int cost ) {
+        if ( table == null ) {
+            return false;
+        }
+        
+        int depth = bound - cost;
+        long data = table.find( hash );
+        if ( ( data != TranspositionTable.MISSING ) && table.isCurrent( data )
+                && ( TranspositionTable.getDepth( data ) >= depth ) ) {
+            return true;
+        }
+        table.store( hash, depth, Moves.NONE );
+        return false;
+    }
+    
+} // IdaStarSolver
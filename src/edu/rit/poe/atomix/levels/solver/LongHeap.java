@@ -0,0 +1,137 @@
+/*
+ * LongHeap.java
+ *
+ * Version:
+ *      $Id$
+ *
+ * Copyright (c) 2009 Peter O. Erickson
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package edu.rit.poe.atomix.levels.solver;
+
+/**
+ * A binary min-heap of <tt>long</tt> values, used as the open list of the
+ * informed solvers.  Callers pack the priority into the high bits and the
+ * position number into the low bits, so no entry objects are needed.
+ * 
+ * @author  Peter O. Erickson
+ * 
+ * @version $Id$
+ */
+final class LongHeap {
+    
+    /** The heap, in the usual implicit binary tree layout. */
+    private long[] heap;
+    
+    /** The number of values in the heap. */
+    private int size;
+    
+    /**
+     * Constructs a new, empty <tt>LongHeap</tt>.
+     * 
+     * @param   capacity    the number of values to make room for
+     */
+    LongHeap( int capacity ) {
+        heap = new long[ Math.max( 1, capacity ) ];
+    }
+    
+    /**
+     * Returns whether the heap is empty.
+     * 
+     * @return  <tt>true</tt> if the heap holds no values
+     */
+    boolean isEmpty() {
+        return ( size == 0 );
+    }
+    
+    /**
+     * Returns the number of values in the heap.
+     * 
+     * @return  the number of values
+     */
+    int size() {
+        return size;
+    }
+    
+    /**
+     * Removes every value from the heap.
+     */
+    void clear() {
+        size = 0;
+    }
+    
+    /**
+     * Adds a value to the heap.
+     * 
+     * @param   value   the value to add
+     */
+    void add( long value ) {
+        if ( size == heap.length ) {
+            long[] grown = new long[ size * 2 ];
+            System.arraycopy( heap, 0, grown, 0, size );
+            heap = grown;
+        }
+        
+        int i = size++;
+        while ( i > 0 ) {
+            int parent = ( i - 1 ) >>> 1;
+            if ( heap[ parent ] <= value ) {
+                break;
+            }
+            heap[ i ] = heap[ parent ];
+            i = parent;
+        }
+        heap[ i ] = value;
+    }
+    
+    /**
+     * Returns the smallest value without removing it.
+     * 
+     * @return  the smallest value
+     */
+    long peek() {
+        return heap[ 0 ];
+    }
+    
+    /**
+     * Removes and returns the smallest value.
+     * 
+     * @return  the smallest value
+     */
+    long poll() {
+        long top = heap[ 0 ];
+        long value = heap[ --size ];
+        int i = 0;
+        int half = size >>> 1;
+        while ( i < half ) {
+            int child = ( i << 1 ) + 1;
+            if ( ( child + 1 < size ) &&
+                    ( heap[ child + 1 ] < heap[ child ] ) ) {
+                child++;
+            }
+            if ( value <= heap[ child ] ) {
+                break;
+            }
+            heap[ i ] = heap[ child ];
+            i = child;
+        }
+        heap[ i ] = value;
+        return top;
+    }
+    
+} // LongHeap
@@ -0,0 +1,293 @@
+/*
+ * ParScores.java
+ *
+ * Version:
+ *      $Id$
+ *
+ * Copyright (c) 2009 Peter O. Erickson
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package edu.rit.poe.atomix.levels.solver;
+
+import edu.rit.poe.atomix.levels.Level;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+
+/**
+ * Works out the par score of every level in a directory of level files,
+ * without the Android application.  Each level is solved in turn, and one
+ * tab-separated line is printed for it: the level number, its name, the
+ * length of a shortest solution, the number of positions expanded, and the
+ * time taken in milliseconds.  A level the solver gives up on, because it
+ * reached its state or node limit, is printed with dashes for its length
+ * and expansions.
+ * <p>
+ * Usage:
+ * <pre>
+ * java edu.rit.poe.atomix.levels.solver.ParScores [-solver name]
+ *         [-threads n] [-states n] [-nodes n] [-level n] [directory]
+ * </pre>
+ * The directory defaults to <tt>assets/levels</tt>.  The solver is one of
+ * the names in <tt>SOLVERS</tt>, the first being the default, so running
+ * the same levels with two solvers compares them.  The state limit applies
+ * to the solvers that store positions, and the node limit to the IDA*
+ * solvers; without them, a hard level can run for a long time.
+ * 
+ * @author  Peter O. Erickson
+ * 
+ * @version $Id$
+ */
+public final class ParScores {
+    
+    /** The names of the solvers that can be run, the default first. */
+    public static final String[] SOLVERS = {
+        "astar", "pattern", "ida", "placement", "bfs", "parallel",
+        "bidirectional", "external"
+    };
+    
+    /** The directory the level files are read from by default. */
+    public static final String DEFAULT_DIRECTORY = "assets/levels";
+    
+    /** The name of the solver to run. */
+    private String solverName;
+    
+    /** The number of threads of the parallel solvers. */
+    private int threads;
+    
+    /** The state limit of each search, or 0 for the solver's own. */
+    private int stateLimit;
+    
+    /** The node limit of each IDA* search, or 0 for none. */
+    private long nodeLimit;
+    
+    /** The only level to solve, or 0 for every level. */
+    private int onlyLevel;
+    
+    /**
+     * Constructs a new <tt>ParScores</tt> that runs the default solver on
+     * every level, with a thread for each processor and no extra limits.
+     */
+    public ParScores() {
+        this.solverName = SOLVERS[ 0 ];
+        this.threads = Runtime.getRuntime().availableProcessors();
+    }
+    
+    /**
+     * Sets the solver to run.
+     * 
+     * @param   solverName  the name of the solver (see <tt>SOLVERS</tt>)
+     * 
+     * @throws  IllegalArgumentException    if there is no such solver
+     */
+    public void setSolverName( String solverName ) {
+        for ( String name : SOLVERS ) {
+            if ( name.equals( solverName ) ) {
+                this.solverName = solverName;
+                return;
+            }
+        }
+        throw new IllegalArgumentException( "No solver named "
+                + solverName );
+    }
+    
+    /**
+     * Sets the number of threads of the parallel solvers.
+     * 
+     * @param   threads the number of threads
+     */
+    public void setThreads( int threads ) {
+        this.threads = Math.max( 1, threads );
+    }
+    
+    /**
+     * Sets the state limit of each search.
+     * 
+     * @param   stateLimit  the state limit, or 0 for the solver's own
+     */
+    public void setStateLimit( int stateLimit ) {
+        this.stateLimit = stateLimit;
+    }
+    
+    /**
+     * Sets the node limit of each IDA* search.
+     * 
+     * @param   nodeLimit   the node limit, or 0 for none
+     */
+    public void setNodeLimit( long nodeLimit ) {
+        this.nodeLimit = nodeLimit;
+    }
+    
+    /**
+     * Sets the only level to solve.
+     * 
+     * @param   onlyLevel   the level number, or 0 for every level
+     */
+    public void setOnlyLevel( int onlyLevel ) {
+        this.onlyLevel = onlyLevel;
+    }
+    
+    /**
+     * Solves the levels and prints their par scores.
+     * 
+     * @param   args    the command line arguments (see above)
+     * 
+     * @throws  IOException if a level file can't be read
+     */
+    public static void main( String[] args ) throws IOException {
+        ParScores parScores = new ParScores();
+        File directory = new File( DEFAULT_DIRECTORY );
+        try {
+            for ( int i = 0; i < args.length; i++ ) {
+                if ( args[ i ].equals( "-solver" ) ) {
+                    parScores.setSolverName( args[ ++i ] );
+                } else if ( args[ i ].equals( "-threads" ) ) {
+                    parScores.setThreads( Integer.parseInt( args[ ++i ] ) );
+                } else if ( args[ i ].equals( "-states" ) ) {
+                    parScores.setStateLimit(
+                            Integer.parseInt( args[ ++i ] ) );
+                } else if ( args[ i ].equals( "-nodes" ) ) {
+                    parScores.setNodeLimit( Long.parseLong( args[ ++i ] ) );
+                } else if ( args[ i ].equals( "-level" ) ) {
+                    parScores.setOnlyLevel(
+                            Integer.parseInt( args[ ++i ] ) );
+                } else {
+                    directory = new File( args[ i ] );
+                }
+            }
+        } catch ( RuntimeException e ) {
+            usage();
+            return;
+        }
+        
+        parScores.run( directory, System.out );
+    }
+    
+    /**
+     * Solves every level in a directory, in level number order, and prints
+     * a line for each.  Level files are named <tt>level</tt><i>n</i>
+     * <tt>.level</tt>, numbered from one up to the first one missing.
+     * 
+     * @param   directory   the directory of level files
+     * @param   out         the stream to print the lines to
+     * 
+     * @return              the number of levels that were solved
+     * 
+     * @throws  IOException if a level file can't be read
+     */
+    public int run( File directory, PrintStream out ) throws IOException {
+        out.println( "level\tname\tmoves\texpanded\tms" );
+        
+        int solved = 0;
+        for ( int number = 1; ; number++ ) {
+            File file = new File( directory, "level" + number + ".level" );
+            if ( ! file.exists() ) {
+                break;
+            }
+            if ( ( onlyLevel != 0 ) && ( number != onlyLevel ) ) {
+                continue;
+            }
+            
+            Level level;
+            InputStream in = new FileInputStream( file );
+            try {
+                level = Level.loadLevel( in );
+            } catch ( Exception e ) {
+                throw new IOException( "Can't read " + file + ": " + e );
+            } finally {
+                in.close();
+            }
+            
+            long begin = System.currentTimeMillis();
+            Solution solution = newSolver( level ).solve();
+            long millis = System.currentTimeMillis() - begin;
+            
+            if ( solution != null ) {
+                solved++;
+                out.println( level.getLevel() + "\t" + level.getName() + "\t"
+                        + solution.getLength() + "\t"
+                        + solution.getExpanded() + "\t" + millis );
+            } else {
+                out.println( level.getLevel() + "\t" + level.getName()
+                        + "\t-\t-\t" + millis );
+            }
+        }
+        return solved;
+    }
+    
+    /**
+     * Creates the solver for a level, with this object's limits.
+     * 
+     * @param   level   the level to solve
+     * 
+     * @return          the new solver
+     */
+    Solver newSolver( Level level ) {
+        Solver solver;
+        if ( solverName.equals( "placement" ) ) {
+            PlacementSolver placement = new PlacementSolver( level );
+            placement.setThreads( threads );
+            if ( nodeLimit > 0 ) {
+                placement.setNodeLimit( nodeLimit );
+            }
+            solver = placement;
+        } else if ( solverName.equals( "ida" ) ) {
+            IdaStarSolver ida = new IdaStarSolver( level );
+            if ( nodeLimit > 0 ) {
+                ida.setNodeLimit( nodeLimit );
+            }
+            solver = ida;
+        } else if ( solverName.equals( "astar" ) ) {
+            solver = new AStarSolver( level );
+        } else if ( solverName.equals( "pattern" ) ) {
+            solver = new AStarSolver( level, new PatternHeuristic( level ) );
+        } else if ( solverName.equals( "bfs" ) ) {
+            solver = new BreadthFirstSolver( level );
+        } else if ( solverName.equals( "parallel" ) ) {
+            ParallelBreadthFirstSolver parallel =
+                    new ParallelBreadthFirstSolver( level );
+            parallel.setThreads( threads );
+            solver = parallel;
+        } else if ( solverName.equals( "bidirectional" ) ) {
+            solver = new BidirectionalSolver( level );
+        } else {
+            solver = new ExternalBreadthFirstSolver( level );
+        }
+        
+        if ( stateLimit > 0 ) {
+            solver.setStateLimit( stateLimit );
+        }
+        return solver;
+    }
+    
+    /**
+     * Prints how to run this program.
+     */
+    private static void usage() {
+        StringBuilder names = new StringBuilder();
+        for ( String name : SOLVERS ) {
+            names.append( names.length() == 0 ? "" : ", " ).append( name );
+        }
+        System.err.println( "Usage: ParScores [-solver name] [-threads n] "
+                + "[-states n] [-nodes n] [-level n] [directory]" );
+        System.err.println( "Solvers: " + names );
+    }
+    
+} // ParScores
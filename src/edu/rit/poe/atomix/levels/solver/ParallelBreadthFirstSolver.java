@@ -0,0 +1,400 @@
+/*
+ * ParallelBreadthFirstSolver.java
+ *
+ * Version:
+ *      $Id$
+ *
+ * Copyright (c) 2009 Peter O. Erickson
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package edu.rit.poe.atomix.levels.solver;
+
+import edu.rit.poe.atomix.levels.Level;
+import edu.rit.poe.atomix.levels.Moves;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A breadth-first solver that expands each layer of the search on several
+ * threads.  The frontier is split into chunks that are expanded by a thread
+ * pool, and the layer ends when every chunk is done, so the first solution
+ * found is still a shortest one.
+ * <p>
+ * Reached positions are kept in a lock-striped set: the high bits of a
+ * key's hash pick one of <tt>STRIPES</tt> <tt>StateSet</tt>s, each guarded
+ * by its own lock, so threads only contend when they add to the same stripe
+ * at the same time.  A position is referred to across stripes by a handle
+ * holding its stripe and its number within the stripe.
+ * 
+ * @author  Peter O. Erickson
+ * 
+ * @version $Id$
+ */
+public class ParallelBreadthFirstSolver extends Solver {
+    
+    /** The number of stripes of the reached set (a power of two). */
+    private static final int STRIPES = 64;
+    
+    /** The shift that takes a key's hash to its stripe. */
+    private static final int STRIPE_SHIFT = 26;
+    
+    /** The number of bits of a handle that hold the number in the stripe. */
+    private static final int INDEX_BITS = 25;
+    
+    /** The mask of the number in the stripe. */
+    private static final int INDEX_MASK = ( 1 << INDEX_BITS ) - 1;
+    
+    /** The number of chunks each thread's share of a layer is split into. */
+    private static final int CHUNKS_PER_THREAD = 4;
+    
+    /** The number of positions each stripe is created for. */
+    private static final int INITIAL_CAPACITY = 1 << 12;
+    
+    /** The number of threads to expand with. */
+    private int threads;
+    
+    /** The stripes of the reached set, during a search. */
+    private StateSet[] stripes;
+    
+    /** The handle of a goal position, once one is reached, or -1. */
+    private AtomicInteger goal;
+    
+    /** Whether a stripe has more positions than a handle can number. */
+    private volatile boolean full;
+    
+    /**
+     * Constructs a new <tt>ParallelBreadthFirstSolver</tt> that uses one
+     * thread per processor.
+     * 
+     * @param   level   the level to solve
+     */
+    public ParallelBreadthFirstSolver( Level level ) {
+        super( level );
+        this.threads = Runtime.getRuntime().availableProcessors();
+    }
+    
+    /**
+     * Returns the number of threads the search runs on.
+     * 
+     * @return  the number of threads
+     */
+    public int getThreads() {
+        return threads;
+    }
+    
+    /**
+     * Sets the number of threads the search runs on.
+     * 
+     * @param   threads     the number of threads
+     */
+    public void setThreads( int threads ) {
+        this.threads = Math.max( 1, threads );
+    }
+    
+    /**
+     * Solves the level from the specified position.
+     * 
+     * @param   start   the square of every atom, indexed by atom index
+     * 
+     * @return          a shortest solution, or <tt>null</tt> if there is none
+     *                  (or the state limit was reached first, or a stripe
+     *                  reached <tt>2^INDEX_BITS</tt> positions)
+     */
+    @Override
+    public Solution solve( int[] start ) {
+        long begin = System.currentTimeMillis();
+        int words = codec.getWords();
+        
+        Position position = new Position( level );
+        position.set( start );
+        if ( position.isComplete() ) {
+            return new Solution( new int[ 0 ], 0,
+                    System.currentTimeMillis() - begin );
+        }
+        if ( getReachability().isDead( start ) ) {
+            return null;
+        }
+        
+        stripes = new StateSet[ STRIPES ];
+        for ( int i = 0; i < STRIPES; i++ ) {
+            stripes[ i ] = new StateSet( words, INITIAL_CAPACITY );
+        }
+        goal = new AtomicInteger( -1 );
+        full = false;
+        
+        long[] frontier = new long[ words ];
+        codec.encode( start, frontier, 0 );
+        int[] handles = new int[] { add( frontier, 0, -1, Moves.NONE ) };
+        int size = 1;
+        
+        ExecutorService pool = Executors.newFixedThreadPool( threads );
+        long expanded = 0;
+        try {
+            while ( ( size > 0 ) && ( goal.get() < 0 ) ) {
+                // split the layer into chunks and expand them all
+                int chunks = Math.min( size, threads * CHUNKS_PER_THREAD );
+                List<Expansion> tasks = new ArrayList<Expansion>( chunks );
+                for ( int i = 0; i < chunks; i++ ) {
+                    tasks.add( new Expansion( frontier, handles,
+                            ( int )( ( long )size * i / chunks ),
+                            ( int )( ( long )size * ( i + 1 ) / chunks ) ) );
+                }
+                List<Future<Expansion>> results = pool.invokeAll( tasks );
+                
+                // gather the chunks' new positions into the next layer
+                size = 0;
+                for ( Future<Expansion> result : results ) {
+                    size += result.get().count;
+                }
+                long[] nextFrontier = new long[ size * words ];
+                int[] nextHandles = new int[ size ];
+                int next = 0;
+                for ( Future<Expansion> result : results ) {
+                    Expansion chunk = result.get();
+                    expanded += chunk.expanded;
+                    System.arraycopy( chunk.keys, 0, nextFrontier,
+                            next * words, chunk.count * words );
+                    System.arraycopy( chunk.handles, 0, nextHandles, next,
+                            chunk.count );
+                    next += chunk.count;
+                }
+                frontier = nextFrontier;
+                handles = nextHandles;
+                
+                if ( full || ( getReached() > getStateLimit() ) ) {
+                    break;
+                }
+            }
+        } catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+        } catch ( ExecutionException e ) {
+            throw new IllegalStateException( e.getCause() );
+        } finally {
+            pool.shutdown();
+        }
+        
+        Solution solution = null;
+        if ( goal.get() >= 0 ) {
+            solution = new Solution( resolve( start, getPath( goal.get() ) ),
+                    expanded, System.currentTimeMillis() - begin );
+        }
+        stripes = null;
+        return solution;
+    }
+    
+    /**
+     * Returns the number of positions reached so far.
+     * 
+     * @return  the number of reached positions
+     */
+    private int getReached() {
+        int reached = 0;
+        for ( int i = 0; i < STRIPES; i++ ) {
+            reached += stripes[ i ].size();
+        }
+        return reached;
+    }
+    
+    /**
+     * Adds a position to its stripe of the reached set, unless it is already
+     * there.  Safe to call from any thread.
+     * 
+     * @param   key     the array holding the key
+     * @param   offset  the index of the key's first word in the array
+     * @param   parent  the handle of the position it was reached from
+     * @param   move    the packed move that reached it
+     * 
+     * @return          the handle of the new position, or <tt>-1</tt> if it
+     *                  was already reached (or its stripe is full, which
+     *                  ends the search after this layer)
+     */
+    private int add( long[] key, int offset, int parent, int move ) {
+        int stripe = ( StateSet.hash( key, offset, codec.getWords() )
+                >>> STRIPE_SHIFT );
+        StateSet set = stripes[ stripe ];
+        int n;
+        synchronized ( set ) {
+            n = set.add( key, offset, parent, move );
+        }
+        if ( n > INDEX_MASK ) {
+            // the number would spill into the stripe bits of the handle
+            full = true;
+            return -1;
+        }
+        return ( n < 0 ? -1 : ( ( stripe << INDEX_BITS ) | n ) );
+    }
+    
+    /**
+     * Returns the moves that lead from the start to the specified position.
+     * 
+     * @param   handle  the handle of the position
+     * 
+     * @return          the packed moves, in the order they are played
+     */
+    private int[] getPath( int handle ) {
+        int length = 0;
+        for ( int h = handle; h >= 0; h = getParent( h ) ) {
+            length++;
+        }
+        
+        int[] path = new int[ length - 1 ];
+        for ( int h = handle; getParent( h ) >= 0; h = getParent( h ) ) {
+            path[ --length - 1 ] = stripes[ h >>> INDEX_BITS ].getMove(
+                    h & INDEX_MASK );
+        }
+        return path;
+    }
+    
+    /**
+     * Returns the handle of the position the specified one was reached from.
+     * 
+     * @param   handle  the handle of the position
+     * 
+     * @return          the parent's handle, or <tt>-1</tt> for the start
+     */
+    private int getParent( int handle ) {
+        return stripes[ handle >>> INDEX_BITS ].getParent(
+                handle & INDEX_MASK );
+    }
+    
+    /**
+     * The expansion of one chunk of a layer, run on a pool thread.  When it
+     * is done it holds the new positions it reached, which form part of the
+     * next layer.
+     * 
+     * @author  Peter O. Erickson
+     */
+    private final class Expansion implements Callable<Expansion> {
+        
+        /** The keys of the layer being expanded. */
+        private final long[] frontier;
+        
+        /** The handles of the layer being expanded. */
+        private final int[] frontierHandles;
+        
+        /** The first position of the chunk. */
+        private final int begin;
+        
+        /** The end (exclusive) of the chunk. */
+        private final int end;
+        
+        /** The keys of the new positions. */
+        long[] keys;
+        
+        /** The handles of the new positions. */
+        int[] handles;
+        
+        /** The number of new positions. */
+        int count;
+        
+        /** The number of positions this chunk expanded. */
+        long expanded;
+        
+        /**
+         * Constructs a new <tt>Expansion</tt> of part of a layer.
+         * 
+         * @param   frontier        the keys of the layer
+         * @param   frontierHandles the handles of the layer
+         * @param   begin           the first position of the chunk
+         * @param   end             the end (exclusive) of the chunk
+         */
+        Expansion( long[] frontier, int[] frontierHandles, int begin,
+                int end ) {
+            this.frontier = frontier;
+            this.frontierHandles = frontierHandles;
+            this.begin = begin;
+            this.end = end;
+        }
+        
+        /**
+         * Expands every position of the chunk.
+         * 
+         * @return  this expansion
+         */
+        public Expansion call() {
+            int words = codec.getWords();
+            int atomCount = level.getAtomCount();
+            Position position = new Position( level );
+            Reachability reachability = getReachability();
+            int[] cells = new int[ atomCount ];
+            keys = new long[ Math.max( 1, end - begin ) * words ];
+            handles = new int[ Math.max( 1, end - begin ) ];
+            
+            for ( int i = begin; ( i < end ) && ( goal.get() < 0 ); i++ ) {
+                codec.decode( frontier, i * words, cells );
+                position.set( cells );
+                expanded++;
+                
+                for ( int atom = 0; atom < atomCount; atom++ ) {
+                    int from = cells[ atom ];
+                    for ( int dir = 0; dir < Level.DIRECTIONS; dir++ ) {
+                        int to = position.slide( atom, dir );
+                        if ( to != from ) {
+                            position.move( atom, to );
+                            if ( ! reachability.isDead(
+                                    position.getCells() ) ) {
+                                reach( position, atom, frontierHandles[ i ],
+                                        Moves.pack( atom, dir, from, to ) );
+                            }
+                            position.move( atom, from );
+                        }
+                    }
+                }
+            }
+            return this;
+        }
+        
+        /**
+         * Records a position reached by a move, if it is new.
+         * 
+         * @param   position    the position reached
+         * @param   atom        the atom that moved
+         * @param   parent      the handle of the position it came from
+         * @param   move        the packed move
+         */
+        private void reach( Position position, int atom, int parent,
+                int move ) {
+            int words = codec.getWords();
+            if ( ( count + 1 ) * words > keys.length ) {
+                long[] grownKeys = new long[ keys.length * 2 ];
+                System.arraycopy( keys, 0, grownKeys, 0, count * words );
+                keys = grownKeys;
+                int[] grownHandles = new int[ handles.length * 2 ];
+                System.arraycopy( handles, 0, grownHandles, 0, count );
+                handles = grownHandles;
+            }
+            
+            codec.encode( position.getCells(), keys, count * words );
+            int handle = add( keys, count * words, parent, move );
+            if ( handle >= 0 ) {
+                handles[ count++ ] = handle;
+                if ( position.isComplete( atom ) ) {
+                    goal.compareAndSet( -1, handle );
+                }
+            }
+        }
+        
+    } // Expansion
+    
+} // ParallelBreadthFirstSolver
@@ -0,0 +1,463 @@
+/*
+ * PatternDatabase.java
+ *
+ * Version:
+ *      $Id$
+ *
+ * Copyright (c) 2009 Peter O. Erickson
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package edu.rit.poe.atomix.levels.solver;
+
+import edu.rit.poe.atomix.levels.Level;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.ref.SoftReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Exact move counts for small groups of goal atoms, solved in isolation, for
+ * every feasible placement of the goal kernel (see <tt>Reachability</tt>).
+ * <p>
+ * A pattern is a group of up to <tt>getPatternSize()</tt> goal atoms.  Its
+ * table holds, for every way of placing the group's atoms on open squares,
+ * the least number of moves of those atoms that puts each on its goal
+ * square.  The atoms block each other exactly; the other atoms are left
+ * out, but since any of them could be a stopper, a pattern atom may stop
+ * anywhere short of a wall or a pattern atom.  That keeps every table a
+ * lower bound on the moves its atoms need in the real level.
+ * <p>
+ * Only goal atoms whose type has a single atom on the board and a single
+ * square in the goal go into patterns, so each pattern always means the
+ * same atoms and no two patterns share an atom: the tables of one placement
+ * can be added up.  Atoms of repeated types are left to the assignment of
+ * <tt>PatternHeuristic</tt>.
+ * <p>
+ * Tables are one byte per entry, indexed by the open-square indices (see
+ * <tt>StateCodec.indexOf()</tt>) of the pattern's atoms, the first atom
+ * varying fastest.  They are built by a breadth-first search back from the
+ * goal the first time a placement asks for them.  Databases are cached by
+ * the level's hash (see <tt>Level.getHash()</tt>) for as long as memory
+ * allows, and can be saved and loaded so that they are built offline.
+ * 
+ * @author  Peter O. Erickson
+ * 
+ * @version $Id$
+ */
+public final class PatternDatabase {
+    
+    /** The default number of atoms in a pattern. */
+    public static final int DEFAULT_PATTERN_SIZE = 2;
+    
+    /** The largest number of atoms in a pattern. */
+    public static final int MAX_PATTERN_SIZE = 3;
+    
+    /** The first word of a saved database. */
+    private static final int MAGIC = 0x41504442;
+    
+    /** The built databases, by level hash and pattern size. */
+    private static final Map<String, SoftReference<PatternDatabase>> cache =
+            new HashMap<String, SoftReference<PatternDatabase>>();
+    
+    /** The level the tables are for. */
+    private final Level level;
+    
+    /** The codec whose open-square indices number the tables. */
+    private final StateCodec codec;
+    
+    /** The feasible placements of the level. */
+    private final Reachability reachability;
+    
+    /** The largest number of atoms in a pattern. */
+    private final int size;
+    
+    /** The goal atoms of every pattern. */
+    private final int[][] patterns;
+    
+    /** The atom on each goal square of every pattern. */
+    private final int[][] atoms;
+    
+    /**
+     * The table of every pattern at every placement, indexed by
+     * <tt>placement * getPatternCount() + pattern</tt>, or <tt>null</tt>
+     * until it is built.  Tables are read without a lock, so they are
+     * published through an atomic array: a thread that sees a table also
+     * sees its contents.
+     */
+    private final AtomicReferenceArray<byte[]> tables;
+    
+    /**
+     * Constructs a new, empty <tt>PatternDatabase</tt> for the specified
+     * level.  Tables are built as they are asked for.
+     * 
+     * @param   level   the level
+     * @param   size    the largest number of atoms in a pattern, from 1 to
+     *                  <tt>MAX_PATTERN_SIZE</tt>
+     */
+    public PatternDatabase( Level level, int size ) {
+        if ( ( size < 1 ) || ( size > MAX_PATTERN_SIZE ) ) {
+            throw new IllegalArgumentException( "Bad pattern size: " + size );
+        }
+        this.level = level;
+        this.size = size;
+        codec = new StateCodec( level );
+        reachability = new Reachability( level );
+        
+        // the goal atoms of types with a single atom and a single goal
+        // square, in goal order, cut into patterns
+        int[] counts = new int[ level.getTypeCount() ];
+        int[] goalCounts = new int[ level.getTypeCount() ];
+        int[] atomOf = new int[ level.getTypeCount() ];
+        for ( int atom = 0; atom < level.getAtomCount(); atom++ ) {
+            int type = level.getType( level.getAtom( atom ) );
+            counts[ type ]++;
+            atomOf[ type ] = atom;
+        }
+        for ( int i = 0; i < level.getGoalAtomCount(); i++ ) {
+            goalCounts[ level.getGoalType( i ) ]++;
+        }
+        List<Integer> single = new ArrayList<Integer>();
+        for ( int i = 0; i < level.getGoalAtomCount(); i++ ) {
+            int type = level.getGoalType( i );
+            if ( ( counts[ type ] == 1 ) && ( goalCounts[ type ] == 1 ) ) {
+                single.add( i );
+            }
+        }
+        int count = ( single.size() + size - 1 ) / size;
+        patterns = new int[ count ][];
+        atoms = new int[ count ][];
+        for ( int k = 0; k < count; k++ ) {
+            int length = Math.min( size, single.size() - k * size );
+            patterns[ k ] = new int[ length ];
+            atoms[ k ] = new int[ length ];
+            for ( int j = 0; j < length; j++ ) {
+                int i = single.get( k * size + j );
+                patterns[ k ][ j ] = i;
+                atoms[ k ][ j ] = atomOf[ level.getGoalType( i ) ];
+            }
+        }
+        
+        tables = new AtomicReferenceArray<byte[]>(
+                reachability.getPlacementCount() * count );
+    }
+    
+    /**
+     * Returns the database for the specified level and pattern size, from
+     * the cache if one was built for a level with the same hash.
+     * 
+     * @param   level   the level
+     * @param   size    the largest number of atoms in a pattern
+     * 
+     * @return          the level's pattern database
+     */
+    public static PatternDatabase get( Level level, int size ) {
+        String key = Long.toHexString( level.getHash() ) + "/" + size;
+        synchronized ( cache ) {
+            SoftReference<PatternDatabase> ref = cache.get( key );
+            PatternDatabase database = ( ref == null ? null : ref.get() );
+            if ( database == null ) {
+                database = new PatternDatabase( level, size );
+                cache.put( key, new SoftReference<PatternDatabase>(
+                        database ) );
+            }
+            return database;
+        }
+    }
+    
+    /**
+     * Loads a database saved by <tt>save()</tt>, and caches it.
+     * 
+     * @param   level   the level the database was built for
+     * @param   in      the stream to read from
+     * 
+     * @return          the database
+     * 
+     * @throws  IOException     if the stream can't be read, or holds a
+     *                          database for another level
+     */
+    public static PatternDatabase load( Level level, InputStream in )
+            throws IOException {
+        DataInputStream data = new DataInputStream( in );
+        if ( data.readInt() != MAGIC ) {
+            throw new IOException( "Not a pattern database." );
+        }
+        if ( data.readLong() != level.getHash() ) {
+            throw new IOException( "Pattern database is for another level." );
+        }
+        
+        int size = data.readInt();
+        if ( ( size < 1 ) || ( size > MAX_PATTERN_SIZE ) ) {
+            throw new IOException( "Bad pattern size: " + size );
+        }
+        PatternDatabase database = new PatternDatabase( level, size );
+        for ( int p = data.readInt(); p >= 0; p = data.readInt() ) {
+            int k = data.readInt();
+            int length = data.readInt();
+            if ( ( p >= database.reachability.getPlacementCount() ) ||
+                    ( k < 0 ) ||
+                    ( k >= database.patterns.length ) ||
+                    ( length != database.getEntries( k ) ) ) {
+                throw new IOException( "Corrupt pattern database." );
+            }
+            byte[] table = new byte[ length ];
+            data.readFully( table );
+            database.tables.set( database.slot( p, k ), table );
+        }
+        
+        String key = Long.toHexString( level.getHash() ) + "/"
+                + database.size;
+        synchronized ( cache ) {
+            cache.put( key, new SoftReference<PatternDatabase>( database ) );
+        }
+        return database;
+    }
+    
+    /**
+     * Saves every table built so far, tagged with the level's hash.
+     * 
+     * @param   out     the stream to write to
+     * 
+     * @throws  IOException     if the stream can't be written
+     */
+    public synchronized void save( OutputStream out ) throws IOException {
+        DataOutputStream data = new DataOutputStream( out );
+        data.writeInt( MAGIC );
+        data.writeLong( level.getHash() );
+        data.writeInt( size );
+        for ( int p = 0; p < reachability.getPlacementCount(); p++ ) {
+            for ( int k = 0; k < patterns.length; k++ ) {
+                byte[] table = tables.get( slot( p, k ) );
+                if ( table != null ) {
+                    data.writeInt( p );
+                    data.writeInt( k );
+                    data.writeInt( table.length );
+                    data.write( table );
+                }
+            }
+        }
+        data.writeInt( -1 );
+        data.flush();
+    }
+    
+    /**
+     * Returns the reachability analysis whose placements number the tables.
+     * 
+     * @return  the reachability analysis
+     */
+    public Reachability getReachability() {
+        return reachability;
+    }
+    
+    /**
+     * Returns the largest number of atoms in a pattern.
+     * 
+     * @return  the pattern size
+     */
+    public int getPatternSize() {
+        return size;
+    }
+    
+    /**
+     * Returns the number of patterns at each placement.
+     * 
+     * @return  the number of patterns
+     */
+    public int getPatternCount() {
+        return patterns.length;
+    }
+    
+    /**
+     * Returns the goal atoms of a pattern.
+     * 
+     * @param   k   the pattern
+     * 
+     * @return      the goal atoms (see <tt>Level.getGoalType()</tt>)
+     */
+    public int[] getPattern( int k ) {
+        return patterns[ k ].clone();
+    }
+    
+    /**
+     * Returns the number of bytes taken by the tables built so far.
+     * 
+     * @return  the size of the built tables in bytes
+     */
+    public synchronized long getBytes() {
+        long bytes = 0;
+        for ( int i = 0; i < tables.length(); i++ ) {
+            byte[] table = tables.get( i );
+            if ( table != null ) {
+                bytes += table.length;
+            }
+        }
+        return bytes;
+    }
+    
+    /**
+     * Returns the number of entries in the table of a pattern.
+     * 
+     * @param   k   the pattern
+     * 
+     * @return      the number of open squares to the power of the number of
+     *              atoms in the pattern
+     */
+    private int getEntries( int k ) {
+        int entries = 1;
+        for ( int j = 0; j < patterns[ k ].length; j++ ) {
+            entries *= codec.getOpenCount();
+        }
+        return entries;
+    }
+    
+    /**
+     * Returns the index of a pattern's table at a placement.
+     * 
+     * @param   p   the placement
+     * @param   k   the pattern
+     * 
+     * @return      the index into <tt>tables</tt>
+     */
+    private int slot( int p, int k ) {
+        return ( p * patterns.length + k );
+    }
+    
+    /**
+     * Returns the least number of moves for a pattern's atoms to reach their
+     * goal squares at a placement, building the table if needed.  Any
+     * number of threads may call this at once.
+     * 
+     * @param   p       the placement
+     * @param   k       the pattern
+     * @param   cells   the square of every atom
+     * 
+     * @return          the number of moves, or
+     *                  <tt>SlideDistances.UNREACHABLE</tt>
+     */
+    int get( int p, int k, int[] cells ) {
+        byte[] table = tables.get( slot( p, k ) );
+        if ( table == null ) {
+            table = build( p, k );
+        }
+        
+        int[] group = atoms[ k ];
+        int open = codec.getOpenCount();
+        int index = 0;
+        for ( int j = group.length - 1; j >= 0; j-- ) {
+            index = index * open + codec.indexOf( cells[ group[ j ] ] );
+        }
+        return table[ index ];
+    }
+    
+    /**
+     * Builds the table of a pattern at a placement, unless another thread
+     * already has.
+     * 
+     * @param   p   the placement
+     * @param   k   the pattern
+     * 
+     * @return      the table
+     */
+    private synchronized byte[] build( int p, int k ) {
+        byte[] built = tables.get( slot( p, k ) );
+        if ( built != null ) {
+            return built;
+        }
+        
+        int[] pattern = patterns[ k ];
+        int m = pattern.length;
+        int open = codec.getOpenCount();
+        int[] powers = new int[ m + 1 ];
+        powers[ 0 ] = 1;
+        for ( int j = 0; j < m; j++ ) {
+            powers[ j + 1 ] = powers[ j ] * open;
+        }
+        byte[] table = new byte[ powers[ m ] ];
+        Arrays.fill( table, ( byte )SlideDistances.UNREACHABLE );
+        
+        // the moves are reversible (any square a slide passes could be a
+        // stop), so a search forward from the goal gives the distance to it
+        int origin = reachability.getPlacementOrigin( p );
+        int goal = 0;
+        for ( int j = 0; j < m; j++ ) {
+            goal += codec.indexOf( origin + level.getGoalOffset(
+                    pattern[ j ] ) ) * powers[ j ];
+        }
+        int[] queue = new int[ powers[ m ] ];
+        int[] squares = new int[ m ];
+        table[ goal ] = 0;
+        queue[ 0 ] = goal;
+        int head = 0;
+        int tail = 1;
+        while ( head < tail ) {
+            int state = queue[ head++ ];
+            int next = table[ state ] + 1;
+            if ( next >= SlideDistances.UNREACHABLE ) {
+                break;
+            }
+            for ( int j = 0; j < m; j++ ) {
+                squares[ j ] = codec.cellOf( ( state / powers[ j ] ) % open );
+            }
+            
+            for ( int j = 0; j < m; j++ ) {
+                int from = squares[ j ];
+                int base = state - codec.indexOf( from ) * powers[ j ];
+                for ( int dir = 0; dir < Level.DIRECTIONS; dir++ ) {
+                    int step = level.offset( dir );
+                    for ( int to = from + step;
+                            ! level.isWall( to ) && ! holds( squares, to );
+                            to += step ) {
+                        int child = base + codec.indexOf( to ) * powers[ j ];
+                        if ( table[ child ] == SlideDistances.UNREACHABLE ) {
+                            table[ child ] = ( byte )next;
+                            queue[ tail++ ] = child;
+                        }
+                    }
+                }
+            }
+        }
+        
+        tables.set( slot( p, k ), table );
+        return table;
+    }
+    
+    /**
+     * Returns whether one of the pattern's atoms is on a square.
+     * 
+     * @param   squares     the squares of the pattern's atoms
+     * @param   cell        the row-major index of the square
+     * 
+     * @return              <tt>true</tt> if the square is taken
+     */
+    private static boolean holds( int[] squares, int cell ) {
+        for ( int j = 0; j < squares.length; j++ ) {
+            if ( squares[ j ] == cell ) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+} // PatternDatabase
@@ -0,0 +1,151 @@
+/*
+ * PatternHeuristic.java
+ *
+ * Version:
+ *      $Id$
+ *
+ * Copyright (c) 2009 Peter O. Erickson
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package edu.rit.poe.atomix.levels.solver;
+
+import edu.rit.poe.atomix.levels.Level;
+
+/**
+ * A heuristic that adds up the exact costs of a <tt>PatternDatabase</tt>'s
+ * patterns, and the assignment costs of <tt>AssignmentHeuristic</tt> for the
+ * goal types no pattern covers.  Each pattern counts for at least as much as
+ * the assignment costs of its atoms, so the estimate is never below the
+ * plain assignment's.  Patterns never share an atom and never cover an atom
+ * that is assigned, so the sum is still admissible.
+ * <p>
+ * A pattern whose atoms can no longer reach their goal squares makes its
+ * placement dead.  An instance keeps scratch state, so each thread needs
+ * its own.
+ * 
+ * @author  Peter O. Erickson
+ * 
+ * @version $Id$
+ */
+public class PatternHeuristic extends AssignmentHeuristic {
+    
+    /** The pattern database of the level. */
+    private final PatternDatabase database;
+    
+    /** The database placement of each placement this heuristic aims for. */
+    private final int[] placements;
+    
+    /** The goal types of every pattern, indexed by pattern. */
+    private final int[][] patternGroups;
+    
+    /** Whether each goal type is covered by a pattern. */
+    private final boolean[] covered;
+    
+    /**
+     * Constructs a new <tt>PatternHeuristic</tt> for the specified level,
+     * with the cached pattern database of the default pattern size.
+     * 
+     * @param   level   the level
+     */
+    public PatternHeuristic( Level level ) {
+        this( level, PatternDatabase.get( level,
+                PatternDatabase.DEFAULT_PATTERN_SIZE ) );
+    }
+    
+    /**
+     * Constructs a new <tt>PatternHeuristic</tt> on a pattern database.
+     * 
+     * @param   level       the level
+     * @param   database    the level's pattern database
+     */
+    public PatternHeuristic( Level level, PatternDatabase database ) {
+        super( level, new SlideDistances( level ),
+                database.getReachability() );
+        this.database = database;
+        placements = new int[ database.getReachability().getPlacementCount() ];
+        for ( int p = 0; p < placements.length; p++ ) {
+            placements[ p ] = p;
+        }
+        
+        patternGroups = new int[ database.getPatternCount() ][];
+        covered = new boolean[ getGroupCount() ];
+        for ( int k = 0; k < patternGroups.length; k++ ) {
+            int[] pattern = database.getPattern( k );
+            patternGroups[ k ] = new int[ pattern.length ];
+            for ( int j = 0; j < pattern.length; j++ ) {
+                patternGroups[ k ][ j ] = getGroup( pattern[ j ] );
+                covered[ patternGroups[ k ][ j ] ] = true;
+            }
+        }
+    }
+    
+    /**
+     * Constructs a new <tt>PatternHeuristic</tt> that only aims for one
+     * placement of another, sharing its tables.
+     * 
+     * @param   heuristic   the heuristic over every feasible placement
+     * @param   placement   the placement to aim for (see
+     *                      <tt>Reachability.getPlacementOrigin()</tt>)
+     */
+    public PatternHeuristic( PatternHeuristic heuristic, int placement ) {
+        super( heuristic, placement );
+        database = heuristic.database;
+        placements = new int[] { placement };
+        patternGroups = heuristic.patternGroups;
+        covered = heuristic.covered;
+    }
+    
+    /**
+     * Returns the pattern database this heuristic is built on.
+     * 
+     * @return  the pattern database
+     */
+    public PatternDatabase getDatabase() {
+        return database;
+    }
+    
+    @Override
+    int estimate( int[] cells, int p, int best ) {
+        int sum = 0;
+        for ( int k = 0; ( k < patternGroups.length ) && ( sum < best );
+                k++ ) {
+            int moves = database.get( placements[ p ], k, cells );
+            if ( moves >= SlideDistances.UNREACHABLE ) {
+                return DEAD;
+            }
+            
+            int assigned = 0;
+            for ( int j = 0; j < patternGroups[ k ].length; j++ ) {
+                assigned += getCost( cells, p, patternGroups[ k ][ j ] );
+            }
+            if ( assigned >= INFINITE ) {
+                return DEAD;
+            }
+            sum += Math.max( moves, assigned );
+        }
+        
+        for ( int g = 0; ( g < covered.length ) && ( sum < best ); g++ ) {
+            if ( ! covered[ g ] ) {
+                int cost = getCost( cells, p, g );
+                sum = ( cost >= INFINITE ? DEAD : sum + cost );
+            }
+        }
+        return sum;
+    }
+    
+} // PatternHeuristic
@@ -0,0 +1,340 @@
+/*
+ * PlacementSolver.java
+ *
+ * Version:
+ *      $Id$
+ *
+ * Copyright (c) 2009 Peter O. Erickson
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package edu.rit.poe.atomix.levels.solver;
+
+import edu.rit.poe.atomix.levels.Level;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A solver that treats every feasible placement of the goal kernel (see
+ * <tt>Reachability</tt>) as a separate, fully specified target, and solves
+ * them as separate tasks on a thread pool.  This is coarse-grained
+ * parallelism, with no sharing between tasks beyond a single bound, so it
+ * complements the layer-level parallelism of
+ * <tt>ParallelBreadthFirstSolver</tt>.
+ * <p>
+ * Each placement has an <tt>IdaStarSolver</tt> aimed at it alone, with a
+ * <tt>AssignmentHeuristic</tt> for that placement.  The placements are
+ * deepened together: each round runs one iteration of every placement whose
+ * next bound is the least, and idle threads take the next placement of the
+ * round.  No placement is searched deeper than the shortest solution of
+ * the level, and the first round that finds a solution ends the search,
+ * since no placement has one within a lower bound.  Each thread keeps one
+ * transposition cache for all its iterations.
+ * 
+ * @author  Peter O. Erickson
+ * 
+ * @version $Id$
+ */
+public class PlacementSolver extends Solver {
+    
+    /** The heuristic over every feasible placement. */
+    private final AssignmentHeuristic heuristic;
+    
+    /** The number of threads to solve on. */
+    private int threads;
+    
+    /** The byte budget of the transposition caches of all threads. */
+    private int cacheBytes;
+    
+    /** The number of positions each placement may expand. */
+    private long nodeLimit;
+    
+    /**
+     * Constructs a new <tt>PlacementSolver</tt> that uses one thread per
+     * processor.
+     * 
+     * @param   level   the level to solve
+     */
+    public PlacementSolver( Level level ) {
+        super( level );
+        this.heuristic = new AssignmentHeuristic( level,
+                new SlideDistances( level ), getReachability() );
+        this.threads = Runtime.getRuntime().availableProcessors();
+        this.cacheBytes = IdaStarSolver.DEFAULT_CACHE_BYTES;
+        this.nodeLimit = Long.MAX_VALUE;
+    }
+    
+    /**
+     * Returns the number of threads placements are solved on.
+     * 
+     * @return  the number of threads
+     */
+    public int getThreads() {
+        return threads;
+    }
+    
+    /**
+     * Sets the number of threads placements are solved on.
+     * 
+     * @param   threads     the number of threads
+     */
+    public void setThreads( int threads ) {
+        this.threads = Math.max( 1, threads );
+    }
+    
+    /**
+     * Returns the byte budget of the transposition caches, split evenly
+     * between the threads.
+     * 
+     * @return  the cache budget in bytes
+     */
+    public int getCacheBytes() {
+        return cacheBytes;
+    }
+    
+    /**
+     * Sets the byte budget of the transposition caches, split evenly between
+     * the threads.
+     * 
+     * @param   cacheBytes  the cache budget in bytes
+     */
+    public void setCacheBytes( int cacheBytes ) {
+        this.cacheBytes = cacheBytes;
+    }
+    
+    /**
+     * Returns the number of positions each placement may expand before its
+     * search gives up.
+     * 
+     * @return  the node limit per placement
+     */
+    public long getNodeLimit() {
+        return nodeLimit;
+    }
+    
+    /**
+     * Sets the number of positions each placement may expand before its
+     * search gives up.
+     * 
+     * @param   nodeLimit   the new node limit per placement
+     */
+    public void setNodeLimit( long nodeLimit ) {
+        this.nodeLimit = nodeLimit;
+    }
+    
+    /**
+     * Solves the level from the specified position.
+     * 
+     * @param   start   the square of every atom, indexed by atom index
+     * 
+     * @return          a shortest solution, or <tt>null</tt> if there is none
+     *                  (or a placement that could hold a shorter one reached
+     *                  the node limit)
+     */
+    @Override
+    public Solution solve( int[] start ) {
+        long begin = System.currentTimeMillis();
+        Position position = new Position( level );
+        position.set( start );
+        if ( position.isComplete() ) {
+            return new Solution( new int[ 0 ], 0,
+                    System.currentTimeMillis() - begin );
+        }
+        
+        // a search and a next bound for every placement, DEAD once it is
+        // ruled out
+        Reachability reachability = getReachability();
+        int placements = reachability.getPlacementCount();
+        AtomicInteger best = new AtomicInteger( Integer.MAX_VALUE );
+        IdaStarSolver[] searches = new IdaStarSolver[ placements ];
+        int[] next = new int[ placements ];
+        for ( int p = 0; p < placements; p++ ) {
+            AssignmentHeuristic placementHeuristic =
+                    new AssignmentHeuristic( heuristic, p );
+            next[ p ] = placementHeuristic.estimate( start );
+            if ( next[ p ] != Heuristic.DEAD ) {
+                searches[ p ] = new IdaStarSolver( level,
+                        placementHeuristic );
+                searches[ p ].setTarget(
+                        reachability.getPlacementOrigin( p ) );
+                searches[ p ].setCeiling( best );
+                searches[ p ].setNodeLimit( nodeLimit );
+            }
+        }
+        
+        List<Worker> workers = new ArrayList<Worker>( threads );
+        for ( int i = 0; i < threads; i++ ) {
+            workers.add( new Worker( start, searches, next, best ) );
+        }
+        
+        ExecutorService pool = Executors.newFixedThreadPool( threads );
+        int[] moves = null;
+        boolean complete = true;
+        try {
+            while ( moves == null ) {
+                // the next bound is the least over the live placements
+                int bound = Heuristic.DEAD;
+                for ( int p = 0; p < placements; p++ ) {
+                    bound = Math.min( bound, next[ p ] );
+                }
+                if ( bound == Heuristic.DEAD ) {
+                    break;
+                }
+                
+                // search every placement that can be solved within it
+                List<Integer> round = new ArrayList<Integer>();
+                for ( int p = 0; p < placements; p++ ) {
+                    if ( next[ p ] == bound ) {
+                        round.add( p );
+                    }
+                }
+                AtomicInteger cursor = new AtomicInteger();
+                for ( Worker worker : workers ) {
+                    worker.setRound( round, bound, cursor );
+                }
+                for ( Future<int[]> result : pool.invokeAll( workers ) ) {
+                    if ( ( moves == null ) && ( result.get() != null ) ) {
+                        moves = result.get();
+                    }
+                }
+                
+                for ( int p : round ) {
+                    if ( searches[ p ].getExpanded() >= nodeLimit ) {
+                        // a solution at this placement could be shorter
+                        next[ p ] = Heuristic.DEAD;
+                        complete = false;
+                    }
+                }
+            }
+        } catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            complete = false;
+        } catch ( ExecutionException e ) {
+            throw new IllegalStateException( e.getCause() );
+        } finally {
+            pool.shutdown();
+        }
+        
+        if ( ( moves == null ) || ! complete ) {
+            return null;
+        }
+        long expanded = 0;
+        for ( int p = 0; p < placements; p++ ) {
+            if ( searches[ p ] != null ) {
+                expanded += searches[ p ].getExpanded();
+            }
+        }
+        return new Solution( moves, expanded,
+                System.currentTimeMillis() - begin );
+    }
+    
+    /**
+     * A pool thread's share of a round: it takes placements from the round
+     * until none are left, and runs an iteration of each at the round's
+     * bound.  Each worker owns one transposition cache, which it reuses for
+     * every placement and round.
+     */
+    private final class Worker implements Callable<int[]> {
+        
+        /** The position to solve from. */
+        private final int[] start;
+        
+        /** The search of every placement, or <tt>null</tt>. */
+        private final IdaStarSolver[] searches;
+        
+        /** The next bound of every placement. */
+        private final int[] next;
+        
+        /** The length of the solution, once one is found. */
+        private final AtomicInteger best;
+        
+        /** The transposition cache, or <tt>null</tt> if it is off. */
+        private final TranspositionTable table;
+        
+        /** The placements of the round. */
+        private List<Integer> round;
+        
+        /** The bound of the round. */
+        private int bound;
+        
+        /** The number of placements of the round already taken. */
+        private AtomicInteger cursor;
+        
+        /**
+         * Constructs a new <tt>Worker</tt>.
+         * 
+         * @param   start       the square of every atom
+         * @param   searches    the search of every placement
+         * @param   next        the next bound of every placement
+         * @param   best        the length of the solution, shared with
+         *                      every search
+         */
+        Worker( int[] start, IdaStarSolver[] searches, int[] next,
+                AtomicInteger best ) {
+            this.start = start;
+            this.searches = searches;
+            this.next = next;
+            this.best = best;
+            this.table = ( cacheBytes / threads
+                    < TranspositionTable.MIN_BYTES ? null :
+                    new TranspositionTable( cacheBytes / threads ) );
+        }
+        
+        /**
+         * Sets the round to work on.
+         * 
+         * @param   round   the placements of the round
+         * @param   bound   the bound of the round
+         * @param   cursor  the number of placements already taken, shared
+         *                  by every worker
+         */
+        void setRound( List<Integer> round, int bound, AtomicInteger cursor ) {
+            this.round = round;
+            this.bound = bound;
+            this.cursor = cursor;
+        }
+        
+        /**
+         * Runs iterations of placements of the round until none are left or
+         * a solution is found.  Finding one lowers the shared bound, which
+         * stops the other workers' iterations.
+         * 
+         * @return  the moves of a solution, or <tt>null</tt>
+         */
+        public int[] call() {
+            for ( int i = cursor.getAndIncrement(); ( i < round.size() ) &&
+                    ( best.get() > bound ); i = cursor.getAndIncrement() ) {
+                int p = round.get( i );
+                int result = searches[ p ].iterate( start, bound, table );
+                if ( result == IdaStarSolver.FOUND ) {
+                    best.set( bound );
+                    return searches[ p ].getMoves();
+                }
+                next[ p ] = result;
+            }
+            return null;
+        }
+        
+    } // Worker
+    
+} // PlacementSolver
@@ -0,0 +1,203 @@
+/*
+ * Position.java
+ *
+ * Version:
+ *      $Id$
+ *
+ * Copyright (c) 2009 Peter O. Erickson
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package edu.rit.poe.atomix.levels.solver;
+
+import edu.rit.poe.atomix.levels.Level;
+import edu.rit.poe.atomix.util.Bitboard;
+
+/**
+ * A mutable position used by the solvers: the square of every atom, plus the
+ * bitboards that <tt>Level.slide()</tt> and <tt>Level.isComplete()</tt> need.
+ * This is the search-side equivalent of a <tt>GameState</tt>, without the
+ * board, the user or the persistent game.
+ * 
+ * @author  Peter O. Erickson
+ * 
+ * @version $Id$
+ */
+final class Position {
+    
+    /** The level being searched. */
+    private final Level level;
+    
+    /** The square of every atom, indexed by atom index. */
+    private final int[] cells;
+    
+    /** The type of every atom, indexed by atom index. */
+    private final int[] types;
+    
+    /** The squares holding an atom, as a row-major bitboard. */
+    private final long[] occupied;
+    
+    /** The squares holding an atom, as a column-major bitboard. */
+    private final long[] occupiedColumns;
+    
+    /** The squares holding each type of atom, as row-major bitboards. */
+    private final long[][] occupiedByType;
+    
+    /**
+     * Constructs a new <tt>Position</tt> with the atoms on their starting
+     * squares.
+     * 
+     * @param   level   the level being searched
+     */
+    Position( Level level ) {
+        this.level = level;
+        
+        int atomCount = level.getAtomCount();
+        types = new int[ atomCount ];
+        for ( int atom = 0; atom < atomCount; atom++ ) {
+            types[ atom ] = level.getType( level.getAtom( atom ) );
+        }
+        
+        occupied = level.newBitboard();
+        occupiedColumns = level.newBitboard();
+        occupiedByType = level.newTypeBitboards();
+        cells = level.getStart();
+        for ( int atom = 0; atom < atomCount; atom++ ) {
+            place( atom, cells[ atom ] );
+        }
+    }
+    
+    /**
+     * Returns the square of every atom.  The array is owned by this position
+     * and must not be changed.
+     * 
+     * @return  the square of every atom, indexed by atom index
+     */
+    int[] getCells() {
+        return cells;
+    }
+    
+    /**
+     * Moves every atom to the specified squares.
+     * 
+     * @param   squares     the new square of every atom, indexed by atom
+     *                      index
+     */
+    void set( int[] squares ) {
+        for ( int atom = 0; atom < cells.length; atom++ ) {
+            remove( atom );
+        }
+        for ( int atom = 0; atom < cells.length; atom++ ) {
+            place( atom, squares[ atom ] );
+        }
+    }
+    
+    /**
+     * Returns the square the specified atom would stop on if slid in the
+     * specified direction.
+     * 
+     * @param   atom        the index of the atom
+     * @param   direction   one of the <tt>Level</tt> direction constants
+     * 
+     * @return              the row-major index of the square it stops on
+     */
+    int slide( int atom, int direction ) {
+        return level.slide( occupied, occupiedColumns, cells[ atom ],
+                direction );
+    }
+    
+    /**
+     * Returns whether the specified square is neither a wall nor occupied.
+     * 
+     * @param   cell    the row-major index of the square
+     * 
+     * @return          <tt>true</tt> if an atom could move into the square
+     */
+    boolean isOpen( int cell ) {
+        return level.isOpen( occupied, cell );
+    }
+    
+    /**
+     * Moves the specified atom to the specified square.
+     * 
+     * @param   atom    the index of the atom
+     * @param   to      the row-major index of the square
+     */
+    void move( int atom, int to ) {
+        remove( atom );
+        place( atom, to );
+    }
+    
+    /**
+     * Returns whether the goal is complete, given that the specified atom was
+     * the last one to move.
+     * 
+     * @param   atom    the index of the atom that moved
+     * 
+     * @return          <tt>true</tt> if the goal is complete
+     */
+    boolean isComplete( int atom ) {
+        return level.isComplete( occupied, occupiedByType,
+                level.getAtom( atom ), cells[ atom ] );
+    }
+    
+    /**
+     * Returns whether the goal is complete.
+     * 
+     * @return  <tt>true</tt> if the goal is complete
+     */
+    boolean isComplete() {
+        return level.isComplete( occupied, occupiedByType );
+    }
+    
+    /**
+     * Returns whether the goal is complete at a single placement.
+     * 
+     * @param   origin  the goal origin (see <tt>Level.getPlacement()</tt>)
+     * 
+     * @return          <tt>true</tt> if the goal is matched there
+     */
+    boolean isCompleteAt( int origin ) {
+        return level.isCompleteAt( occupied, occupiedByType, origin );
+    }
+    
+    /**
+     * Takes the specified atom off the bitboards.
+     * 
+     * @param   atom    the index of the atom
+     */
+    private void remove( int atom ) {
+        int cell = cells[ atom ];
+        Bitboard.clear( occupied, cell );
+        Bitboard.clear( occupiedColumns, level.column( cell ) );
+        Bitboard.clear( occupiedByType[ types[ atom ] ], cell );
+    }
+    
+    /**
+     * Puts the specified atom on the specified square.
+     * 
+     * @param   atom    the index of the atom
+     * @param   cell    the row-major index of the square
+     */
+    private void place( int atom, int cell ) {
+        cells[ atom ] = cell;
+        Bitboard.set( occupied, cell );
+        Bitboard.set( occupiedColumns, level.column( cell ) );
+        Bitboard.set( occupiedByType[ types[ atom ] ], cell );
+    }
+    
+} // Position
@@ -0,0 +1,398 @@
+/*
+ * Reachability.java
+ *
+ * Version:
+ *      $Id$
+ *
+ * Copyright (c) 2009 Peter O. Erickson
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package edu.rit.poe.atomix.levels.solver;
+
+import edu.rit.poe.atomix.levels.Level;
+import edu.rit.poe.atomix.util.Bitboard;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The squares each type of atom can ever stop on, worked out once per level
+ * from the walls and the starting position, and the goal placements and
+ * positions that this rules out.
+ * <p>
+ * A slide always runs until the next square is a wall or an atom, so an
+ * atom can only stop in front of a wall or in front of a square some other
+ * atom can reach.  The reachable squares of every type are grown together
+ * from the start until nothing changes.  The result over-approximates every
+ * position the level can ever get into (atoms are allowed to slide through
+ * each other), so anything it rules out really is impossible.
+ * <p>
+ * Goal placements that need an atom on a square its type can never reach
+ * are dropped.  For each goal square of the remaining placements, the
+ * squares an atom of the right type could still get there from are kept,
+ * and a position is dead when every placement has a goal square that no
+ * atom of its type can get to.  A level whose start is dead can never be
+ * solved.
+ * 
+ * @author  Peter O. Erickson
+ * 
+ * @version $Id$
+ */
+public final class Reachability {
+    
+    /** The goal origin of every feasible placement. */
+    private final int[] origins;
+    
+    /**
+     * The squares an atom of the right type can reach each goal square from,
+     * indexed by placement and then by goal atom.
+     */
+    private final long[][][] reaching;
+    
+    /** The squares every type can stop on, indexed by type. */
+    private final long[][] reachable;
+    
+    /** The atoms of each goal atom's type, indexed by goal atom. */
+    private final int[][] candidates;
+    
+    /**
+     * Whether some goal square can't be reached from every square its type
+     * can stop on, so that positions can be dead at all.
+     */
+    private final boolean pruning;
+    
+    /** Whether the level can never be solved from its start. */
+    private final boolean unsolvable;
+    
+    /**
+     * Constructs a new <tt>Reachability</tt> analysis of the specified level.
+     * 
+     * @param   level   the level
+     */
+    public Reachability( Level level ) {
+        int types = level.getTypeCount();
+        int atomCount = level.getAtomCount();
+        int[] start = level.getStart();
+        
+        // grow the stop squares of every type until they are stable
+        int[] counts = new int[ types ];
+        reachable = new long[ types ][];
+        for ( int type = 0; type < types; type++ ) {
+            reachable[ type ] = level.newBitboard();
+        }
+        for ( int atom = 0; atom < atomCount; atom++ ) {
+            int type = level.getType( level.getAtom( atom ) );
+            Bitboard.set( reachable[ type ], start[ atom ] );
+            counts[ type ]++;
+        }
+        long[][] stops = new long[ level.getCellCount() ][];
+        long[] blockers = level.newBitboard();
+        boolean changed = true;
+        while ( changed ) {
+            changed = false;
+            for ( int type = 0; type < types; type++ ) {
+                blockers( counts, type, blockers );
+                long[] squares = reachable[ type ];
+                for ( int cell = Bitboard.nextSetBit( squares, 0 ); cell >= 0;
+                        cell = Bitboard.nextSetBit( squares, cell + 1 ) ) {
+                    stops( level, blockers, cell, stops );
+                    long[] next = stops[ cell ];
+                    for ( int w = 0; w < squares.length; w++ ) {
+                        if ( ( next[ w ] & ~squares[ w ] ) != 0 ) {
+                            squares[ w ] |= next[ w ];
+                            changed = true;
+                        }
+                    }
+                }
+            }
+        }
+        
+        // keep the placements whose goal squares can all be reached, with
+        // the squares each goal square can be reached from
+        int goalAtoms = level.getGoalAtomCount();
+        List<Integer> feasible = new ArrayList<Integer>();
+        List<long[][]> sets = new ArrayList<long[][]>();
+        Map<Integer, long[]> cache = new HashMap<Integer, long[]>();
+        int stopsType = -1;
+        for ( int p = 0; p < level.getPlacementCount(); p++ ) {
+            int origin = level.getPlacement( p );
+            long[][] sources = new long[ goalAtoms ][];
+            for ( int i = 0; i < goalAtoms; i++ ) {
+                int cell = origin + level.getGoalOffset( i );
+                int type = level.getGoalType( i );
+                if ( ! Bitboard.get( reachable[ type ], cell ) ) {
+                    sources = null;
+                    break;
+                }
+                
+                Integer id = Integer.valueOf( cell * types + type );
+                sources[ i ] = cache.get( id );
+                if ( sources[ i ] == null ) {
+                    if ( type != stopsType ) {
+                        blockers( counts, type, blockers );
+                        for ( int from = Bitboard.nextSetBit(
+                                reachable[ type ], 0 ); from >= 0;
+                                from = Bitboard.nextSetBit(
+                                reachable[ type ], from + 1 ) ) {
+                            stops( level, blockers, from, stops );
+                        }
+                        stopsType = type;
+                    }
+                    sources[ i ] = sources( level, reachable[ type ], cell,
+                            stops );
+                    cache.put( id, sources[ i ] );
+                }
+            }
+            if ( sources != null ) {
+                feasible.add( Integer.valueOf( origin ) );
+                sets.add( sources );
+            }
+        }
+        boolean partial = false;
+        for ( long[][] sources : sets ) {
+            for ( int i = 0; ( i < goalAtoms ) && ! partial; i++ ) {
+                long[] squares = reachable[ level.getGoalType( i ) ];
+                for ( int w = 0; w < squares.length; w++ ) {
+                    partial |= ( ( squares[ w ] & ~sources[ i ][ w ] ) != 0 );
+                }
+            }
+        }
+        pruning = partial;
+        origins = new int[ feasible.size() ];
+        for ( int p = 0; p < origins.length; p++ ) {
+            origins[ p ] = feasible.get( p ).intValue();
+        }
+        reaching = sets.toArray( new long[ sets.size() ][][] );
+        
+        candidates = new int[ goalAtoms ][];
+        for ( int i = 0; i < goalAtoms; i++ ) {
+            int type = level.getGoalType( i );
+            candidates[ i ] = new int[ counts[ type ] ];
+            int count = 0;
+            for ( int atom = 0; atom < atomCount; atom++ ) {
+                if ( level.getType( level.getAtom( atom ) ) == type ) {
+                    candidates[ i ][ count++ ] = atom;
+                }
+            }
+        }
+        
+        unsolvable = isDead( start );
+    }
+    
+    /**
+     * Returns whether the level can ever be solved from its start.  A
+     * <tt>true</tt> result does not promise a solution, but a
+     * <tt>false</tt> one rules it out.
+     * 
+     * @return  <tt>false</tt> if the level is certainly unsolvable
+     */
+    public boolean isSolvable() {
+        return ( ! unsolvable );
+    }
+    
+    /**
+     * Returns whether any position of the level can be dead, so that
+     * checking positions with <tt>isDead()</tt> can prune a search.
+     * 
+     * @return  <tt>true</tt> if some goal square is out of reach from a
+     *          square its type can stop on
+     */
+    public boolean isPruning() {
+        return pruning;
+    }
+    
+    /**
+     * Returns whether an atom of the specified type can ever stop on the
+     * specified square.
+     * 
+     * @param   type    the atom type (see <tt>Level.getType()</tt>)
+     * @param   cell    the row-major index of the square
+     * 
+     * @return          <tt>true</tt> if the square may be reached
+     */
+    public boolean canReach( int type, int cell ) {
+        return Bitboard.get( reachable[ type ], cell );
+    }
+    
+    /**
+     * Returns the number of goal placements whose squares can all be
+     * reached.
+     * 
+     * @return  the number of feasible placements
+     */
+    public int getPlacementCount() {
+        return origins.length;
+    }
+    
+    /**
+     * Returns the goal origin of a feasible placement (see
+     * <tt>Level.getPlacement()</tt>).
+     * 
+     * @param   p   the placement, from zero to
+     *              <tt>getPlacementCount() - 1</tt>
+     * 
+     * @return      the row-major index of the placement's origin
+     */
+    public int getPlacementOrigin( int p ) {
+        return origins[ p ];
+    }
+    
+    /**
+     * Returns the squares from which an atom of the right type can still get
+     * to a goal square of a feasible placement.
+     * 
+     * @param   p   the placement
+     * @param   i   the goal atom
+     * 
+     * @return      a row-major bitboard of squares, shared and not to be
+     *              changed
+     */
+    long[] getReaching( int p, int i ) {
+        return reaching[ p ][ i ];
+    }
+    
+    /**
+     * Returns whether a position is dead: every feasible placement has a
+     * goal square that no atom of its type can get to any more.  Nothing is
+     * allocated, so several threads may call this at once.
+     * 
+     * @param   cells   the square of every atom, indexed by atom index
+     * 
+     * @return          <tt>true</tt> if the goal can't be reached from the
+     *                  position
+     */
+    public boolean isDead( int[] cells ) {
+        if ( ! pruning ) {
+            // every square leads to every goal square, so only a level
+            // without feasible placements has dead positions
+            return ( reaching.length == 0 );
+        }
+        
+        for ( int p = 0; p < reaching.length; p++ ) {
+            long[][] sources = reaching[ p ];
+            boolean alive = true;
+            for ( int i = 0; ( i < sources.length ) && alive; i++ ) {
+                int[] atoms = candidates[ i ];
+                alive = false;
+                for ( int j = 0; ( j < atoms.length ) && ! alive; j++ ) {
+                    alive = Bitboard.get( sources[ i ], cells[ atoms[ j ] ] );
+                }
+            }
+            if ( alive ) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Works out the squares that could hold an atom for an atom of the
+     * specified type to stop against: those of every other type, and those
+     * of its own type if it has company.
+     * 
+     * @param   counts      the number of atoms of each type
+     * @param   type        the type of the moving atom
+     * @param   blockers    the bitboard to write the squares into
+     */
+    private void blockers( int[] counts, int type, long[] blockers ) {
+        for ( int w = 0; w < blockers.length; w++ ) {
+            blockers[ w ] = 0;
+        }
+        for ( int other = 0; other < reachable.length; other++ ) {
+            if ( ( other != type ) || ( counts[ type ] > 1 ) ) {
+                long[] squares = reachable[ other ];
+                for ( int w = 0; w < blockers.length; w++ ) {
+                    blockers[ w ] |= squares[ w ];
+                }
+            }
+        }
+    }
+    
+    /**
+     * Works out the squares an atom can stop on in one move from a square:
+     * the wall stop in every direction, and every square on the way that
+     * has a blocker beyond it.  The result is kept in <tt>stops</tt>.
+     * 
+     * @param   level       the level
+     * @param   blockers    the squares other atoms could be on
+     * @param   cell        the row-major index of the atom
+     * @param   stops       the stop squares of every square, filled in here
+     */
+    private static void stops( Level level, long[] blockers, int cell,
+            long[][] stops ) {
+        long[] next = stops[ cell ];
+        if ( next == null ) {
+            next = level.newBitboard();
+            stops[ cell ] = next;
+        } else {
+            for ( int w = 0; w < next.length; w++ ) {
+                next[ w ] = 0;
+            }
+        }
+        
+        for ( int dir = 0; dir < Level.DIRECTIONS; dir++ ) {
+            int step = level.offset( dir );
+            int wall = level.getWallStop( cell, dir );
+            for ( int to = cell; to != wall; to += step ) {
+                if ( Bitboard.get( blockers, to + step ) ) {
+                    Bitboard.set( next, to );
+                }
+            }
+            Bitboard.set( next, wall );
+        }
+        Bitboard.clear( next, cell );
+    }
+    
+    /**
+     * Works out the squares from which an atom of a type can get to a
+     * target square, by searching backwards over its stop squares.
+     * 
+     * @param   level       the level
+     * @param   squares     the squares the type can stop on
+     * @param   target      the row-major index of the target square
+     * @param   stops       the stop squares of every square of the type
+     * 
+     * @return              a new bitboard of squares, including the target
+     */
+    private static long[] sources( Level level, long[] squares, int target,
+            long[][] stops ) {
+        long[] found = level.newBitboard();
+        Bitboard.set( found, target );
+        boolean changed = true;
+        while ( changed ) {
+            changed = false;
+            for ( int cell = Bitboard.nextSetBit( squares, 0 ); cell >= 0;
+                    cell = Bitboard.nextSetBit( squares, cell + 1 ) ) {
+                if ( Bitboard.get( found, cell ) ) {
+                    continue;
+                }
+                long[] next = stops[ cell ];
+                for ( int w = 0; w < next.length; w++ ) {
+                    if ( ( next[ w ] & found[ w ] ) != 0 ) {
+                        Bitboard.set( found, cell );
+                        changed = true;
+                        break;
+                    }
+                }
+            }
+        }
+        return found;
+    }
+    
+} // Reachability
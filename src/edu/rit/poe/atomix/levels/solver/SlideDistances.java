@@ -0,0 +1,131 @@
+/*
+ * SlideDistances.java
+ *
+ * Version:
+ *      $Id$
+ *
+ * Copyright (c) 2009 Peter O. Erickson
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package edu.rit.poe.atomix.levels.solver;
+
+import edu.rit.poe.atomix.levels.Level;
+import java.util.Arrays;
+
+/**
+ * The least number of moves an atom needs to get from one square of a level
+ * to another, for every pair of open squares.
+ * <p>
+ * Other atoms are ignored, but since any of them could end up as a stopper,
+ * an atom is allowed to stop on any square of its slide up to the wall it
+ * would hit.  That relaxation is what makes the distances a lower bound:
+ * with the walls alone, an atom could never stop on a square that another
+ * atom lets it reach in one move.  Because every slide line can be walked
+ * both ways, the distances are symmetric.
+ * 
+ * @author  Peter O. Erickson
+ * 
+ * @version $Id$
+ */
+public final class SlideDistances {
+    
+    /** The distance between squares that can never reach each other. */
+    public static final int UNREACHABLE = Byte.MAX_VALUE;
+    
+    /** The codec whose open-square indices number the table. */
+    private final StateCodec codec;
+    
+    /** The number of open squares. */
+    private final int open;
+    
+    /** The distances, indexed by <tt>from * open + to</tt> open indices. */
+    private final byte[] distances;
+    
+    /**
+     * Constructs a new <tt>SlideDistances</tt> table for the specified level,
+     * with a breadth-first search from every open square.
+     * 
+     * @param   level   the level
+     */
+    public SlideDistances( Level level ) {
+        codec = new StateCodec( level );
+        open = codec.getOpenCount();
+        distances = new byte[ open * open ];
+        Arrays.fill( distances, ( byte )UNREACHABLE );
+        
+        int[] queue = new int[ open ];
+        for ( int source = 0; source < open; source++ ) {
+            int base = source * open;
+            distances[ base + source ] = 0;
+            queue[ 0 ] = codec.cellOf( source );
+            int head = 0;
+            int tail = 1;
+            while ( head < tail ) {
+                int cell = queue[ head++ ];
+                int next = distances[ base + codec.indexOf( cell ) ] + 1;
+                if ( next >= UNREACHABLE ) {
+                    break;
+                }
+                
+                for ( int dir = 0; dir < Level.DIRECTIONS; dir++ ) {
+                    int step = level.offset( dir );
+                    for ( int to = cell + step; ! level.isWall( to );
+                            to += step ) {
+                        int index = base + codec.indexOf( to );
+                        if ( distances[ index ] == UNREACHABLE ) {
+                            distances[ index ] = ( byte )next;
+                            queue[ tail++ ] = to;
+                        }
+                    }
+                }
+            }
+        }
+    }
+    
+    /**
+     * Returns the codec whose open-square indices number this table.
+     * 
+     * @return  the codec
+     */
+    public StateCodec getCodec() {
+        return codec;
+    }
+    
+    /**
+     * Returns the least number of moves between two squares.
+     * 
+     * @param   from    the row-major index of the first square
+     * @param   to      the row-major index of the second square
+     * 
+     * @return          the distance, or <tt>UNREACHABLE</tt>
+     */
+    public int get( int from, int to ) {
+        return distances[ codec.indexOf( from ) * open + codec.indexOf( to ) ];
+    }
+    
+    /**
+     * Returns the raw table, for heuristics that index it themselves by open
+     * square (see <tt>StateCodec.indexOf()</tt>).
+     * 
+     * @return  the distances, indexed by <tt>from * open + to</tt>
+     */
+    byte[] getTable() {
+        return distances;
+    }
+    
+} // SlideDistances
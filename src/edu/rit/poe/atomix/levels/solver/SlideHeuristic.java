@@ -0,0 +1,221 @@
+/*
+ * SlideHeuristic.java
+ *
+ * Version:
+ *      $Id$
+ *
+ * Copyright (c) 2009 Peter O. Erickson
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package edu.rit.poe.atomix.levels.solver;
+
+import edu.rit.poe.atomix.levels.Level;
+import edu.rit.poe.atomix.util.Bitboard;
+
+/**
+ * A heuristic that, for every placement of the goal kernel, adds up the
+ * slide distance (see <tt>SlideDistances</tt>) from each goal square to the
+ * nearest atom of the right type, and takes the cheapest placement.
+ * <p>
+ * Each move moves a single atom, and each goal square needs a different
+ * atom, so the sum never exceeds the true number of moves.  Only the
+ * placements a <tt>Reachability</tt> analysis finds feasible are tried, and
+ * an atom only counts for a goal square it can still get to, so dead
+ * positions are estimated as <tt>DEAD</tt>.
+ * 
+ * @author  Peter O. Erickson
+ * 
+ * @version $Id$
+ */
+public class SlideHeuristic extends Heuristic {
+    
+    /** The slide distances of the level. */
+    private final SlideDistances distances;
+    
+    /** The reachability analysis of the level. */
+    private final Reachability reachability;
+    
+    /** The raw distance table, indexed by open square. */
+    private final byte[] table;
+    
+    /** The number of open squares (the length of a table row). */
+    private final int open;
+    
+    /**
+     * The table row of every goal square of every placement, indexed by
+     * placement and then by goal atom.
+     */
+    private final int[][] targets;
+    
+    /**
+     * The squares an atom can still get to every goal square of every
+     * placement from, indexed by placement and then by goal atom.
+     */
+    private final long[][][] sources;
+    
+    /** The atoms of each goal atom's type, indexed by goal atom. */
+    private final int[][] candidates;
+    
+    /** The open square of every atom, reused by every estimate. */
+    private final int[] scratch;
+    
+    /**
+     * Constructs a new <tt>SlideHeuristic</tt> for the specified level.
+     * 
+     * @param   level   the level
+     */
+    public SlideHeuristic( Level level ) {
+        this( level, new SlideDistances( level ) );
+    }
+    
+    /**
+     * Constructs a new <tt>SlideHeuristic</tt> sharing a distance table.
+     * 
+     * @param   level       the level
+     * @param   distances   the level's slide distances
+     */
+    public SlideHeuristic( Level level, SlideDistances distances ) {
+        this( level, distances, new Reachability( level ) );
+    }
+    
+    /**
+     * Constructs a new <tt>SlideHeuristic</tt> sharing a distance table and
+     * a reachability analysis.
+     * 
+     * @param   level           the level
+     * @param   distances       the level's slide distances
+     * @param   reachability    the level's reachability analysis
+     */
+    public SlideHeuristic( Level level, SlideDistances distances,
+            Reachability reachability ) {
+        this.distances = distances;
+        this.reachability = reachability;
+        table = distances.getTable();
+        StateCodec codec = distances.getCodec();
+        open = codec.getOpenCount();
+        
+        int goalAtoms = level.getGoalAtomCount();
+        int placements = reachability.getPlacementCount();
+        targets = new int[ placements ][ goalAtoms ];
+        sources = new long[ placements ][ goalAtoms ][];
+        for ( int p = 0; p < placements; p++ ) {
+            int origin = reachability.getPlacementOrigin( p );
+            for ( int i = 0; i < goalAtoms; i++ ) {
+                int cell = origin + level.getGoalOffset( i );
+                targets[ p ][ i ] = codec.indexOf( cell ) * open;
+                sources[ p ][ i ] = reachability.getReaching( p, i );
+            }
+        }
+        
+        candidates = new int[ goalAtoms ][];
+        for ( int i = 0; i < goalAtoms; i++ ) {
+            int type = level.getGoalType( i );
+            int count = 0;
+            for ( int atom = 0; atom < level.getAtomCount(); atom++ ) {
+                if ( level.getType( level.getAtom( atom ) ) == type ) {
+                    count++;
+                }
+            }
+            candidates[ i ] = new int[ count ];
+            count = 0;
+            for ( int atom = 0; atom < level.getAtomCount(); atom++ ) {
+                if ( level.getType( level.getAtom( atom ) ) == type ) {
+                    candidates[ i ][ count++ ] = atom;
+                }
+            }
+        }
+        
+        scratch = new int[ level.getAtomCount() ];
+    }
+    
+    /**
+     * Constructs a new <tt>SlideHeuristic</tt> that only aims for one
+     * placement of another, sharing its tables.
+     * 
+     * @param   heuristic   the heuristic over every feasible placement
+     * @param   placement   the placement to aim for (see
+     *                      <tt>Reachability.getPlacementOrigin()</tt>)
+     */
+    public SlideHeuristic( SlideHeuristic heuristic, int placement ) {
+        distances = heuristic.distances;
+        reachability = heuristic.reachability;
+        table = heuristic.table;
+        open = heuristic.open;
+        targets = new int[][] { heuristic.targets[ placement ] };
+        sources = new long[][][] { heuristic.sources[ placement ] };
+        candidates = heuristic.candidates;
+        scratch = new int[ heuristic.scratch.length ];
+    }
+    
+    /**
+     * Returns the slide distances this heuristic is built on.
+     * 
+     * @return  the slide distances
+     */
+    public SlideDistances getDistances() {
+        return distances;
+    }
+    
+    /**
+     * Returns the reachability analysis this heuristic is built on.
+     * 
+     * @return  the reachability analysis
+     */
+    public Reachability getReachability() {
+        return reachability;
+    }
+    
+    /**
+     * Returns the number of goal placements that can be reached.
+     * 
+     * @return  the number of placements
+     */
+    public int getPlacementCount() {
+        return targets.length;
+    }
+    
+    @Override
+    public int estimate( int[] cells ) {
+        StateCodec codec = distances.getCodec();
+        for ( int atom = 0; atom < scratch.length; atom++ ) {
+            scratch[ atom ] = codec.indexOf( cells[ atom ] );
+        }
+        
+        int best = DEAD;
+        for ( int p = 0; p < targets.length; p++ ) {
+            int[] rows = targets[ p ];
+            long[][] from = sources[ p ];
+            int sum = 0;
+            for ( int i = 0; ( i < rows.length ) && ( sum < best ); i++ ) {
+                int nearest = SlideDistances.UNREACHABLE;
+                int[] atoms = candidates[ i ];
+                for ( int j = 0; j < atoms.length; j++ ) {
+                    if ( Bitboard.get( from[ i ], cells[ atoms[ j ] ] ) ) {
+                        nearest = Math.min( nearest,
+                                table[ rows[ i ] + scratch[ atoms[ j ] ] ] );
+                    }
+                }
+                sum = ( nearest == SlideDistances.UNREACHABLE ? DEAD
+                        : sum + nearest );
+            }
+            best = Math.min( best, sum );
+        }
+        return best;
+    }
+    
+} // SlideHeuristic
@@ -0,0 +1,108 @@
+/*
+ * Solution.java
+ *
+ * Version:
+ *      $Id$
+ *
+ * Copyright (c) 2009 Peter O. Erickson
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package edu.rit.poe.atomix.levels.solver;
+
+/**
+ * The result of a solver run: the moves that solve a level from the
+ * position the search started at, and how much work it took to find them.
+ * 
+ * @author  Peter O. Erickson
+ * 
+ * @version $Id$
+ */
+public final class Solution {
+    
+    /** The packed moves (see <tt>Moves</tt>), in the order they are played. */
+    private final int[] moves;
+    
+    /** The number of positions the solver expanded. */
+    private final long expanded;
+    
+    /** The wall-clock time the solver took, in milliseconds. */
+    private final long millis;
+    
+    /**
+     * Constructs a new <tt>Solution</tt>.
+     * 
+     * @param   moves       the packed moves, in the order they are played
+     * @param   expanded    the number of positions the solver expanded
+     * @param   millis      the wall-clock time the solver took
+     */
+    public Solution( int[] moves, long expanded, long millis ) {
+        this.moves = moves;
+        this.expanded = expanded;
+        this.millis = millis;
+    }
+    
+    /**
+     * Returns the moves of this solution.  Each move can be replayed with
+     * <tt>GameController.moveAtom()</tt>.
+     * 
+     * @return  the packed moves, in the order they are played
+     */
+    public int[] getMoves() {
+        return moves.clone();
+    }
+    
+    /**
+     * Returns the number of moves in this solution.
+     * 
+     * @return  the solution length
+     */
+    public int getLength() {
+        return moves.length;
+    }
+    
+    /**
+     * Returns the number of positions the solver expanded to find this
+     * solution.
+     * 
+     * @return  the number of expanded positions
+     */
+    public long getExpanded() {
+        return expanded;
+    }
+    
+    /**
+     * Returns the wall-clock time the solver took to find this solution.
+     * 
+     * @return  the time in milliseconds
+     */
+    public long getMillis() {
+        return millis;
+    }
+    
+    /**
+     * Returns this solution in <tt>String</tt> form.
+     * 
+     * @return  a summary of this solution
+     */
+    @Override
+    public String toString() {
+        return ( moves.length + " moves (" + expanded + " expanded, " + millis
+                + " ms)" );
+    }
+    
+} // Solution
@@ -0,0 +1,163 @@
+/*
+ * Solver.java
+ *
+ * Version:
+ *      $Id$
+ *
+ * Copyright (c) 2009 Peter O. Erickson
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package edu.rit.poe.atomix.levels.solver;
+
+import edu.rit.poe.atomix.levels.Level;
+import edu.rit.poe.atomix.levels.Moves;
+
+/**
+ * The base class of the level solvers.  A solver searches the positions of a
+ * single level, sliding atoms with the same rules as
+ * <tt>GameController.moveSelected()</tt>, for a sequence of moves that
+ * completes the goal.
+ * <p>
+ * Positions are plain <tt>int[]</tt> arrays holding the square of every atom
+ * (see <tt>Level.cell()</tt>), indexed by atom index, like
+ * <tt>Game.getAtoms()</tt>.  Atoms of the same type are interchangeable, so
+ * the solvers treat positions that differ only by a permutation of them as
+ * one state, and map the moves they find back to the caller's atoms.
+ * 
+ * @author  Peter O. Erickson
+ * 
+ * @version $Id$
+ */
+public abstract class Solver {
+    
+    /** The default number of positions a solver may store. */
+    public static final int DEFAULT_STATE_LIMIT = 1 << 24;
+    
+    /** The level being solved. */
+    final Level level;
+    
+    /** The codec for the level's positions. */
+    final StateCodec codec;
+    
+    /** The number of positions the solver may store before giving up. */
+    private int stateLimit;
+    
+    /** The reachability analysis of the level, once it is needed. */
+    private Reachability reachability;
+    
+    /**
+     * Constructs a new <tt>Solver</tt>.
+     * 
+     * @param   level   the level to solve
+     */
+    protected Solver( Level level ) {
+        this.level = level;
+        this.codec = new StateCodec( level );
+        this.stateLimit = DEFAULT_STATE_LIMIT;
+    }
+    
+    /**
+     * Returns the level this solver solves.
+     * 
+     * @return  the level
+     */
+    public Level getLevel() {
+        return level;
+    }
+    
+    /**
+     * Returns the number of positions the solver may store before giving up.
+     * 
+     * @return  the state limit
+     */
+    public int getStateLimit() {
+        return stateLimit;
+    }
+    
+    /**
+     * Sets the number of positions the solver may store before giving up.
+     * This bounds the memory a search can use.
+     * 
+     * @param   stateLimit  the new state limit
+     */
+    public void setStateLimit( int stateLimit ) {
+        this.stateLimit = stateLimit;
+    }
+    
+    /**
+     * Returns the reachability analysis of the level, working it out the
+     * first time it is needed.  Its <tt>isSolvable()</tt> tells at once
+     * whether searching can be skipped.
+     * 
+     * @return  the reachability analysis
+     */
+    public synchronized Reachability getReachability() {
+        if ( reachability == null ) {
+            reachability = new Reachability( level );
+        }
+        return reachability;
+    }
+    
+    /**
+     * Solves the level from its starting position.
+     * 
+     * @return  the solution, or <tt>null</tt> if there is none (or none was
+     *          found within the solver's limits)
+     */
+    public Solution solve() {
+        return solve( level.getStart() );
+    }
+    
+    /**
+     * Solves the level from the specified position.
+     * 
+     * @param   start   the square of every atom, indexed by atom index
+     * 
+     * @return          the solution, or <tt>null</tt> if there is none (or
+     *                  none was found within the solver's limits)
+     */
+    public abstract Solution solve( int[] start );
+    
+    /**
+     * Replays moves from the specified position, rewriting the atom of every
+     * move to the atom that is actually on its starting square.  Searches
+     * that treat interchangeable atoms as one (and so may swap them) use this
+     * to turn their moves into moves of the caller's atoms.
+     * 
+     * @param   start   the square of every atom, indexed by atom index
+     * @param   moves   the packed moves, rewritten in place
+     * 
+     * @return          the moves
+     */
+    int[] resolve( int[] start, int[] moves ) {
+        int[] cells = start.clone();
+        for ( int i = 0; i < moves.length; i++ ) {
+            int from = Moves.getFrom( moves[ i ] );
+            int to = Moves.getTo( moves[ i ] );
+            int atom = 0;
+            while ( cells[ atom ] != from ) {
+                atom++;
+            }
+            cells[ atom ] = to;
+            moves[ i ] = Moves.pack( atom, Moves.getDirection( moves[ i ] ),
+                    from, to );
+        }
+        return moves;
+    }
+    
+} // Solver
@@ -0,0 +1,254 @@
+/*
+ * StateCodec.java
+ *
+ * Version:
+ *      $Id$
+ *
+ * Copyright (c) 2009 Peter O. Erickson
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package edu.rit.poe.atomix.levels.solver;
+
+import edu.rit.poe.atomix.levels.Level;
+
+/**
+ * Packs the squares of a level's atoms into a compact key of one or more
+ * <tt>long</tt> words, so that the solvers can store millions of positions
+ * without an object per position.
+ * <p>
+ * Only squares that are not walls can ever hold an atom, so each atom's
+ * square is stored as its index among the open squares of the level, in
+ * just enough bits to count them.
+ * <p>
+ * Atoms of the same type are interchangeable, so positions that differ only
+ * by a permutation of them are one state.  A key holds the atoms grouped by
+ * type, and within each type in order of square, so every such permutation
+ * has the same key; a level with <tt>k</tt> identical atoms has up to
+ * <tt>k!</tt> times fewer distinct keys than positions.  Decoding gives the
+ * atoms of each type back in order of square, which may swap them relative
+ * to the position that was encoded (see <tt>Solver.resolve()</tt>).
+ * <p>
+ * Encoding and decoding keep no state, so one codec can be shared by
+ * several threads.
+ * 
+ * @author  Peter O. Erickson
+ * 
+ * @version $Id$
+ */
+public final class StateCodec {
+    
+    /** The number of atoms in a key. */
+    private final int atomCount;
+    
+    /** The atoms in order of type, so each type is a contiguous run. */
+    private final int[] order;
+    
+    /** The start in <tt>order</tt> of the run holding each entry's type. */
+    private final int[] runStart;
+    
+    /** The end (exclusive) in <tt>order</tt> of each entry's run. */
+    private final int[] runEnd;
+    
+    /** The number of positions that share each key, at most. */
+    private final long symmetry;
+    
+    /** The number of bits per atom. */
+    private final int bits;
+    
+    /** The mask of a single atom's bits. */
+    private final long mask;
+    
+    /** The number of words per key. */
+    private final int words;
+    
+    /** The open-square index of every square, or -1 for walls. */
+    private final int[] indexOf;
+    
+    /** The square of every open-square index. */
+    private final int[] cellOf;
+    
+    /**
+     * Constructs a new <tt>StateCodec</tt> for the specified level.
+     * 
+     * @param   level   the level whose positions will be encoded
+     */
+    public StateCodec( Level level ) {
+        atomCount = level.getAtomCount();
+        
+        order = new int[ atomCount ];
+        runStart = new int[ atomCount ];
+        runEnd = new int[ atomCount ];
+        long permutations = 1;
+        int next = 0;
+        for ( int type = 0; type < level.getTypeCount(); type++ ) {
+            int begin = next;
+            for ( int atom = 0; atom < atomCount; atom++ ) {
+                if ( level.getType( level.getAtom( atom ) ) == type ) {
+                    order[ next++ ] = atom;
+                    permutations *= ( next - begin );
+                }
+            }
+            for ( int i = begin; i < next; i++ ) {
+                runStart[ i ] = begin;
+                runEnd[ i ] = next;
+            }
+        }
+        symmetry = permutations;
+        
+        int cells = level.getCellCount();
+        indexOf = new int[ cells ];
+        int open = 0;
+        for ( int cell = 0; cell < cells; cell++ ) {
+            indexOf[ cell ] = ( level.isWall( cell ) ? -1 : open++ );
+        }
+        cellOf = new int[ open ];
+        for ( int cell = 0; cell < cells; cell++ ) {
+            if ( indexOf[ cell ] >= 0 ) {
+                cellOf[ indexOf[ cell ] ] = cell;
+            }
+        }
+        
+        bits = Math.max( 1, 32 - Integer.numberOfLeadingZeros( open - 1 ) );
+        mask = ( 1L << bits ) - 1;
+        words = Math.max( 1, ( ( atomCount * bits ) + 63 ) / 64 );
+    }
+    
+    /**
+     * Returns the number of <tt>long</tt> words in a key.
+     * 
+     * @return  the length of a key
+     */
+    public int getWords() {
+        return words;
+    }
+    
+    /**
+     * Returns the number of bits each atom takes up in a key.
+     * 
+     * @return  the bits per atom
+     */
+    public int getBitsPerAtom() {
+        return bits;
+    }
+    
+    /**
+     * Returns the largest number of positions that share a key: the product
+     * of the factorials of the number of atoms of each type.
+     * 
+     * @return  the factor the state space is reduced by, at most
+     */
+    public long getSymmetry() {
+        return symmetry;
+    }
+    
+    /**
+     * Returns the number of squares an atom could ever occupy.
+     * 
+     * @return  the number of open squares
+     */
+    public int getOpenCount() {
+        return cellOf.length;
+    }
+    
+    /**
+     * Returns the open-square index of the specified square.
+     * 
+     * @param   cell    the row-major index of the square
+     * 
+     * @return          the open-square index, or <tt>-1</tt> for a wall
+     */
+    public int indexOf( int cell ) {
+        return indexOf[ cell ];
+    }
+    
+    /**
+     * Returns the square of the specified open-square index.
+     * 
+     * @param   index   the open-square index
+     * 
+     * @return          the row-major index of the square
+     */
+    public int cellOf( int index ) {
+        return cellOf[ index ];
+    }
+    
+    /**
+     * Encodes a position into a key.  Positions that differ only by a
+     * permutation of atoms of the same type have the same key.
+     * 
+     * @param   cells   the square of every atom, indexed by atom index
+     * @param   key     the array to write the key into
+     * @param   offset  the index of the key's first word in the array
+     */
+    public void encode( int[] cells, long[] key, int offset ) {
+        for ( int w = 0; w < words; w++ ) {
+            key[ offset + w ] = 0;
+        }
+        
+        int bit = 0;
+        int last = -1;
+        for ( int i = 0; i < atomCount; i++ ) {
+            if ( runStart[ i ] == i ) {
+                last = -1;
+            }
+            
+            // the smallest square of this type after the last one written;
+            // runs are short, so a selection scan beats sorting a copy
+            int value = Integer.MAX_VALUE;
+            for ( int j = runStart[ i ]; j < runEnd[ i ]; j++ ) {
+                int index = indexOf[ cells[ order[ j ] ] ];
+                if ( ( index > last ) && ( index < value ) ) {
+                    value = index;
+                }
+            }
+            last = value;
+            
+            int w = offset + ( bit >>> 6 );
+            int shift = ( bit & 63 );
+            key[ w ] |= ( ( long )value << shift );
+            if ( shift + bits > 64 ) {
+                key[ w + 1 ] |= ( ( long )value >>> ( 64 - shift ) );
+            }
+            bit += bits;
+        }
+    }
+    
+    /**
+     * Decodes a key into a position.
+     * 
+     * @param   key     the array holding the key
+     * @param   offset  the index of the key's first word in the array
+     * @param   cells   the array to write the square of every atom into,
+     *                  indexed by atom index; the atoms of each type are
+     *                  given in order of square
+     */
+    public void decode( long[] key, int offset, int[] cells ) {
+        int bit = 0;
+        for ( int i = 0; i < atomCount; i++ ) {
+            int w = offset + ( bit >>> 6 );
+            int shift = ( bit & 63 );
+            long value = ( key[ w ] >>> shift );
+            if ( shift + bits > 64 ) {
+                value |= ( key[ w + 1 ] << ( 64 - shift ) );
+            }
+            cells[ order[ i ] ] = cellOf[ ( int )( value & mask ) ];
+            bit += bits;
+        }
+    }
+    
+} // StateCodec
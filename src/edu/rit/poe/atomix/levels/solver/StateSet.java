@@ -0,0 +1,308 @@
+/*
+ * StateSet.java
+ *
+ * Version:
+ *      $Id$
+ *
+ * Copyright (c) 2009 Peter O. Erickson
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package edu.rit.poe.atomix.levels.solver;
+
+/**
+ * A set of encoded positions (see <tt>StateCodec</tt>) that remembers, for
+ * every position, the position it was reached from and the move that reached
+ * it.
+ * <p>
+ * Positions are numbered in the order they are added, and their keys are
+ * stored back to back in a single <tt>long[]</tt>, so a breadth-first search
+ * can use the set itself as its queue.  Lookups go through an
+ * open-addressing table of position numbers with linear probing.  A position
+ * costs its key plus about 16 bytes, with no objects and no boxing.
+ * 
+ * @author  Peter O. Erickson
+ * 
+ * @version $Id$
+ */
+public final class StateSet {
+    
+    /** The multiplier used to mix key words into a hash. */
+    private static final long MIX = 0x9e3779b97f4a7c15L;
+    
+    /** The smallest number of positions the set is created for. */
+    private static final int MIN_CAPACITY = 16;
+    
+    /** The number of words in a key. */
+    private final int words;
+    
+    /** The keys of all positions, back to back, in the order added. */
+    private long[] keys;
+    
+    /** The number of the position each position was reached from. */
+    private int[] parents;
+    
+    /** The packed move that reached each position (see <tt>Moves</tt>). */
+    private int[] moves;
+    
+    /**
+     * The open-addressing table: each slot holds a position number plus one,
+     * or zero if the slot is empty.  The table is kept at most half full.
+     */
+    private int[] table;
+    
+    /** The number of positions in the set. */
+    private int size;
+    
+    /**
+     * Constructs a new, empty <tt>StateSet</tt>.
+     * 
+     * @param   words       the number of words in a key
+     * @param   capacity    the number of positions to make room for
+     */
+    public StateSet( int words, int capacity ) {
+        this.words = words;
+        
+        capacity = Math.max( MIN_CAPACITY, capacity );
+        keys = new long[ capacity * words ];
+        parents = new int[ capacity ];
+        moves = new int[ capacity ];
+        table = new int[ Integer.highestOneBit( capacity - 1 ) << 2 ];
+    }
+    
+    /**
+     * Returns the number of positions in the set.
+     * 
+     * @return  the number of positions
+     */
+    public int size() {
+        return size;
+    }
+    
+    /**
+     * Returns the array the keys are stored in.  The key of position
+     * <tt>n</tt> starts at index <tt>n * words</tt>.  The array is replaced
+     * when the set grows, so it must be fetched again after every
+     * <tt>add()</tt>.
+     * 
+     * @return  the key array
+     */
+    public long[] getKeys() {
+        return keys;
+    }
+    
+    /**
+     * Returns the number of the position the specified position was reached
+     * from.
+     * 
+     * @param   n   the number of the position
+     * 
+     * @return      the parent's number, or <tt>-1</tt> for a starting
+     *              position
+     */
+    public int getParent( int n ) {
+        return parents[ n ];
+    }
+    
+    /**
+     * Returns the move that reached the specified position.
+     * 
+     * @param   n   the number of the position
+     * 
+     * @return      the packed move, or <tt>Moves.NONE</tt> for a starting
+     *              position
+     */
+    public int getMove( int n ) {
+        return moves[ n ];
+    }
+    
+    /**
+     * Changes the position the specified position was reached from, when a
+     * shorter way to reach it has been found.
+     * 
+     * @param   n       the number of the position
+     * @param   parent  the number of the new parent
+     * @param   move    the packed move that reaches it from the new parent
+     */
+    public void setParent( int n, int parent, int move ) {
+        parents[ n ] = parent;
+        moves[ n ] = move;
+    }
+    
+    /**
+     * Returns the moves that lead from a starting position to the specified
+     * position.
+     * 
+     * @param   n   the number of the position
+     * 
+     * @return      the packed moves, in the order they are played
+     */
+    public int[] getPath( int n ) {
+        int length = 0;
+        for ( int i = n; parents[ i ] >= 0; i = parents[ i ] ) {
+            length++;
+        }
+        
+        int[] path = new int[ length ];
+        for ( int i = n; parents[ i ] >= 0; i = parents[ i ] ) {
+            path[ --length ] = moves[ i ];
+        }
+        return path;
+    }
+    
+    /**
+     * Returns the number of the specified position.
+     * 
+     * @param   key     the array holding the key
+     * @param   offset  the index of the key's first word in the array
+     * 
+     * @return          the position's number, or <tt>-1</tt> if it is not in
+     *                  the set
+     */
+    public int find( long[] key, int offset ) {
+        int mask = table.length - 1;
+        for ( int slot = hash( key, offset ) & mask; table[ slot ] != 0;
+                slot = ( slot + 1 ) & mask ) {
+            int n = table[ slot ] - 1;
+            if ( matches( n, key, offset ) ) {
+                return n;
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * Adds a position to the set, unless it is already there.
+     * 
+     * @param   key     the array holding the key
+     * @param   offset  the index of the key's first word in the array
+     * @param   parent  the number of the position it was reached from, or
+     *                  <tt>-1</tt> for a starting position
+     * @param   move    the packed move that reached it, or
+     *                  <tt>Moves.NONE</tt> for a starting position
+     * 
+     * @return          the new position's number, or <tt>-1</tt> if the
+     *                  position was already in the set
+     */
+    public int add( long[] key, int offset, int parent, int move ) {
+        int mask = table.length - 1;
+        int slot = hash( key, offset ) & mask;
+        while ( table[ slot ] != 0 ) {
+            if ( matches( table[ slot ] - 1, key, offset ) ) {
+                return -1;
+            }
+            slot = ( slot + 1 ) & mask;
+        }
+        
+        if ( size == parents.length ) {
+            growEntries();
+        }
+        int n = size++;
+        System.arraycopy( key, offset, keys, n * words, words );
+        parents[ n ] = parent;
+        moves[ n ] = move;
+        table[ slot ] = n + 1;
+        
+        if ( size > ( table.length >>> 1 ) ) {
+            growTable();
+        }
+        return n;
+    }
+    
+    /**
+     * Returns whether the specified position has the specified key.
+     * 
+     * @param   n       the number of the position
+     * @param   key     the array holding the key
+     * @param   offset  the index of the key's first word in the array
+     * 
+     * @return          <tt>true</tt> if the keys are equal
+     */
+    private boolean matches( int n, long[] key, int offset ) {
+        int base = n * words;
+        for ( int w = 0; w < words; w++ ) {
+            if ( keys[ base + w ] != key[ offset + w ] ) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Hashes a key.
+     * 
+     * @param   key     the array holding the key
+     * @param   offset  the index of the key's first word in the array
+     * 
+     * @return          the hash of the key
+     */
+    private int hash( long[] key, int offset ) {
+        return hash( key, offset, words );
+    }
+    
+    /**
+     * Hashes a key of the specified length.
+     * 
+     * @param   key     the array holding the key
+     * @param   offset  the index of the key's first word in the array
+     * @param   words   the number of words in the key
+     * 
+     * @return          the hash of the key
+     */
+    static int hash( long[] key, int offset, int words ) {
+        long h = 0;
+        for ( int w = 0; w < words; w++ ) {
+            h = ( h ^ key[ offset + w ] ) * MIX;
+        }
+        return ( int )( h ^ ( h >>> 29 ) ^ ( h >>> 47 ) );
+    }
+    
+    /**
+     * Doubles the room for positions.
+     */
+    private void growEntries() {
+        int capacity = parents.length * 2;
+        
+        long[] newKeys = new long[ capacity * words ];
+        System.arraycopy( keys, 0, newKeys, 0, size * words );
+        keys = newKeys;
+        
+        int[] newParents = new int[ capacity ];
+        System.arraycopy( parents, 0, newParents, 0, size );
+        parents = newParents;
+        
+        int[] newMoves = new int[ capacity ];
+        System.arraycopy( moves, 0, newMoves, 0, size );
+        moves = newMoves;
+    }
+    
+    /**
+     * Doubles the open-addressing table and reinserts every position.
+     */
+    private void growTable() {
+        table = new int[ table.length * 2 ];
+        int mask = table.length - 1;
+        for ( int n = 0; n < size; n++ ) {
+            int slot = hash( keys, n * words ) & mask;
+            while ( table[ slot ] != 0 ) {
+                slot = ( slot + 1 ) & mask;
+            }
+            table[ slot ] = n + 1;
+        }
+    }
+    
+} // StateSet
@@ -0,0 +1,345 @@
+/*
+ * TranspositionTable.java
+ *
+ * Version:
+ *      $Id$
+ *
+ * Copyright (c) 2009 Peter O. Erickson
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package edu.rit.poe.atomix.levels.solver;
+
+import java.util.Arrays;
+
+/**
+ * A fixed-size map from a position's 64-bit hash to the depth it was
+ * searched to and the best move found there, for solvers and hint engines.
+ * <p>
+ * Entries are two <tt>long</tt>s (the hash and a packed data word) in a
+ * single array sized from a hard byte budget, so the table never allocates
+ * after construction and never boxes.  A hash probes a short run of
+ * consecutive slots.  When the run is full, the entry from the oldest
+ * search generation is replaced first, and among entries of the same
+ * generation the shallowest one (depth-preferred replacement).  The
+ * generation is 14 bits, so when it wraps around the table is emptied,
+ * rather than let entries from 16384 generations back pass as current.
+ * <p>
+ * Lookups and hits are counted, so the hit rate and occupancy can be used to
+ * size the table per device.
+ * 
+ * @author  Peter O. Erickson
+ * 
+ * @version $Id$
+ */
+public final class TranspositionTable {
+    
+    /** The value returned by <tt>find()</tt> for a hash not in the table. */
+    public static final long MISSING = -1L;
+    
+    /** The bytes taken by one entry. */
+    public static final int ENTRY_BYTES = 16;
+    
+    /** The number of consecutive slots a hash may occupy. */
+    private static final int PROBE_LIMIT = 4;
+    
+    /** The smallest byte budget of a table: one run of probed slots. */
+    public static final int MIN_BYTES = PROBE_LIMIT * ENTRY_BYTES;
+    
+    /** The bit that marks a data word as in use. */
+    private static final long VALID = 1L << 62;
+    
+    /** The bit position of the generation in a data word. */
+    private static final int GENERATION_SHIFT = 48;
+    
+    /** The bit position of the depth in a data word. */
+    private static final int DEPTH_SHIFT = 32;
+    
+    /** The mask of the generation, below the valid bit. */
+    private static final int GENERATION_MASK = 0x3fff;
+    
+    /** The mask of the depth. */
+    private static final int DEPTH_MASK = 0xffff;
+    
+    /** The hash and data word of every entry, interleaved. */
+    private final long[] table;
+    
+    /** The mask that takes a hash to its first slot. */
+    private final int mask;
+    
+    /** The current search generation. */
+    private int generation;
+    
+    /** The number of slots in use. */
+    private int size;
+    
+    /** The number of lookups. */
+    private long lookups;
+    
+    /** The number of lookups that found their hash. */
+    private long hits;
+    
+    /**
+     * Constructs a new, empty <tt>TranspositionTable</tt> holding as many
+     * entries as fit in the specified number of bytes (rounded down to a
+     * power of two).
+     * 
+     * @param   bytes   the byte budget of the table, at least
+     *                  <tt>MIN_BYTES</tt>
+     * 
+     * @throws  IllegalArgumentException    if the budget is below
+     *                                      <tt>MIN_BYTES</tt>
+     */
+    public TranspositionTable( int bytes ) {
+        if ( bytes < MIN_BYTES ) {
+            throw new IllegalArgumentException( "Budget too small: "
+                    + bytes );
+        }
+        int entries = getCapacity( bytes );
+        table = new long[ entries * 2 ];
+        mask = entries - 1;
+    }
+    
+    /**
+     * Looks up the data stored for a hash.
+     * 
+     * @param   hash    the hash of the position
+     * 
+     * @return          the packed data word (see <tt>getDepth()</tt>,
+     *                  <tt>getMove()</tt> and <tt>isCurrent()</tt>), or
+     *                  <tt>MISSING</tt>
+     */
+    public long find( long hash ) {
+        lookups++;
+        int slot = index( hash );
+        for ( int i = 0; i < PROBE_LIMIT; i++ ) {
+            int entry = ( ( slot + i ) & mask ) << 1;
+            if ( ( table[ entry ] == hash ) && ( table[ entry + 1 ] != 0 ) ) {
+                hits++;
+                return table[ entry + 1 ];
+            }
+        }
+        return MISSING;
+    }
+    
+    /**
+     * Stores the depth and best move of a position, in the current
+     * generation.  An existing entry for the hash is overwritten.
+     * 
+     * @param   hash    the hash of the position
+     * @param   depth   the depth searched (0 to 65535); deeper entries are
+     *                  kept in preference to shallower ones
+     * @param   move    the best move found, or <tt>Moves.NONE</tt>
+     * 
+     * @throws  IllegalArgumentException    if the depth is out of range
+     */
+    public void store( long hash, int depth, int move ) {
+        if ( ( depth < 0 ) || ( depth > DEPTH_MASK ) ) {
+            throw new IllegalArgumentException( "Bad depth: " + depth );
+        }
+        
+        int slot = index( hash );
+        int victim = -1;
+        long victimRank = Long.MAX_VALUE;
+        for ( int i = 0; i < PROBE_LIMIT; i++ ) {
+            int entry = ( ( slot + i ) & mask ) << 1;
+            long data = table[ entry + 1 ];
+            if ( ( data == 0 ) || ( table[ entry ] == hash ) ) {
+                victim = entry;
+                break;
+            }
+            
+            // rank by generation first (older is replaced first), then
+            // by depth (shallower is replaced first)
+            long rank = ( ( long )( isCurrent( data ) ? 1 : 0 ) << 16 )
+                    | getDepth( data );
+            if ( rank < victimRank ) {
+                victimRank = rank;
+                victim = entry;
+            }
+        }
+        
+        if ( table[ victim + 1 ] == 0 ) {
+            size++;
+        }
+        table[ victim ] = hash;
+        table[ victim + 1 ] = VALID
+                | ( ( long )generation << GENERATION_SHIFT )
+                | ( ( long )depth << DEPTH_SHIFT )
+                | ( move & 0xffffffffL );
+    }
+    
+    /**
+     * Starts a new search generation.  Entries from earlier generations are
+     * still found, but are replaced before any entry of the new generation.
+     * When the generation number wraps around, every entry is removed, since
+     * the oldest entries would otherwise look current again.  The
+     * statistics are kept.
+     */
+    public void nextGeneration() {
+        generation = ( generation + 1 ) & GENERATION_MASK;
+        if ( generation == 0 ) {
+            Arrays.fill( table, 0 );
+            size = 0;
+        }
+    }
+    
+    /**
+     * Returns whether a data word was stored in the current generation.
+     * 
+     * @param   data    a data word returned by <tt>find()</tt>
+     * 
+     * @return          <tt>true</tt> if it is from the current generation
+     */
+    public boolean isCurrent( long data ) {
+        return ( ( ( int )( data >>> GENERATION_SHIFT ) & GENERATION_MASK )
+                == generation );
+    }
+    
+    /**
+     * Returns the depth of a data word.
+     * 
+     * @param   data    a data word returned by <tt>find()</tt>
+     * 
+     * @return          the depth searched
+     */
+    public static int getDepth( long data ) {
+        return ( ( int )( data >>> DEPTH_SHIFT ) & DEPTH_MASK );
+    }
+    
+    /**
+     * Returns the best move of a data word.
+     * 
+     * @param   data    a data word returned by <tt>find()</tt>
+     * 
+     * @return          the best move, or <tt>Moves.NONE</tt>
+     */
+    public static int getMove( long data ) {
+        return ( int )data;
+    }
+    
+    /**
+     * Removes every entry and resets the statistics.
+     */
+    public void clear() {
+        Arrays.fill( table, 0 );
+        size = 0;
+        lookups = 0;
+        hits = 0;
+    }
+    
+    /**
+     * Returns the number of entries the table can hold.
+     * 
+     * @return  the capacity
+     */
+    public int getCapacity() {
+        return mask + 1;
+    }
+    
+    /**
+     * Returns the number of entries a table with the specified byte budget
+     * can hold.
+     * 
+     * @param   bytes   the byte budget of the table
+     * 
+     * @return          the capacity, or 0 if the budget is below
+     *                  <tt>MIN_BYTES</tt>
+     */
+    public static int getCapacity( int bytes ) {
+        return ( bytes < MIN_BYTES ? 0
+                : Integer.highestOneBit( bytes / ENTRY_BYTES ) );
+    }
+    
+    /**
+     * Returns the number of entries in use.
+     * 
+     * @return  the number of entries
+     */
+    public int size() {
+        return size;
+    }
+    
+    /**
+     * Returns the fraction of entries in use.
+     * 
+     * @return  the occupancy, from 0 to 1
+     */
+    public double getOccupancy() {
+        return ( ( double )size / getCapacity() );
+    }
+    
+    /**
+     * Returns the number of lookups since the table was created or cleared.
+     * 
+     * @return  the number of lookups
+     */
+    public long getLookups() {
+        return lookups;
+    }
+    
+    /**
+     * Returns the number of lookups that found their hash.
+     * 
+     * @return  the number of hits
+     */
+    public long getHits() {
+        return hits;
+    }
+    
+    /**
+     * Returns the fraction of lookups that found their hash.
+     * 
+     * @return  the hit rate, from 0 to 1
+     */
+    public double getHitRate() {
+        return ( lookups == 0 ? 0.0 : ( double )hits / lookups );
+    }
+    
+    /**
+     * Returns the number of bytes the table's entries take up.
+     * 
+     * @return  the size of the table in bytes
+     */
+    public long getBytes() {
+        return ( ( long )table.length * 8 );
+    }
+    
+    /**
+     * Returns the statistics of this table in <tt>String</tt> form.
+     * 
+     * @return  the occupancy and hit rate
+     */
+    @Override
+    public String toString() {
+        return ( size + "/" + getCapacity() + " entries, "
+                + ( int )( getHitRate() * 100 ) + "% hits of " + lookups
+                + " lookups" );
+    }
+    
+    /**
+     * Returns the first slot of a hash.
+     * 
+     * @param   hash    the hash
+     * 
+     * @return          the index of the first slot
+     */
+    private int index( long hash ) {
+        return ( ( int )( hash ^ ( hash >>> 32 ) ) & mask );
+    }
+    
+} // TranspositionTable
@@ -0,0 +1,167 @@
+/*
+ * Bitboard.java
+ *
+ * Version:
+ *      $Id$
+ *
+ * Copyright (c) 2009 Peter O. Erickson
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package edu.rit.poe.atomix.util;
+
+/**
+ * A collection of static methods for treating a <tt>long[]</tt> as a packed
+ * set of bits, one bit per board square.  Bit <tt>i</tt> lives in word
+ * <tt>i / 64</tt> at position <tt>i % 64</tt>.
+ * <p>
+ * None of these methods allocate (except <tt>create</tt>), so they are safe
+ * to call from the inner loops of the move engine.
+ * 
+ * @author  Peter O. Erickson
+ * 
+ * @version $Id$
+ */
+public final class Bitboard {
+    
+    /** The number of bits in a single word of a bitboard. */
+    public static final int WORD_SIZE = 64;
+    
+    /** The shift that converts a bit index to a word index. */
+    private static final int WORD_SHIFT = 6;
+    
+    /** The mask that converts a bit index to a position within a word. */
+    private static final int WORD_MASK = 63;
+    
+    /**
+     * Constructs a new <tt>Bitboard</tt> (disabled).
+     */
+    private Bitboard() {
+    }
+    
+    /**
+     * Creates a new, empty bitboard large enough to hold the specified number
+     * of bits.
+     * 
+     * @param   bits    the number of bits the bitboard must hold
+     * 
+     * @return          a new bitboard with all bits cleared
+     */
+    public static long[] create( int bits ) {
+        return new long[ ( bits + WORD_MASK ) >>> WORD_SHIFT ];
+    }
+    
+    /**
+     * Returns whether the specified bit is set.
+     * 
+     * @param   board   the bitboard
+     * @param   i       the index of the bit
+     * 
+     * @return          <tt>true</tt> if the bit is set, otherwise
+     *                  <tt>false</tt>
+     */
+    public static boolean get( long[] board, int i ) {
+        return ( ( board[ i >>> WORD_SHIFT ] & ( 1L << i ) ) != 0 );
+    }
+    
+    /**
+     * Sets the specified bit.
+     * 
+     * @param   board   the bitboard
+     * @param   i       the index of the bit
+     */
+    public static void set( long[] board, int i ) {
+        board[ i >>> WORD_SHIFT ] |= ( 1L << i );
+    }
+    
+    /**
+     * Clears the specified bit.
+     * 
+     * @param   board   the bitboard
+     * @param   i       the index of the bit
+     */
+    public static void clear( long[] board, int i ) {
+        board[ i >>> WORD_SHIFT ] &= ~( 1L << i );
+    }
+    
+    /**
+     * Returns the index of the first set bit at or after <tt>from</tt>.
+     * 
+     * @param   board   the bitboard
+     * @param   from    the index to start scanning from (inclusive)
+     * 
+     * @return          the index of the next set bit, or <tt>-1</tt> if there
+     *                  is no such bit
+     */
+    public static int nextSetBit( long[] board, int from ) {
+        int w = from >>> WORD_SHIFT;
+        if ( w >= board.length ) {
+            return -1;
+        }
+        
+        long word = board[ w ] & ( -1L << from );
+        while ( word == 0 ) {
+            if ( ++w == board.length ) {
+                return -1;
+            }
+            word = board[ w ];
+        }
+        return ( ( w << WORD_SHIFT ) + Long.numberOfTrailingZeros( word ) );
+    }
+    
+    /**
+     * Returns the index of the last set bit at or before <tt>from</tt>.
+     * 
+     * @param   board   the bitboard
+     * @param   from    the index to start scanning from (inclusive)
+     * 
+     * @return          the index of the previous set bit, or <tt>-1</tt> if
+     *                  there is no such bit
+     */
+    public static int previousSetBit( long[] board, int from ) {
+        if ( from < 0 ) {
+            return -1;
+        }
+        
+        int w = from >>> WORD_SHIFT;
+        long word = board[ w ]
+                & ( -1L >>> ( WORD_MASK - ( from & WORD_MASK ) ) );
+        while ( word == 0 ) {
+            if ( w-- == 0 ) {
+                return -1;
+            }
+            word = board[ w ];
+        }
+        return ( ( ( w + 1 ) << WORD_SHIFT ) - 1
+                - Long.numberOfLeadingZeros( word ) );
+    }
+    
+    /**
+     * Returns the number of set bits in the bitboard.
+     * 
+     * @param   board   the bitboard
+     * 
+     * @return          the number of set bits
+     */
+    public static int cardinality( long[] board ) {
+        int count = 0;
+        for ( int w = 0; w < board.length; w++ ) {
+            count += Long.bitCount( board[ w ] );
+        }
+        return count;
+    }
+    
+} // Bitboard
@@ -0,0 +1,646 @@
+/*
+ * GameControllerTest.java
+ *
+ * Version:
+ *      $Id$
+ *
+ * Copyright (c) 2009 Peter O. Erickson
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package edu.rit.poe.atomix.game;
+
+import edu.rit.poe.atomix.db.Game;
+import edu.rit.poe.atomix.db.User;
+import edu.rit.poe.atomix.levels.Atom;
+import edu.rit.poe.atomix.levels.Connector;
+import edu.rit.poe.atomix.levels.Level;
+import edu.rit.poe.atomix.levels.LevelManager;
+import edu.rit.poe.atomix.levels.Moves;
+import edu.rit.poe.atomix.levels.Square;
+import edu.rit.poe.atomix.util.Bitboard;
+import edu.rit.poe.atomix.util.Point;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import junit.framework.TestCase;
+
+/**
+ * Plays random moves on every level through <tt>GameController</tt>, and
+ * checks each one against a naive reference that walks a plain
+ * <tt>Square[][]</tt> board.
+ * 
+ * @author  Peter O. Erickson
+ * 
+ * @version $Id$
+ */
+public class GameControllerTest extends TestCase {
+    
+    /** The number of random moves played on each level. */
+    private static final int MOVES = 2000;
+    
+    /** A level whose open squares run right up to the edges of the board. */
+    private static final String EDGE = "level:\n100\n"
+            + "name:\nEdge\nformula:\nH_2O\nsize:\n6X6\n"
+            + "molecules:\n1 H -l\n2 H -r\n3 O -l -r\n"
+            + "map:\n"
+            + "1   X \n"
+            + " X   2\n"
+            + "   3  \n"
+            + "X     \n"
+            + "  X   \n"
+            + "     X\n"
+            + "goal_size:\n3X1\ngoal:\n231\n";
+    
+    /** The levels in the level files. */
+    private List<Level> levels;
+    
+    @Override
+    protected void setUp() throws Exception {
+        levels = new ArrayList<Level>();
+        LevelManager levelManager = LevelManager.getInstance();
+        for ( int number = 1; new File( "assets/levels",
+                "level" + number + ".level" ).exists(); number++ ) {
+            InputStream in = new FileInputStream( new File( "assets/levels",
+                    "level" + number + ".level" ) );
+            try {
+                Level level = Level.loadLevel( in );
+                levelManager.addLevel( level );
+                levels.add( level );
+            } finally {
+                in.close();
+            }
+        }
+        assertFalse( levels.isEmpty() );
+        
+        // and one whose open squares touch every edge of the board
+        Level level = Level.loadLevel( new ByteArrayInputStream(
+                EDGE.getBytes( "US-ASCII" ) ) );
+        levelManager.addLevel( level );
+        levels.add( level );
+    }
+    
+    public void testPadding() throws Exception {
+        for ( Level level : levels ) {
+            Square[][] board = toBoard( level, new int[ 0 ] );
+            assertEquals( level.getWidth() + 2, level.getStride() );
+            assertEquals( level.getStride() * ( level.getHeight() + 2 ),
+                    level.getCellCount() );
+            for ( int y = -1; y <= level.getHeight(); y++ ) {
+                for ( int x = -1; x <= level.getWidth(); x++ ) {
+                    int cell = level.cell( x, y );
+                    assertEquals( x, level.getX( cell ) );
+                    assertEquals( y, level.getY( cell ) );
+                    boolean inside = ( x >= 0 ) && ( y >= 0 )
+                            && ( x < level.getWidth() )
+                            && ( y < level.getHeight() );
+                    assertEquals( ! inside
+                            || ! ( board[ y ][ x ] instanceof Square.Empty ),
+                            level.isWall( cell ) );
+                }
+            }
+        }
+    }
+    
+    public void testWallStops() throws Exception {
+        for ( Level level : levels ) {
+            Square[][] board = toBoard( level, new int[ 0 ] );
+            for ( int y = 0; y < board.length; y++ ) {
+                for ( int x = 0; x < board[ y ].length; x++ ) {
+                    if ( ! ( board[ y ][ x ] instanceof Square.Empty ) ) {
+                        continue;
+                    }
+                    int cell = level.cell( x, y );
+                    for ( int dir = 0; dir < Level.DIRECTIONS; dir++ ) {
+                        assertEquals( slide( level, board, cell, dir ),
+                                level.getWallStop( cell, dir ) );
+                    }
+                }
+            }
+        }
+    }
+    
+    public void testAtomTypes() throws Exception {
+        for ( Level level : levels ) {
+            for ( int a = 0; a < level.getAtomCount(); a++ ) {
+                Atom first = level.getAtom( a );
+                assertTrue( level.getType( first ) < level.getTypeCount() );
+                for ( int b = 0; b < level.getAtomCount(); b++ ) {
+                    assertSameType( level, first, level.getAtom( b ) );
+                }
+            }
+        }
+        
+        // one atom's connectors a subset of the other's
+        Set<Connector> left = new HashSet<Connector>();
+        left.add( new Connector( Connector.Direction.LEFT,
+                Connector.Bond.SINGLE ) );
+        Set<Connector> both = new HashSet<Connector>( left );
+        both.add( new Connector( Connector.Direction.RIGHT,
+                Connector.Bond.SINGLE ) );
+        Set<Connector> doubled = new HashSet<Connector>();
+        doubled.add( new Connector( Connector.Direction.LEFT,
+                Connector.Bond.DOUBLE ) );
+        Atom[] atoms = {
+            new Atom( ( short )1, 'O', left ),
+            new Atom( ( short )2, 'O', both ),
+            new Atom( ( short )3, 'O', doubled ),
+            new Atom( ( short )4, 'C', left ),
+            new Atom( ( short )5, 'O', new HashSet<Connector>( left ) )
+        };
+        for ( Atom a : atoms ) {
+            for ( Atom b : atoms ) {
+                assertSameType( null, a, b );
+            }
+        }
+    }
+    
+    public void testAtomIndex() throws Exception {
+        for ( Level level : levels ) {
+            int[] start = level.getStart();
+            assertEquals( level.getAtomCount(), start.length );
+            Square[][] board = level.getBoard();
+            for ( int i = 0; i < level.getAtomCount(); i++ ) {
+                Atom atom = level.getAtom( i );
+                assertEquals( i, atom.getIndex() );
+                assertSame( atom, level.getAtomById( atom.getId() ) );
+                assertTrue( ( i == 0 )
+                        || ( level.getAtom( i - 1 ).getId() < atom.getId() ) );
+                assertSame( atom, board[ level.getY( start[ i ] ) ]
+                        [ level.getX( start[ i ] ) ] );
+            }
+            assertNull( level.getAtomById( ( short )-1 ) );
+            
+            GameState state = newState( level );
+            assertTrue( Arrays.equals( start, state.getGame().getAtoms() ) );
+            assertNotSame( start, state.getGame().getAtoms() );
+        }
+    }
+    
+    public void testSharedLayout() throws Exception {
+        Random random = new Random( 5 );
+        for ( Level level : levels ) {
+            Square[][] layout = level.getLayout();
+            Square[][] empty = toBoard( level, new int[ 0 ] );
+            GameState state = newState( level );
+            GameState other = newState( level );
+            other.getBoard();
+            
+            // only the rows holding an atom are copied
+            Square[][] board = state.getBoard();
+            for ( int y = 0; y < board.length; y++ ) {
+                boolean hasAtom = false;
+                for ( Square square : board[ y ] ) {
+                    hasAtom |= ( square instanceof Atom );
+                }
+                assertEquals( ! hasAtom, board[ y ] == layout[ y ] );
+            }
+            
+            for ( int i = 0; i < MOVES / 10; i++ ) {
+                int atom = random.nextInt( level.getAtomCount() );
+                GameController.moveAtom( state,
+                        state.getGame().getAtoms()[ atom ],
+                        random.nextInt( Level.DIRECTIONS ) );
+            }
+            
+            // which changed neither the layout nor another game's board
+            for ( int y = 0; y < layout.length; y++ ) {
+                assertTrue( Arrays.equals( empty[ y ], layout[ y ] ) );
+            }
+            assertSameState( level, toBoard( level, level.getStart() ),
+                    other );
+        }
+    }
+    
+    
+    public void testRandomMoves() throws Exception {
+        Random random = new Random( 1 );
+        for ( Level level : levels ) {
+            GameState state = newState( level );
+            Square[][] board = level.copyBoard();
+            int[] moves = new int[ level.getAtomCount() * Level.DIRECTIONS ];
+            
+            for ( int i = 0; i < MOVES; i++ ) {
+                assertSameState( level, board, state );
+                assertSameMoves( level, board, state, moves );
+                
+                int atom = random.nextInt( level.getAtomCount() );
+                int direction = random.nextInt( Level.DIRECTIONS );
+                int from = state.getGame().getAtoms()[ atom ];
+                int to = slide( level, board, from, direction );
+                
+                int move = GameController.moveAtom( state, from, direction );
+                assertEquals( atom, Moves.getAtom( move ) );
+                assertEquals( direction, Moves.getDirection( move ) );
+                assertEquals( from, Moves.getFrom( move ) );
+                assertEquals( to, Moves.getTo( move ) );
+                place( level, board, from, to );
+                
+                assertEquals( isComplete( level, board ),
+                        level.isComplete( state.occupied,
+                        state.occupiedByType, level.getAtom( atom ), to ) );
+            }
+        }
+    }
+    
+    public void testUndoRedo() throws Exception {
+        Random random = new Random( 2 );
+        for ( Level level : levels ) {
+            GameState state = newState( level );
+            List<int[]> positions = new ArrayList<int[]>();
+            List<Long> hashes = new ArrayList<Long>();
+            int[] played = new int[ MOVES ];
+            
+            for ( int i = 0; i < MOVES; i++ ) {
+                positions.add( state.getGame().getAtoms().clone() );
+                hashes.add( state.getHash() );
+                int atom = random.nextInt( level.getAtomCount() );
+                played[ i ] = GameController.moveAtom( state,
+                        state.getGame().getAtoms()[ atom ],
+                        random.nextInt( Level.DIRECTIONS ) );
+            }
+            
+            // undo a random number of moves, checking each earlier position
+            int undone = 1 + random.nextInt( MOVES );
+            for ( int i = MOVES - 1; i >= MOVES - undone; i-- ) {
+                assertEquals( played[ i ], GameController.undoMove( state ) );
+                assertTrue( Arrays.equals( positions.get( i ),
+                        state.getGame().getAtoms() ) );
+                assertEquals( hashes.get( i ).longValue(), state.getHash() );
+                assertConsistent( level, state );
+            }
+            
+            // and redo them, which must land on the same positions again
+            for ( int i = MOVES - undone; i < MOVES; i++ ) {
+                assertTrue( Arrays.equals( positions.get( i ),
+                        state.getGame().getAtoms() ) );
+                assertEquals( played[ i ], GameController.moveAtom( state,
+                        Moves.getFrom( played[ i ] ),
+                        Moves.getDirection( played[ i ] ) ) );
+            }
+            assertConsistent( level, state );
+            
+            while ( GameController.canUndo( state ) ) {
+                GameController.undoMove( state );
+            }
+            assertEquals( Moves.NONE, GameController.undoMove( state ) );
+            assertTrue( Arrays.equals( level.getStart(),
+                    state.getGame().getAtoms() ) );
+            assertConsistent( level, state );
+        }
+    }
+    
+    public void testMoveSelected() throws Exception {
+        Random random = new Random( 3 );
+        for ( Level level : levels ) {
+            GameState state = newState( level );
+            Square[][] board = level.copyBoard();
+            
+            for ( int i = 0; i < MOVES / 10; i++ ) {
+                int atom = random.nextInt( level.getAtomCount() );
+                GameState.Direction direction = GameState.Direction.values()[
+                        random.nextInt( Level.DIRECTIONS ) ];
+                int from = state.getGame().getAtoms()[ atom ];
+                int to = slide( level, board, from, direction.ordinal() );
+                state.setSelected( new Point( level.getX( from ),
+                        level.getY( from ) ) );
+                
+                boolean win = GameController.moveSelected( state, direction );
+                place( level, board, from, to );
+                assertEquals( isComplete( level, board ), win );
+                assertEquals( level.getX( to ), state.getSelected().x );
+                assertEquals( level.getY( to ), state.getSelected().y );
+                assertEquals( i + 1, state.getGame().getMoves() );
+                assertSameState( level, board, state );
+            }
+            
+            // only the last move can be undone
+            GameController.undo( state );
+            assertFalse( GameController.canUndo( state ) );
+            assertEquals( MOVES / 10 - 1, state.getGame().getMoves() );
+            assertConsistent( level, state );
+        }
+    }
+    
+    public void testCompleteAtPlacements() throws Exception {
+        Random random = new Random( 4 );
+        for ( Level level : levels ) {
+            for ( int p = 0; p < level.getPlacementCount(); p++ ) {
+                int[] cells = placeGoal( level, level.getPlacement( p ),
+                        random );
+                if ( cells == null ) {
+                    continue;
+                }
+                
+                GameState state = newState( level );
+                state.getGame().setAtoms( cells );
+                state = new GameState( state.getUser(), state.getGame() );
+                Square[][] board = toBoard( level, cells );
+                assertTrue( isComplete( level, board ) );
+                assertTrue( level.isComplete( state.occupied,
+                        state.occupiedByType ) );
+                for ( int atom = 0; atom < cells.length; atom++ ) {
+                    assertTrue( level.isComplete( state.occupied,
+                            state.occupiedByType, level.getAtom( atom ),
+                            cells[ atom ] ) );
+                }
+            }
+        }
+    }
+    
+    /**
+     * Creates a game state at the start of a level.
+     * 
+     * @param   level   the level
+     * 
+     * @return          a new game state
+     */
+    private static GameState newState( Level level ) {
+        User user = GameController.newUser( "test" );
+        Game game = GameController.newLevel( user, level.getLevel() );
+        return new GameState( user, game );
+    }
+    
+    /**
+     * Slides an atom on the reference board one square at a time until the
+     * next square is not empty.
+     * 
+     * @param   level       the level
+     * @param   board       the reference board
+     * @param   from        the row-major index of the atom
+     * @param   direction   one of the <tt>Level</tt> direction constants
+     * 
+     * @return              the row-major index of the square it stops on
+     */
+    private static int slide( Level level, Square[][] board, int from,
+            int direction ) {
+        int[] dx = { 0, 0, 1, -1 };
+        int[] dy = { -1, 1, 0, 0 };
+        int x = level.getX( from );
+        int y = level.getY( from );
+        while ( true ) {
+            int nx = x + dx[ direction ];
+            int ny = y + dy[ direction ];
+            if ( ( ny < 0 ) || ( ny >= board.length ) || ( nx < 0 )
+                    || ( nx >= board[ ny ].length )
+                    || ! ( board[ ny ][ nx ] instanceof Square.Empty ) ) {
+                return level.cell( x, y );
+            }
+            x = nx;
+            y = ny;
+        }
+    }
+    
+    /**
+     * Moves an atom on the reference board.
+     * 
+     * @param   level   the level
+     * @param   board   the reference board
+     * @param   from    the row-major index the atom is leaving
+     * @param   to      the row-major index the atom is entering
+     */
+    private static void place( Level level, Square[][] board, int from,
+            int to ) {
+        Square atom = board[ level.getY( from ) ][ level.getX( from ) ];
+        board[ level.getY( from ) ][ level.getX( from ) ] = Square.EMPTY;
+        board[ level.getY( to ) ][ level.getX( to ) ] = atom;
+    }
+    
+    /**
+     * Returns whether the goal is matched anywhere on the reference board, by
+     * trying the whole goal at every offset where it fits.
+     * 
+     * @param   level   the level
+     * @param   board   the reference board
+     * 
+     * @return          <tt>true</tt> if the goal is matched
+     */
+    private static boolean isComplete( Level level, Square[][] board ) {
+        Square[][] goal = level.getGoal();
+        for ( int oy = 0; oy + goal.length <= board.length; oy++ ) {
+            for ( int ox = 0; ox + goal[ 0 ].length <= board[ 0 ].length;
+                    ox++ ) {
+                boolean match = true;
+                for ( int y = 0; y < goal.length; y++ ) {
+                    for ( int x = 0; x < goal[ y ].length; x++ ) {
+                        Square want = goal[ y ][ x ];
+                        Square have = board[ oy + y ][ ox + x ];
+                        if ( want instanceof Atom ) {
+                            match &= ( have instanceof Atom )
+                                    && ( ( ( Atom )have ).getType()
+                                    == ( ( Atom )want ).getType() );
+                        } else {
+                            match &= ! ( have instanceof Atom );
+                        }
+                    }
+                }
+                if ( match ) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Checks a game state against the reference board: the atom squares,
+     * the generated board, and everything checked by
+     * <tt>assertConsistent()</tt>.
+     * 
+     * @param   level   the level
+     * @param   board   the reference board
+     * @param   state   the game state
+     */
+    private static void assertSameState( Level level, Square[][] board,
+            GameState state ) {
+        int[] atoms = state.getGame().getAtoms();
+        for ( int i = 0; i < atoms.length; i++ ) {
+            assertSame( level.getAtom( i ), board[ level.getY( atoms[ i ] ) ]
+                    [ level.getX( atoms[ i ] ) ] );
+        }
+        Square[][] actual = state.getBoard();
+        for ( int y = 0; y < board.length; y++ ) {
+            assertTrue( Arrays.equals( board[ y ], actual[ y ] ) );
+        }
+        assertConsistent( level, state );
+    }
+    
+    /**
+     * Checks that a game state's bitboards, hash and win state are those of
+     * a state built from scratch from its atom squares.
+     * 
+     * @param   level   the level
+     * @param   state   the game state
+     */
+    private static void assertConsistent( Level level, GameState state ) {
+        int[] atoms = state.getGame().getAtoms();
+        long hash = 0;
+        long[] occupied = level.newBitboard();
+        long[][] occupiedByType = level.newTypeBitboards();
+        for ( int i = 0; i < atoms.length; i++ ) {
+            Atom atom = level.getAtom( i );
+            hash ^= level.getZobristKey( atom, atoms[ i ] );
+            Bitboard.set( occupied, atoms[ i ] );
+            Bitboard.set( occupiedByType[ level.getType( atom ) ],
+                    atoms[ i ] );
+        }
+        assertEquals( hash, state.getHash() );
+        assertTrue( Arrays.equals( occupied, state.occupied ) );
+        for ( int type = 0; type < occupiedByType.length; type++ ) {
+            assertTrue( Arrays.equals( occupiedByType[ type ],
+                    state.occupiedByType[ type ] ) );
+        }
+        for ( int cell = 0; cell < level.getCellCount(); cell++ ) {
+            assertEquals( Bitboard.get( occupied, cell ), Bitboard.get(
+                    state.occupiedColumns, level.column( cell ) ) );
+        }
+        assertEquals( isComplete( level, toBoard( level, atoms ) ),
+                level.isComplete( state.occupied, state.occupiedByType ) );
+    }
+    
+    /**
+     * Checks that the move generator returns exactly the slides of every
+     * atom in every direction that go somewhere on the reference board.
+     * 
+     * @param   level   the level
+     * @param   board   the reference board
+     * @param   state   the game state
+     * @param   moves   a buffer for the generated moves
+     */
+    private static void assertSameMoves( Level level, Square[][] board,
+            GameState state, int[] moves ) {
+        int[] atoms = state.getGame().getAtoms();
+        List<Integer> expected = new ArrayList<Integer>();
+        for ( int atom = 0; atom < atoms.length; atom++ ) {
+            for ( int dir = 0; dir < Level.DIRECTIONS; dir++ ) {
+                int to = slide( level, board, atoms[ atom ], dir );
+                if ( to != atoms[ atom ] ) {
+                    expected.add( Moves.pack( atom, dir, atoms[ atom ], to ) );
+                }
+            }
+        }
+        int count = GameController.generateMoves( state, moves );
+        assertEquals( expected.size(), count );
+        for ( int i = 0; i < count; i++ ) {
+            assertEquals( expected.get( i ).intValue(), moves[ i ] );
+        }
+    }
+    
+    /**
+     * Builds a reference board with the level's atoms on the specified
+     * squares.
+     * 
+     * @param   level   the level
+     * @param   cells   the square of every atom, indexed by atom index
+     * 
+     * @return          the reference board
+     */
+    private static Square[][] toBoard( Level level, int[] cells ) {
+        Square[][] board = level.copyBoard();
+        for ( int y = 0; y < board.length; y++ ) {
+            for ( int x = 0; x < board[ y ].length; x++ ) {
+                if ( board[ y ][ x ] instanceof Atom ) {
+                    board[ y ][ x ] = Square.EMPTY;
+                }
+            }
+        }
+        for ( int i = 0; i < cells.length; i++ ) {
+            board[ level.getY( cells[ i ] ) ][ level.getX( cells[ i ] ) ] =
+                    level.getAtom( i );
+        }
+        return board;
+    }
+    
+    /**
+     * Puts an atom of the right type on every goal square of a placement,
+     * and every other atom on a random open square outside the goal.
+     * 
+     * @param   level   the level
+     * @param   origin  the goal placement's top-left corner
+     * @param   random  the source of randomness
+     * 
+     * @return          the square of every atom, or <tt>null</tt> if the
+     *                  other atoms don't fit
+     */
+    private static int[] placeGoal( Level level, int origin, Random random ) {
+        int[] cells = new int[ level.getAtomCount() ];
+        Arrays.fill( cells, -1 );
+        long[] used = level.newBitboard();
+        for ( int i = 0; i < level.getGoalAtomCount(); i++ ) {
+            int cell = origin + level.getGoalOffset( i );
+            for ( int atom = 0; atom < cells.length; atom++ ) {
+                if ( ( cells[ atom ] < 0 ) && ( level.getType( level.getAtom(
+                        atom ) ) == level.getGoalType( i ) ) ) {
+                    cells[ atom ] = cell;
+                    Bitboard.set( used, cell );
+                    break;
+                }
+            }
+        }
+        
+        // keep the other atoms off the whole goal rectangle
+        Square[][] goal = level.getGoal();
+        for ( int y = 0; y < goal.length; y++ ) {
+            for ( int x = 0; x < goal[ y ].length; x++ ) {
+                Bitboard.set( used, origin + y * level.getStride() + x );
+            }
+        }
+        for ( int atom = 0; atom < cells.length; atom++ ) {
+            for ( int tries = 0; ( cells[ atom ] < 0 ) && ( tries < 1000 );
+                    tries++ ) {
+                int cell = random.nextInt( level.getCellCount() );
+                if ( ! level.isWall( cell ) && ! Bitboard.get( used, cell ) ) {
+                    cells[ atom ] = cell;
+                    Bitboard.set( used, cell );
+                }
+            }
+            if ( cells[ atom ] < 0 ) {
+                return null;
+            }
+        }
+        return cells;
+    }
+    
+    /**
+     * Checks that two atoms share a type exactly when they have the same
+     * element and the same connectors, and that equality agrees both ways.
+     * 
+     * @param   level   the level of both atoms, or <tt>null</tt> if they
+     *                  belong to no level
+     * @param   a       one atom
+     * @param   b       the other atom
+     */
+    private static void assertSameType( Level level, Atom a, Atom b ) {
+        boolean same = ( a.getElement() == b.getElement() )
+                && a.getConnectors().equals( b.getConnectors() );
+        assertEquals( same, a.getType() == b.getType() );
+        assertEquals( same, a.equals( b ) );
+        assertEquals( same, b.equals( a ) );
+        assertEquals( same, a.hashCode() == b.hashCode() );
+        if ( level != null ) {
+            assertEquals( same, level.getType( a ) == level.getType( b ) );
+        }
+    }
+    
+} // GameControllerTest
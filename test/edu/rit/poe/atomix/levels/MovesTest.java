@@ -0,0 +1,180 @@
+/*
+ * MovesTest.java
+ *
+ * Version:
+ *      $Id$
+ *
+ * Copyright (c) 2009 Peter O. Erickson
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package edu.rit.poe.atomix.levels;
+
+import java.io.ByteArrayInputStream;
+import junit.framework.TestCase;
+
+/**
+ * Checks the footprints of packed moves, and which pairs of moves commute,
+ * on a small open level whose squares run right up to the edges of the
+ * board.
+ * 
+ * @author  Peter O. Erickson
+ * 
+ * @version $Id$
+ */
+public class MovesTest extends TestCase {
+    
+    /** A 6x6 board with no walls, so only the padding stops a slide. */
+    private static final String OPEN = "level:\n99\n"
+            + "name:\nOpen\nformula:\nH_2\nsize:\n6X6\n"
+            + "molecules:\n1 H -r\n2 H -l\n"
+            + "map:\n"
+            + "1     \n"
+            + "     2\n"
+            + "      \n"
+            + "      \n"
+            + "      \n"
+            + "      \n"
+            + "goal_size:\n2X1\ngoal:\n12\n";
+    
+    /** The level the moves are on. */
+    private Level level;
+    
+    @Override
+    protected void setUp() throws Exception {
+        level = Level.loadLevel( new ByteArrayInputStream(
+                OPEN.getBytes( "US-ASCII" ) ) );
+    }
+    
+    public void testPack() {
+        int move = Moves.pack( 1, Level.LEFT, cell( 5, 1 ), cell( 0, 1 ) );
+        assertEquals( 1, Moves.getAtom( move ) );
+        assertEquals( Level.LEFT, Moves.getDirection( move ) );
+        assertEquals( cell( 5, 1 ), Moves.getFrom( move ) );
+        assertEquals( cell( 0, 1 ), Moves.getTo( move ) );
+    }
+    
+    public void testOnLine() {
+        int right = move( 0, Level.RIGHT, 1, 2, 4, 2 );
+        assertFalse( Moves.isOnLine( level, right, cell( 1, 2 ) ) );
+        assertTrue( Moves.isOnLine( level, right, cell( 2, 2 ) ) );
+        assertTrue( Moves.isOnLine( level, right, cell( 4, 2 ) ) );
+        assertTrue( Moves.isOnLine( level, right, cell( 5, 2 ) ) );
+        assertFalse( Moves.isOnLine( level, right, cell( 0, 2 ) ) );
+        assertFalse( Moves.isOnLine( level, right, cell( 2, 3 ) ) );
+        assertFalse( Moves.isOnLine( level, right, cell( 2, 1 ) ) );
+        
+        int up = move( 0, Level.UP, 3, 4, 3, 1 );
+        assertFalse( Moves.isOnLine( level, up, cell( 3, 4 ) ) );
+        assertTrue( Moves.isOnLine( level, up, cell( 3, 3 ) ) );
+        assertTrue( Moves.isOnLine( level, up, cell( 3, 1 ) ) );
+        assertTrue( Moves.isOnLine( level, up, cell( 3, 0 ) ) );
+        assertFalse( Moves.isOnLine( level, up, cell( 3, 5 ) ) );
+        assertFalse( Moves.isOnLine( level, up, cell( 2, 3 ) ) );
+        assertFalse( Moves.isOnLine( level, up, cell( 4, 2 ) ) );
+        
+        // a slide to the end of a row is stopped by the padding, and the
+        // square after that is the start of the next row
+        int end = move( 0, Level.RIGHT, 0, 0, 5, 0 );
+        assertTrue( Moves.isOnLine( level, end, cell( 5, 0 ) ) );
+        assertTrue( Moves.isOnLine( level, end, cell( 6, 0 ) ) );
+        assertFalse( Moves.isOnLine( level, end, cell( 0, 1 ) ) );
+        assertFalse( Moves.isOnLine( level, end, cell( 1, 1 ) ) );
+        int start = move( 0, Level.LEFT, 5, 1, 0, 1 );
+        assertTrue( Moves.isOnLine( level, start, cell( -1, 1 ) ) );
+        assertFalse( Moves.isOnLine( level, start, cell( 5, 0 ) ) );
+        assertFalse( Moves.isOnLine( level, start, cell( 4, 0 ) ) );
+    }
+    
+    public void testIndependent() {
+        Object[][] cases = {
+            { "same atom", Boolean.FALSE,
+                    move( 0, Level.RIGHT, 0, 0, 5, 0 ),
+                    move( 0, Level.DOWN, 5, 0, 5, 5 ) },
+            { "apart", Boolean.TRUE,
+                    move( 0, Level.RIGHT, 0, 0, 5, 0 ),
+                    move( 1, Level.DOWN, 0, 2, 0, 5 ) },
+            { "crossing footprints", Boolean.TRUE,
+                    move( 0, Level.RIGHT, 0, 3, 5, 3 ),
+                    move( 1, Level.DOWN, 2, 0, 2, 5 ) },
+            { "stops against the other's end", Boolean.FALSE,
+                    move( 0, Level.RIGHT, 0, 2, 5, 2 ),
+                    move( 1, Level.UP, 5, 5, 5, 3 ) },
+            { "stops against the other's start", Boolean.FALSE,
+                    move( 0, Level.RIGHT, 0, 4, 5, 4 ),
+                    move( 1, Level.UP, 0, 5, 0, 5 ) },
+            { "stopped short of the other's start", Boolean.TRUE,
+                    move( 0, Level.RIGHT, 0, 4, 5, 4 ),
+                    move( 1, Level.LEFT, 5, 5, 0, 5 ) },
+            { "slides over the other's start", Boolean.FALSE,
+                    move( 0, Level.UP, 3, 4, 3, 0 ),
+                    move( 1, Level.RIGHT, 0, 4, 5, 4 ) },
+            { "slides into the other's path", Boolean.FALSE,
+                    move( 0, Level.DOWN, 2, 0, 2, 5 ),
+                    move( 1, Level.LEFT, 4, 1, 2, 1 ) },
+            { "to the end of a row, then from the next", Boolean.TRUE,
+                    move( 0, Level.RIGHT, 0, 0, 5, 0 ),
+                    move( 1, Level.DOWN, 0, 1, 0, 5 ) },
+            { "to the start of a row, then from the last", Boolean.TRUE,
+                    move( 0, Level.LEFT, 5, 2, 0, 2 ),
+                    move( 1, Level.UP, 5, 1, 5, 0 ) },
+            { "along the same row end", Boolean.FALSE,
+                    move( 0, Level.RIGHT, 0, 0, 4, 0 ),
+                    move( 1, Level.DOWN, 5, 0, 5, 5 ) }
+        };
+        for ( Object[] c : cases ) {
+            boolean expected = ( ( Boolean )c[ 1 ] ).booleanValue();
+            int first = ( ( Integer )c[ 2 ] ).intValue();
+            int second = ( ( Integer )c[ 3 ] ).intValue();
+            assertEquals( ( String )c[ 0 ], expected,
+                    Moves.isIndependent( level, first, second ) );
+            assertEquals( ( String )c[ 0 ] + ", swapped", expected,
+                    Moves.isIndependent( level, second, first ) );
+        }
+    }
+    
+    /**
+     * Returns the row-major index of a square of the level.
+     * 
+     * @param   x   the X coordinate
+     * @param   y   the Y coordinate
+     * 
+     * @return      the row-major index
+     */
+    private int cell( int x, int y ) {
+        return level.cell( x, y );
+    }
+    
+    /**
+     * Packs a move between two squares.
+     * 
+     * @param   atom        the index of the atom
+     * @param   direction   the direction of the move
+     * @param   fromX       the X coordinate of the start
+     * @param   fromY       the Y coordinate of the start
+     * @param   toX         the X coordinate of the end
+     * @param   toY         the Y coordinate of the end
+     * 
+     * @return              the packed move
+     */
+    private int move( int atom, int direction, int fromX, int fromY,
+            int toX, int toY ) {
+        return Moves.pack( atom, direction, cell( fromX, fromY ),
+                cell( toX, toY ) );
+    }
+    
+} // MovesTest
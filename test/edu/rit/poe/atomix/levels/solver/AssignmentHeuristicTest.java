@@ -0,0 +1,199 @@
+/*
+ * AssignmentHeuristicTest.java
+ *
+ * Version:
+ *      $Id$
+ *
+ * Copyright (c) 2009 Peter O. Erickson
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package edu.rit.poe.atomix.levels.solver;
+
+import edu.rit.poe.atomix.levels.Level;
+import edu.rit.poe.atomix.util.Bitboard;
+import java.io.File;
+import java.util.Random;
+import junit.framework.TestCase;
+
+/**
+ * Checks the estimates of an <tt>AssignmentHeuristic</tt> against the least
+ * cost over every way of sending atoms to goal squares, on the levels whose
+ * goal has several atoms of one type.
+ * 
+ * @author  Peter O. Erickson
+ * 
+ * @version $Id$
+ */
+public class AssignmentHeuristicTest extends TestCase {
+    
+    /** The number of moves of the random walk on each level. */
+    private static final int MOVES = 100;
+    
+    public void testBruteForce() throws Exception {
+        Random random = new Random( 1 );
+        int tested = 0;
+        int finite = 0;
+        for ( int number = 1; new File( "assets/levels",
+                "level" + number + ".level" ).exists(); number++ ) {
+            Level level = SolverTest.loadLevel( number );
+            if ( ! hasRepeatedGoalType( level ) ) {
+                continue;
+            }
+            tested++;
+            
+            SlideDistances distances = new SlideDistances( level );
+            Reachability reach = new Reachability( level );
+            AssignmentHeuristic heuristic =
+                    new AssignmentHeuristic( level, distances, reach );
+            
+            // a walk moves one atom at a time, so the cached costs of the
+            // other types are used; a jump moves every atom at once
+            Position position = new Position( level );
+            for ( int i = 0; i < MOVES; i++ ) {
+                int[] cells = position.getCells();
+                int expected = bruteForce( level, distances, reach, cells );
+                assertEquals( "Level " + number + ", move " + i, expected,
+                        heuristic.estimate( cells ) );
+                if ( expected != Heuristic.DEAD ) {
+                    finite++;
+                }
+                
+                int atom = random.nextInt( cells.length );
+                position.move( atom, position.slide( atom,
+                        random.nextInt( Level.DIRECTIONS ) ) );
+                if ( random.nextInt( 10 ) == 0 ) {
+                    position.set( randomPosition( level, distances,
+                            random ) );
+                }
+            }
+        }
+        assertTrue( tested > 0 );
+        assertTrue( finite > tested * MOVES / 2 );
+    }
+    
+    /**
+     * Returns whether the goal has more than one atom of some type.
+     * 
+     * @param   level   the level
+     * 
+     * @return          <tt>true</tt> if a goal type repeats
+     */
+    private static boolean hasRepeatedGoalType( Level level ) {
+        for ( int i = 0; i < level.getGoalAtomCount(); i++ ) {
+            for ( int j = i + 1; j < level.getGoalAtomCount(); j++ ) {
+                if ( level.getGoalType( i ) == level.getGoalType( j ) ) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Works out the estimate by trying every assignment of atoms to goal
+     * squares at every feasible placement.
+     * 
+     * @param   level       the level
+     * @param   distances   the level's slide distances
+     * @param   reach       the level's reachability analysis
+     * @param   cells       the square of every atom
+     * 
+     * @return              the least total distance over the placements, or
+     *                      <tt>Heuristic.DEAD</tt>
+     */
+    private static int bruteForce( Level level, SlideDistances distances,
+            Reachability reach, int[] cells ) {
+        int goalAtoms = level.getGoalAtomCount();
+        int best = Heuristic.DEAD;
+        for ( int p = 0; p < reach.getPlacementCount(); p++ ) {
+            int origin = reach.getPlacementOrigin( p );
+            int[][] cost = new int[ goalAtoms ][ cells.length ];
+            for ( int i = 0; i < goalAtoms; i++ ) {
+                int target = origin + level.getGoalOffset( i );
+                for ( int atom = 0; atom < cells.length; atom++ ) {
+                    int d = distances.get( cells[ atom ], target );
+                    boolean fits = ( level.getType( level.getAtom( atom ) )
+                            == level.getGoalType( i ) )
+                            && Bitboard.get( reach.getReaching( p, i ),
+                            cells[ atom ] )
+                            && ( d != SlideDistances.UNREACHABLE );
+                    cost[ i ][ atom ] = ( fits ? d : -1 );
+                }
+            }
+            int total = assign( cost, 0, new boolean[ cells.length ] );
+            best = Math.min( best, total );
+        }
+        return best;
+    }
+    
+    /**
+     * Returns the least total cost of giving each goal square from
+     * <tt>i</tt> on a different unused atom.
+     * 
+     * @param   cost    the cost of each atom for each goal square, or -1 if
+     *                  it can't go there
+     * @param   i       the first goal square to fill
+     * @param   used    the atoms already given to a goal square
+     * 
+     * @return          the least total cost, or <tt>Heuristic.DEAD</tt>
+     */
+    private static int assign( int[][] cost, int i, boolean[] used ) {
+        if ( i == cost.length ) {
+            return 0;
+        }
+        int best = Heuristic.DEAD;
+        for ( int atom = 0; atom < used.length; atom++ ) {
+            if ( ! used[ atom ] && ( cost[ i ][ atom ] >= 0 ) ) {
+                used[ atom ] = true;
+                int rest = assign( cost, i + 1, used );
+                used[ atom ] = false;
+                if ( rest != Heuristic.DEAD ) {
+                    best = Math.min( best, cost[ i ][ atom ] + rest );
+                }
+            }
+        }
+        return best;
+    }
+    
+    /**
+     * Returns a position with every atom on a different random open square.
+     * 
+     * @param   level       the level
+     * @param   distances   the level's slide distances
+     * @param   random      the source of randomness
+     * 
+     * @return              the square of every atom
+     */
+    private static int[] randomPosition( Level level,
+            SlideDistances distances, Random random ) {
+        StateCodec codec = distances.getCodec();
+        int open = codec.getOpenCount();
+        boolean[] taken = new boolean[ open ];
+        int[] cells = new int[ level.getAtomCount() ];
+        for ( int atom = 0; atom < cells.length; atom++ ) {
+            int index;
+            do {
+                index = random.nextInt( open );
+            } while ( taken[ index ] );
+            taken[ index ] = true;
+            cells[ atom ] = codec.cellOf( index );
+        }
+        return cells;
+    }
+    
+} // AssignmentHeuristicTest
@@ -0,0 +1,342 @@
+/*
+ * ExternalBreadthFirstSolverTest.java
+ *
+ * Version:
+ *      $Id$
+ *
+ * Copyright (c) 2009 Peter O. Erickson
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package edu.rit.poe.atomix.levels.solver;
+
+import edu.rit.poe.atomix.levels.Level;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Random;
+import junit.framework.TestCase;
+
+/**
+ * Checks the key files of an <tt>ExternalBreadthFirstSolver</tt>, and that a
+ * search stopped part way picks up from its checkpoint and still finds a
+ * shortest solution.
+ * 
+ * @author  Peter O. Erickson
+ * 
+ * @version $Id$
+ */
+public class ExternalBreadthFirstSolverTest extends TestCase {
+    
+    /** The directory the tests work in. */
+    private File directory;
+    
+    @Override
+    protected void setUp() throws Exception {
+        directory = File.createTempFile( "atomix", ".test" );
+        if ( ! directory.delete() || ! directory.mkdir() ) {
+            throw new IOException( "Can't make " + directory );
+        }
+    }
+    
+    @Override
+    protected void tearDown() throws Exception {
+        Thread.interrupted();
+        delete( directory );
+    }
+    
+    public void testKeysOneWord() throws Exception {
+        long[] keys = {
+            Long.MIN_VALUE, Long.MIN_VALUE + 1, -1L << 40, -300, -1, 0, 0,
+            1, 127, 128, 1L << 40, Long.MAX_VALUE - 1, Long.MAX_VALUE
+        };
+        assertRoundTrip( keys, 1 );
+        assertRoundTrip( randomKeys( 50000, 1, new Random( 1 ) ), 1 );
+    }
+    
+    public void testKeysTwoWords() throws Exception {
+        long[] keys = {
+            Long.MIN_VALUE, Long.MIN_VALUE,
+            Long.MIN_VALUE, -1,
+            Long.MIN_VALUE, Long.MAX_VALUE,
+            -5, Long.MIN_VALUE,
+            -5, -5,
+            -5, -5,
+            -5, 7,
+            -1, Long.MAX_VALUE,
+            0, Long.MIN_VALUE,
+            0, 0,
+            3, -2,
+            Long.MAX_VALUE, Long.MIN_VALUE,
+            Long.MAX_VALUE, Long.MAX_VALUE
+        };
+        assertRoundTrip( keys, 2 );
+        assertRoundTrip( randomKeys( 30000, 2, new Random( 2 ) ), 2 );
+        assertRoundTrip( randomKeys( 20000, 3, new Random( 3 ) ), 3 );
+    }
+    
+    public void testKeysEmpty() throws Exception {
+        assertRoundTrip( new long[ 0 ], 1 );
+        assertRoundTrip( new long[ 0 ], 2 );
+    }
+    
+    public void testKeysTruncated() throws Exception {
+        File file = new File( directory, "keys" );
+        ExternalBreadthFirstSolver.KeyWriter writer =
+                new ExternalBreadthFirstSolver.KeyWriter( file, 2 );
+        writer.write( new long[] { -1, Long.MIN_VALUE }, 0 );
+        writer.close();
+        RandomAccessFile access = new RandomAccessFile( file, "rw" );
+        try {
+            access.setLength( access.length() - 1 );
+        } finally {
+            access.close();
+        }
+        
+        ExternalBreadthFirstSolver.KeyReader reader =
+                new ExternalBreadthFirstSolver.KeyReader( file, 2 );
+        try {
+            reader.next( new long[ 2 ], 0 );
+            fail( "Read a truncated key" );
+        } catch ( IOException e ) {
+            // expected
+        } finally {
+            reader.close();
+        }
+    }
+    
+    public void testSolve() throws Exception {
+        ExternalBreadthFirstSolver solver =
+                new ExternalBreadthFirstSolver( SolverTest.loadLevel( 1 ) );
+        solver.setDirectory( directory );
+        solver.setBufferKeys( 100 );
+        SolverTest.assertSolves( solver, SolverTest.LEVEL_1_MOVES );
+        assertEquals( 0, directory.list().length );
+        
+        solver = new ExternalBreadthFirstSolver( SolverTest.loadLevel( 10 ) );
+        solver.setDirectory( directory );
+        SolverTest.assertSolves( solver, SolverTest.LEVEL_10_MOVES );
+        assertEquals( 0, directory.list().length );
+    }
+    
+    public void testNoStateLimit() throws Exception {
+        ExternalBreadthFirstSolver solver =
+                new ExternalBreadthFirstSolver( SolverTest.loadLevel( 1 ) );
+        assertEquals( ExternalBreadthFirstSolver.NO_STATE_LIMIT,
+                solver.getStateLimit() );
+        assertFalse( solver.isOverLimit( Integer.MAX_VALUE ) );
+        assertFalse( solver.isOverLimit( Integer.MAX_VALUE + 1L ) );
+        assertFalse( solver.isOverLimit( 1L << 40 ) );
+        assertFalse( solver.isOverLimit( Long.MAX_VALUE ) );
+        
+        solver.setStateLimit( 5000 );
+        assertFalse( solver.isOverLimit( 5000 ) );
+        assertTrue( solver.isOverLimit( 5001 ) );
+        assertTrue( solver.isOverLimit( 1L << 40 ) );
+    }
+    
+    public void testStateLimitResume() throws Exception {
+        Level level = SolverTest.loadLevel( 10 );
+        ExternalBreadthFirstSolver solver =
+                new ExternalBreadthFirstSolver( level );
+        solver.setCheckpoint( directory );
+        solver.setBufferKeys( 1000 );
+        solver.setStateLimit( 5000 );
+        assertNull( solver.solve() );
+        assertTrue( new File( directory, "checkpoint" ).isFile() );
+        
+        // a new solver, as after a restart, carries on from the checkpoint
+        solver = new ExternalBreadthFirstSolver( level );
+        solver.setCheckpoint( directory );
+        solver.setBufferKeys( 1000 );
+        SolverTest.assertSolves( solver, SolverTest.LEVEL_10_MOVES );
+        assertEquals( 0, directory.list().length );
+    }
+    
+    public void testInterruptResume() throws Exception {
+        ExternalBreadthFirstSolver solver =
+                new ExternalBreadthFirstSolver( SolverTest.loadLevel( 1 ) );
+        solver.setCheckpoint( directory );
+        solver.setBufferKeys( 100 );
+        
+        // every call stops at the next checkpoint, so it only gets done if
+        // each call picks up where the last one stopped
+        Solution solution = null;
+        int calls = 0;
+        while ( solution == null ) {
+            assertTrue( "Search isn't making progress", calls++ < 10000 );
+            Thread.currentThread().interrupt();
+            solution = solver.solve();
+            if ( solution == null ) {
+                assertTrue( Thread.interrupted() );
+                assertTrue( new File( directory, "checkpoint" ).isFile() );
+            }
+        }
+        Thread.interrupted();
+        assertTrue( calls > 10 );
+        assertEquals( SolverTest.LEVEL_1_MOVES, solution.getLength() );
+        SolverTest.assertReplays( solver.getLevel(), solution );
+        assertEquals( 0, directory.list().length );
+    }
+    
+    public void testOtherCheckpoint() throws Exception {
+        ExternalBreadthFirstSolver solver =
+                new ExternalBreadthFirstSolver( SolverTest.loadLevel( 10 ) );
+        solver.setCheckpoint( directory );
+        solver.setStateLimit( 5000 );
+        assertNull( solver.solve() );
+        
+        // the checkpoint is for another level, so this one starts afresh
+        solver = new ExternalBreadthFirstSolver( SolverTest.loadLevel( 1 ) );
+        solver.setCheckpoint( directory );
+        SolverTest.assertSolves( solver, SolverTest.LEVEL_1_MOVES );
+        assertEquals( 0, directory.list().length );
+    }
+    
+    public void testBadCheckpoint() throws Exception {
+        FileOutputStream out = new FileOutputStream(
+                new File( directory, "checkpoint" ) );
+        try {
+            out.write( new byte[] { 0x41, 0x42, 0x46 } );
+        } finally {
+            out.close();
+        }
+        
+        ExternalBreadthFirstSolver solver =
+                new ExternalBreadthFirstSolver( SolverTest.loadLevel( 1 ) );
+        solver.setCheckpoint( directory );
+        SolverTest.assertSolves( solver, SolverTest.LEVEL_1_MOVES );
+        assertEquals( 0, directory.list().length );
+    }
+    
+    /**
+     * Writes keys to a file and checks that they read back the same.
+     * 
+     * @param   keys    the keys, in order, one after another
+     * @param   words   the number of words in a key
+     * 
+     * @throws  IOException if the file can't be written or read
+     */
+    private void assertRoundTrip( long[] keys, int words )
+            throws IOException {
+        File file = new File( directory, "keys" );
+        ExternalBreadthFirstSolver.KeyWriter writer =
+                new ExternalBreadthFirstSolver.KeyWriter( file, words );
+        try {
+            for ( int i = 0; i < keys.length; i += words ) {
+                writer.write( keys, i );
+            }
+        } finally {
+            writer.close();
+        }
+        assertEquals( keys.length / words, writer.getCount() );
+        
+        long[] read = new long[ keys.length + words ];
+        ExternalBreadthFirstSolver.KeyReader reader =
+                new ExternalBreadthFirstSolver.KeyReader( file, words );
+        try {
+            int count = 0;
+            while ( reader.next( read, count * words ) ) {
+                count++;
+                assertTrue( count * words <= keys.length );
+            }
+            assertEquals( keys.length / words, count );
+        } finally {
+            reader.close();
+        }
+        assertTrue( Arrays.equals( keys,
+                copyOf( read, keys.length ) ) );
+        file.delete();
+    }
+    
+    /**
+     * Returns random keys in order, some sharing leading words and some
+     * repeated, as a sorted layer would hold them.
+     * 
+     * @param   count   the number of keys
+     * @param   words   the number of words in a key
+     * @param   random  the source of randomness
+     * 
+     * @return          the keys, one after another
+     */
+    private static long[] randomKeys( int count, int words, Random random ) {
+        long[][] keys = new long[ count ][ words ];
+        for ( int i = 0; i < count; i++ ) {
+            for ( int w = 0; w < words; w++ ) {
+                switch ( random.nextInt( 4 ) ) {
+                    case 0:
+                        keys[ i ][ w ] = random.nextLong();
+                        break;
+                    case 1:
+                        keys[ i ][ w ] = random.nextInt( 5 ) - 2;
+                        break;
+                    default:
+                        keys[ i ][ w ] = ( i > 0 ? keys[ i - 1 ][ w ] : 0 );
+                        break;
+                }
+            }
+        }
+        Arrays.sort( keys, new java.util.Comparator<long[]>() {
+            public int compare( long[] a, long[] b ) {
+                for ( int w = 0; w < a.length; w++ ) {
+                    if ( a[ w ] != b[ w ] ) {
+                        return ( a[ w ] < b[ w ] ? -1 : 1 );
+                    }
+                }
+                return 0;
+            }
+        } );
+        
+        long[] flat = new long[ count * words ];
+        for ( int i = 0; i < count; i++ ) {
+            System.arraycopy( keys[ i ], 0, flat, i * words, words );
+        }
+        return flat;
+    }
+    
+    /**
+     * Returns the first elements of an array.
+     * 
+     * @param   array   the array
+     * @param   length  the number of elements
+     * 
+     * @return          a new array of the first elements
+     */
+    private static long[] copyOf( long[] array, int length ) {
+        long[] copy = new long[ length ];
+        System.arraycopy( array, 0, copy, 0, length );
+        return copy;
+    }
+    
+    /**
+     * Deletes a file, or a directory and everything in it.
+     * 
+     * @param   file    the file or directory
+     */
+    private static void delete( File file ) {
+        File[] files = file.listFiles();
+        if ( files != null ) {
+            for ( File child : files ) {
+                delete( child );
+            }
+        }
+        file.delete();
+    }
+    
+} // ExternalBreadthFirstSolverTest
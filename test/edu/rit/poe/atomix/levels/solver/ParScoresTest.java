@@ -0,0 +1,189 @@
+/*
+ * ParScoresTest.java
+ *
+ * Version:
+ *      $Id$
+ *
+ * Copyright (c) 2009 Peter O. Erickson
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package edu.rit.poe.atomix.levels.solver;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import junit.framework.TestCase;
+
+/**
+ * Runs <tt>ParScores</tt> over a directory holding copies of two shipped
+ * levels, and checks the line it prints for each.
+ * 
+ * @author  Peter O. Erickson
+ * 
+ * @version $Id$
+ */
+public class ParScoresTest extends TestCase {
+    
+    /** The directory of level files. */
+    private File directory;
+    
+    @Override
+    protected void setUp() throws Exception {
+        directory = File.createTempFile( "atomix", ".test" );
+        if ( ! directory.delete() || ! directory.mkdir() ) {
+            throw new IOException( "Can't make " + directory );
+        }
+        copy( new File( "assets/levels", "level1.level" ),
+                new File( directory, "level1.level" ) );
+        copy( new File( "assets/levels", "level10.level" ),
+                new File( directory, "level2.level" ) );
+    }
+    
+    @Override
+    protected void tearDown() throws Exception {
+        for ( File file : directory.listFiles() ) {
+            file.delete();
+        }
+        directory.delete();
+    }
+    
+    public void testRun() throws Exception {
+        for ( String name : new String[] { "astar", "ida", "bfs" } ) {
+            ParScores parScores = new ParScores();
+            parScores.setSolverName( name );
+            List<String[]> lines = new ArrayList<String[]>();
+            assertEquals( 2, run( parScores, lines ) );
+            assertEquals( 3, lines.size() );
+            assertEquals( "moves", lines.get( 0 )[ 2 ] );
+            assertLine( lines.get( 1 ), 1, SolverTest.LEVEL_1_MOVES );
+            assertLine( lines.get( 2 ), 10, SolverTest.LEVEL_10_MOVES );
+        }
+    }
+    
+    public void testOnlyLevel() throws Exception {
+        ParScores parScores = new ParScores();
+        parScores.setOnlyLevel( 2 );
+        List<String[]> lines = new ArrayList<String[]>();
+        assertEquals( 1, run( parScores, lines ) );
+        assertEquals( 2, lines.size() );
+        assertLine( lines.get( 1 ), 10, SolverTest.LEVEL_10_MOVES );
+    }
+    
+    public void testGiveUp() throws Exception {
+        ParScores parScores = new ParScores();
+        parScores.setSolverName( "bfs" );
+        parScores.setStateLimit( 100 );
+        List<String[]> lines = new ArrayList<String[]>();
+        assertEquals( 0, run( parScores, lines ) );
+        assertEquals( 3, lines.size() );
+        assertEquals( "-", lines.get( 2 )[ 2 ] );
+        assertEquals( "-", lines.get( 2 )[ 3 ] );
+        
+        parScores.setSolverName( "ida" );
+        parScores.setNodeLimit( 100 );
+        lines.clear();
+        assertEquals( 0, run( parScores, lines ) );
+        assertEquals( "-", lines.get( 1 )[ 2 ] );
+    }
+    
+    public void testUnknownSolver() {
+        try {
+            new ParScores().setSolverName( "dfs" );
+            fail( "Accepted an unknown solver" );
+        } catch ( IllegalArgumentException e ) {
+            // expected
+        }
+    }
+    
+    /**
+     * Runs a <tt>ParScores</tt> over the test directory and splits the
+     * lines it prints into their fields.
+     * 
+     * @param   parScores   the <tt>ParScores</tt> to run
+     * @param   lines       the list to add the fields of every line to
+     * 
+     * @return              the number of levels solved
+     * 
+     * @throws  IOException if a level file can't be read
+     */
+    private int run( ParScores parScores, List<String[]> lines )
+            throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream( bytes, true );
+        int solved = parScores.run( directory, out );
+        out.close();
+        
+        BufferedReader in = new BufferedReader( new StringReader(
+                bytes.toString() ) );
+        for ( String line; ( line = in.readLine() ) != null; ) {
+            String[] fields = line.split( "\t" );
+            assertEquals( line, 5, fields.length );
+            lines.add( fields );
+        }
+        return solved;
+    }
+    
+    /**
+     * Checks the line printed for a solved level.
+     * 
+     * @param   fields  the fields of the line
+     * @param   level   the level number
+     * @param   moves   the length of a shortest solution
+     */
+    private static void assertLine( String[] fields, int level, int moves ) {
+        assertEquals( level, Integer.parseInt( fields[ 0 ] ) );
+        assertEquals( moves, Integer.parseInt( fields[ 2 ] ) );
+        assertTrue( Long.parseLong( fields[ 3 ] ) > 0 );
+        assertTrue( Long.parseLong( fields[ 4 ] ) >= 0 );
+    }
+    
+    /**
+     * Copies a file.
+     * 
+     * @param   from    the file to copy
+     * @param   to      the copy
+     * 
+     * @throws  IOException if either file can't be opened
+     */
+    private static void copy( File from, File to ) throws IOException {
+        InputStream in = new FileInputStream( from );
+        try {
+            OutputStream out = new FileOutputStream( to );
+            try {
+                byte[] buffer = new byte[ 4096 ];
+                for ( int n; ( n = in.read( buffer ) ) > 0; ) {
+                    out.write( buffer, 0, n );
+                }
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+    }
+    
+} // ParScoresTest
@@ -0,0 +1,228 @@
+/*
+ * PatternDatabaseTest.java
+ *
+ * Version:
+ *      $Id$
+ *
+ * Copyright (c) 2009 Peter O. Erickson
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package edu.rit.poe.atomix.levels.solver;
+
+import edu.rit.poe.atomix.levels.Level;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import junit.framework.TestCase;
+
+/**
+ * Checks that a <tt>PatternDatabase</tt> reads back what it saved, and that
+ * a damaged or mismatched saved database is refused.
+ * 
+ * @author  Peter O. Erickson
+ * 
+ * @version $Id$
+ */
+public class PatternDatabaseTest extends TestCase {
+    
+    /** The number of random positions looked up in each database. */
+    private static final int POSITIONS = 500;
+    
+    /** The level the databases are built for. */
+    private Level level;
+    
+    @Override
+    protected void setUp() throws Exception {
+        level = SolverTest.loadLevel( 10 );
+    }
+    
+    public void testSaveLoad() throws Exception {
+        PatternDatabase database = new PatternDatabase( level, 2 );
+        assertTrue( database.getPatternCount() > 0 );
+        int placements = database.getReachability().getPlacementCount();
+        assertTrue( placements > 1 );
+        
+        // build the tables of every other placement only
+        Random random = new Random( 1 );
+        int[][] positions = new int[ POSITIONS ][];
+        for ( int i = 0; i < POSITIONS; i++ ) {
+            positions[ i ] = randomPosition( random );
+        }
+        for ( int p = 0; p < placements; p += 2 ) {
+            for ( int k = 0; k < database.getPatternCount(); k++ ) {
+                database.get( p, k, positions[ 0 ] );
+            }
+        }
+        
+        PatternDatabase loaded = PatternDatabase.load( level,
+                new ByteArrayInputStream( save( database ) ) );
+        assertEquals( database.getPatternSize(), loaded.getPatternSize() );
+        assertEquals( database.getBytes(), loaded.getBytes() );
+        assertSame( loaded, PatternDatabase.get( level, 2 ) );
+        
+        // the loaded tables answer the same, and the missing ones are built
+        // the same
+        for ( int[] cells : positions ) {
+            for ( int p = 0; p < placements; p++ ) {
+                for ( int k = 0; k < database.getPatternCount(); k++ ) {
+                    assertEquals( database.get( p, k, cells ),
+                            loaded.get( p, k, cells ) );
+                }
+            }
+        }
+        assertEquals( database.getBytes(), loaded.getBytes() );
+    }
+    
+    public void testOtherLevel() throws Exception {
+        byte[] saved = save( new PatternDatabase( level, 2 ) );
+        assertRefused( SolverTest.loadLevel( 1 ), saved );
+        saved[ 0 ] ^= 1;
+        assertRefused( level, saved );
+    }
+    
+    public void testBadSize() throws Exception {
+        byte[] saved = save( new PatternDatabase( level, 2 ) );
+        for ( int size : new int[] { -1, 0,
+                PatternDatabase.MAX_PATTERN_SIZE + 1 } ) {
+            assertRefused( level, rewrite( saved, size, 0, 0, 0 ) );
+        }
+    }
+    
+    public void testBadTable() throws Exception {
+        PatternDatabase database = new PatternDatabase( level, 2 );
+        database.get( 0, 0, level.getStart() );
+        byte[] saved = save( database );
+        int entries = ( int )database.getBytes();
+        
+        // short and long tables, and pattern numbers out of range
+        assertRefused( level, rewrite( saved, 2, 0, 0, -1 ) );
+        assertRefused( level, rewrite( saved, 2, 0, 0, 1 ) );
+        assertRefused( level, rewrite( saved, 2, 0, -1, 0 ) );
+        assertRefused( level, rewrite( saved, 2, 0,
+                database.getPatternCount(), 0 ) );
+        assertRefused( level, rewrite( saved, 2,
+                database.getReachability().getPlacementCount(), 0, 0 ) );
+        
+        // and the unchanged copy loads
+        assertEquals( entries, PatternDatabase.load( level,
+                new ByteArrayInputStream( rewrite( saved, 2, 0, 0, 0 ) ) )
+                .getBytes() );
+    }
+    
+    /**
+     * Saves a database.
+     * 
+     * @param   database    the database
+     * 
+     * @return              the saved bytes
+     * 
+     * @throws  IOException if the database can't be saved
+     */
+    private static byte[] save( PatternDatabase database )
+            throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        database.save( out );
+        return out.toByteArray();
+    }
+    
+    /**
+     * Copies a saved database with at most one table, changing its pattern
+     * size and the header and length of its table.
+     * 
+     * @param   saved   the saved database
+     * @param   size    the pattern size to write
+     * @param   p       the placement to write for the table
+     * @param   k       the pattern to write for the table
+     * @param   extra   the number of bytes to add to the table (or remove,
+     *                  if negative)
+     * 
+     * @return          the changed copy
+     * 
+     * @throws  IOException if the copy can't be made
+     */
+    private static byte[] rewrite( byte[] saved, int size, int p, int k,
+            int extra ) throws IOException {
+        DataInputStream in = new DataInputStream(
+                new ByteArrayInputStream( saved ) );
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream( bytes );
+        out.writeInt( in.readInt() );
+        out.writeLong( in.readLong() );
+        in.readInt();
+        out.writeInt( size );
+        if ( in.readInt() >= 0 ) {
+            in.readInt();
+            byte[] table = new byte[ in.readInt() ];
+            in.readFully( table );
+            in.readInt();
+            out.writeInt( p );
+            out.writeInt( k );
+            out.writeInt( table.length + extra );
+            out.write( table, 0, Math.min( table.length,
+                    table.length + extra ) );
+            for ( int i = 0; i < extra; i++ ) {
+                out.write( 0 );
+            }
+        }
+        out.writeInt( -1 );
+        out.flush();
+        return bytes.toByteArray();
+    }
+    
+    /**
+     * Checks that a saved database won't load.
+     * 
+     * @param   level   the level to load it for
+     * @param   saved   the saved database
+     */
+    private static void assertRefused( Level level, byte[] saved ) {
+        try {
+            PatternDatabase.load( level, new ByteArrayInputStream( saved ) );
+            fail( "Loaded a bad database" );
+        } catch ( IOException e ) {
+            // expected
+        }
+    }
+    
+    /**
+     * Returns a position with every atom on a different random open square.
+     * 
+     * @param   random  the source of randomness
+     * 
+     * @return          the square of every atom
+     */
+    private int[] randomPosition( Random random ) {
+        StateCodec codec = new StateCodec( level );
+        int open = codec.getOpenCount();
+        boolean[] taken = new boolean[ open ];
+        int[] cells = new int[ level.getAtomCount() ];
+        for ( int atom = 0; atom < cells.length; atom++ ) {
+            int index;
+            do {
+                index = random.nextInt( open );
+            } while ( taken[ index ] );
+            taken[ index ] = true;
+            cells[ atom ] = codec.cellOf( index );
+        }
+        return cells;
+    }
+    
+} // PatternDatabaseTest
@@ -0,0 +1,102 @@
+/*
+ * ReachabilityTest.java
+ *
+ * Version:
+ *      $Id$
+ *
+ * Copyright (c) 2009 Peter O. Erickson
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package edu.rit.poe.atomix.levels.solver;
+
+import edu.rit.poe.atomix.levels.Level;
+import edu.rit.poe.atomix.levels.Moves;
+import java.io.ByteArrayInputStream;
+import junit.framework.TestCase;
+
+/**
+ * Checks a <tt>Reachability</tt> analysis on a hand-built level that can
+ * never be solved, and that it never calls a position on the way to a real
+ * solution dead.
+ * 
+ * @author  Peter O. Erickson
+ * 
+ * @version $Id$
+ */
+public class ReachabilityTest extends TestCase {
+    
+    /**
+     * Two rooms with an atom in each.  The goal needs the atoms side by
+     * side, and neither can get into the other's room.
+     */
+    private static final String WALLED_OFF = "level:\n99\n"
+            + "name:\nWalled off\nformula:\nH_2\nsize:\n8X3\n"
+            + "molecules:\n1 H -r\n2 H -l\n"
+            + "map:\n"
+            + "XXXXXXXX\n"
+            + "X1  X 2X\n"
+            + "XXXXXXXX\n"
+            + "goal_size:\n2X1\ngoal:\n12\n";
+    
+    public void testWalledOff() throws Exception {
+        Level level = Level.loadLevel( new ByteArrayInputStream(
+                WALLED_OFF.getBytes( "US-ASCII" ) ) );
+        Reachability reach = new Reachability( level );
+        int left = level.getType( level.getAtom( 0 ) );
+        int right = level.getType( level.getAtom( 1 ) );
+        
+        // the left atom stops against either wall of its room, never between
+        assertTrue( reach.canReach( left, level.cell( 1, 1 ) ) );
+        assertTrue( reach.canReach( left, level.cell( 3, 1 ) ) );
+        assertFalse( reach.canReach( left, level.cell( 2, 1 ) ) );
+        assertFalse( reach.canReach( left, level.cell( 5, 1 ) ) );
+        assertTrue( reach.canReach( right, level.cell( 5, 1 ) ) );
+        assertFalse( reach.canReach( right, level.cell( 2, 1 ) ) );
+        
+        // the goal fits in three places, and each needs an atom on a square
+        // it can't reach
+        assertEquals( 3, level.getPlacementCount() );
+        assertEquals( 0, reach.getPlacementCount() );
+        assertTrue( reach.isDead( level.getStart() ) );
+        assertFalse( reach.isSolvable() );
+    }
+    
+    public void testSolutionNeverDead() throws Exception {
+        Level level = SolverTest.loadLevel( 1 );
+        Reachability reach = new Reachability( level );
+        assertTrue( reach.isSolvable() );
+        assertTrue( reach.getPlacementCount() > 0 );
+        for ( int p = 0; p < reach.getPlacementCount(); p++ ) {
+            int origin = reach.getPlacementOrigin( p );
+            for ( int i = 0; i < level.getGoalAtomCount(); i++ ) {
+                assertTrue( reach.canReach( level.getGoalType( i ),
+                        origin + level.getGoalOffset( i ) ) );
+            }
+        }
+        
+        Solution solution = SolverTest.assertSolves(
+                new BreadthFirstSolver( level ), SolverTest.LEVEL_1_MOVES );
+        Position position = new Position( level );
+        assertFalse( reach.isDead( position.getCells() ) );
+        for ( int move : solution.getMoves() ) {
+            position.move( Moves.getAtom( move ), Moves.getTo( move ) );
+            assertFalse( reach.isDead( position.getCells() ) );
+        }
+    }
+    
+} // ReachabilityTest
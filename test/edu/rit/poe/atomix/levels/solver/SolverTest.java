@@ -0,0 +1,235 @@
+/*
+ * SolverTest.java
+ *
+ * Version:
+ *      $Id$
+ *
+ * Copyright (c) 2009 Peter O. Erickson
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package edu.rit.poe.atomix.levels.solver;
+
+import edu.rit.poe.atomix.levels.Level;
+import edu.rit.poe.atomix.levels.Moves;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import junit.framework.TestCase;
+
+/**
+ * Checks that every solver finds a shortest solution to a few small levels,
+ * and that each solution really solves its level when played back.
+ * 
+ * @author  Peter O. Erickson
+ * 
+ * @version $Id$
+ */
+public class SolverTest extends TestCase {
+    
+    /** The length of a shortest solution to level 1. */
+    static final int LEVEL_1_MOVES = 13;
+    
+    /** The length of a shortest solution to level 10. */
+    static final int LEVEL_10_MOVES = 18;
+    
+    public void testBreadthFirst() throws Exception {
+        assertSolves( new BreadthFirstSolver( loadLevel( 1 ) ),
+                LEVEL_1_MOVES );
+        assertSolves( new BreadthFirstSolver( loadLevel( 10 ) ),
+                LEVEL_10_MOVES );
+    }
+    
+    public void testAStar() throws Exception {
+        assertSolves( new AStarSolver( loadLevel( 1 ) ), LEVEL_1_MOVES );
+        assertSolves( new AStarSolver( loadLevel( 10 ) ), LEVEL_10_MOVES );
+        
+        Level level = loadLevel( 10 );
+        assertSolves( new AStarSolver( level, new PatternHeuristic( level ) ),
+                LEVEL_10_MOVES );
+        
+        // estimates past the top of an entry are clamped, and still sort last
+        assertPollOrder(
+                AStarSolver.entry( 0, 3, 0 ),
+                AStarSolver.entry( 1, AStarSolver.MAX_ESTIMATE - 1, 0 ),
+                AStarSolver.entry( 2, 0x9000, 0 ),
+                AStarSolver.entry( 3, Integer.MAX_VALUE - 1, 0 ) );
+    }
+    
+    public void testIdaStar() throws Exception {
+        assertSolves( new IdaStarSolver( loadLevel( 1 ) ), LEVEL_1_MOVES );
+        assertSolves( new IdaStarSolver( loadLevel( 10 ) ), LEVEL_10_MOVES );
+    }
+    
+    public void testIdaStarReducing() throws Exception {
+        for ( int number : new int[] { 1, 10 } ) {
+            IdaStarSolver reduced = new IdaStarSolver( loadLevel( number ) );
+            reduced.setReducing( true );
+            Solution solution = reduced.solve();
+            assertNotNull( solution );
+            
+            IdaStarSolver full = new IdaStarSolver( loadLevel( number ) );
+            full.setReducing( false );
+            Solution fullSolution = full.solve();
+            assertNotNull( fullSolution );
+            
+            assertEquals( fullSolution.getLength(), solution.getLength() );
+            assertTrue( "Level " + number + ": " + reduced.getExpanded()
+                    + " expanded, against " + full.getExpanded(),
+                    reduced.getExpanded() < full.getExpanded() );
+            assertReplays( reduced.getLevel(), solution );
+            assertReplays( full.getLevel(), fullSolution );
+        }
+    }
+    
+    public void testBidirectional() throws Exception {
+        assertSolves( new BidirectionalSolver( loadLevel( 1 ) ),
+                LEVEL_1_MOVES );
+        assertSolves( new BidirectionalSolver( loadLevel( 10 ) ),
+                LEVEL_10_MOVES );
+    }
+    
+    public void testParallelBreadthFirst() throws Exception {
+        for ( int threads = 1; threads <= 3; threads++ ) {
+            ParallelBreadthFirstSolver solver =
+                    new ParallelBreadthFirstSolver( loadLevel( 10 ) );
+            solver.setThreads( threads );
+            assertSolves( solver, LEVEL_10_MOVES );
+        }
+        assertSolves( new ParallelBreadthFirstSolver( loadLevel( 1 ) ),
+                LEVEL_1_MOVES );
+    }
+    
+    public void testPlacement() throws Exception {
+        assertSolves( new PlacementSolver( loadLevel( 1 ) ), LEVEL_1_MOVES );
+        
+        PlacementSolver solver = new PlacementSolver( loadLevel( 10 ) );
+        solver.setThreads( 2 );
+        assertSolves( solver, LEVEL_10_MOVES );
+    }
+    
+    public void testAnytime() throws Exception {
+        AnytimeSolver solver = new AnytimeSolver( loadLevel( 10 ) );
+        solver.setTimeBudget( 60 * 1000 );
+        Solution solution = solver.solve();
+        assertNotNull( solution );
+        assertReplays( solver.getLevel(), solution );
+        while ( ! solver.isFinished() ) {
+            Solution better = solver.improve();
+            assertNotNull( better );
+            assertReplays( solver.getLevel(), better );
+            assertTrue( better.getLength() <= solution.getLength() );
+            solution = better;
+        }
+        assertEquals( LEVEL_10_MOVES, solution.getLength() );
+        assertEquals( LEVEL_10_MOVES, solver.getLowerBound() );
+        
+        // at a weight of 5.0, an estimate of 656 already fills 15 bits
+        assertPollOrder(
+                AnytimeSolver.entry( 0, 3, 0, 50 ),
+                AnytimeSolver.entry( 1, 600, 0, 50 ),
+                AnytimeSolver.entry( 2, 700, 0, 50 ),
+                AnytimeSolver.entry( 3, 1 << 30, 0, 50 ) );
+    }
+    
+    public void testStateLimit() throws Exception {
+        Solver solver = new BreadthFirstSolver( loadLevel( 10 ) );
+        solver.setStateLimit( 100 );
+        assertNull( solver.solve() );
+    }
+    
+    /**
+     * Loads a level from the level files.
+     * 
+     * @param   number  the number of the level
+     * 
+     * @return          the level
+     * 
+     * @throws  Exception   if the level can't be read
+     */
+    static Level loadLevel( int number ) throws Exception {
+        InputStream in = new FileInputStream( new File( "assets/levels",
+                "level" + number + ".level" ) );
+        try {
+            return Level.loadLevel( in );
+        } finally {
+            in.close();
+        }
+    }
+    
+    /**
+     * Solves the solver's level and checks that the solution has the
+     * specified length and solves the level.
+     * 
+     * @param   solver  the solver to run
+     * @param   length  the length of a shortest solution
+     * 
+     * @return          the solution
+     */
+    static Solution assertSolves( Solver solver, int length ) {
+        Solution solution = solver.solve();
+        assertNotNull( solution );
+        assertEquals( length, solution.getLength() );
+        assertReplays( solver.getLevel(), solution );
+        return solution;
+    }
+    
+    /**
+     * Plays a solution back from the start of its level, checking that every
+     * move slides the atom it names from where it is to where it says, and
+     * that the goal is complete after the last move and not before.
+     * 
+     * @param   level       the level
+     * @param   solution    the solution to play back
+     */
+    static void assertReplays( Level level, Solution solution ) {
+        Position position = new Position( level );
+        int[] moves = solution.getMoves();
+        assertEquals( moves.length, solution.getLength() );
+        for ( int i = 0; i < moves.length; i++ ) {
+            assertFalse( "Goal complete before move " + i,
+                    position.isComplete() );
+            int atom = Moves.getAtom( moves[ i ] );
+            assertEquals( Moves.getFrom( moves[ i ] ),
+                    position.getCells()[ atom ] );
+            int to = position.slide( atom, Moves.getDirection( moves[ i ] ) );
+            assertEquals( Moves.getTo( moves[ i ] ), to );
+            assertTrue( "Move " + i + " goes nowhere",
+                    to != Moves.getFrom( moves[ i ] ) );
+            position.move( atom, to );
+        }
+        assertTrue( position.isComplete() );
+    }
+    
+    /**
+     * Adds open list entries to a heap, last first, and checks that they
+     * come back out in the order given.
+     * 
+     * @param   entries the packed entries, in the order they should be
+     *                  polled
+     */
+    static void assertPollOrder( long... entries ) {
+        LongHeap open = new LongHeap( entries.length );
+        for ( int i = entries.length - 1; i >= 0; i-- ) {
+            open.add( entries[ i ] );
+        }
+        for ( int i = 0; i < entries.length; i++ ) {
+            assertEquals( entries[ i ], open.poll() );
+        }
+    }
+    
+} // SolverTest
@@ -0,0 +1,157 @@
+/*
+ * StateCodecTest.java
+ *
+ * Version:
+ *      $Id$
+ *
+ * Copyright (c) 2009 Peter O. Erickson
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package edu.rit.poe.atomix.levels.solver;
+
+import edu.rit.poe.atomix.levels.Level;
+import java.io.File;
+import java.util.Arrays;
+import java.util.Random;
+import junit.framework.TestCase;
+
+/**
+ * Checks that positions survive a trip through a <tt>StateCodec</tt>, and
+ * that only positions differing by a swap of identical atoms share a key.
+ * 
+ * @author  Peter O. Erickson
+ * 
+ * @version $Id$
+ */
+public class StateCodecTest extends TestCase {
+    
+    /** The number of random positions tried on each level. */
+    private static final int POSITIONS = 200;
+    
+    public void testRoundTrip() throws Exception {
+        Random random = new Random( 1 );
+        boolean multiWord = false;
+        for ( int number = 1; new File( "assets/levels",
+                "level" + number + ".level" ).exists(); number++ ) {
+            Level level = SolverTest.loadLevel( number );
+            StateCodec codec = new StateCodec( level );
+            int words = codec.getWords();
+            multiWord |= ( words > 1 );
+            
+            long[] key = new long[ words + 2 ];
+            long[] again = new long[ words + 2 ];
+            int[] cells = new int[ level.getAtomCount() ];
+            for ( int i = 0; i < POSITIONS; i++ ) {
+                int[] position = ( i == 0 ? level.getStart()
+                        : randomPosition( level, codec, random ) );
+                codec.encode( position, key, 1 );
+                codec.decode( key, 1, cells );
+                assertSameTypes( level, position, cells );
+                codec.encode( cells, again, 1 );
+                assertTrue( Arrays.equals( key, again ) );
+            }
+        }
+        assertTrue( "No level needs a multi-word key", multiWord );
+    }
+    
+    public void testIdenticalAtoms() throws Exception {
+        Random random = new Random( 2 );
+        for ( int number = 1; new File( "assets/levels",
+                "level" + number + ".level" ).exists(); number++ ) {
+            Level level = SolverTest.loadLevel( number );
+            StateCodec codec = new StateCodec( level );
+            long[] key = new long[ codec.getWords() ];
+            long[] other = new long[ codec.getWords() ];
+            
+            int[] position = randomPosition( level, codec, random );
+            codec.encode( position, key, 0 );
+            for ( int a = 0; a < position.length; a++ ) {
+                for ( int b = a + 1; b < position.length; b++ ) {
+                    int[] swapped = position.clone();
+                    swapped[ a ] = position[ b ];
+                    swapped[ b ] = position[ a ];
+                    codec.encode( swapped, other, 0 );
+                    assertEquals( sameType( level, a, b ),
+                            Arrays.equals( key, other ) );
+                }
+            }
+        }
+    }
+    
+    /**
+     * Returns whether two atoms are of the same type.
+     * 
+     * @param   level   the level
+     * @param   a       the index of one atom
+     * @param   b       the index of the other atom
+     * 
+     * @return          <tt>true</tt> if the atoms are interchangeable
+     */
+    private static boolean sameType( Level level, int a, int b ) {
+        return ( level.getType( level.getAtom( a ) )
+                == level.getType( level.getAtom( b ) ) );
+    }
+    
+    /**
+     * Returns a position with every atom on a different random open square.
+     * 
+     * @param   level   the level
+     * @param   codec   a codec for the level
+     * @param   random  the source of randomness
+     * 
+     * @return          the square of every atom, indexed by atom index
+     */
+    private static int[] randomPosition( Level level, StateCodec codec,
+            Random random ) {
+        int open = codec.getOpenCount();
+        boolean[] used = new boolean[ open ];
+        int[] cells = new int[ level.getAtomCount() ];
+        for ( int atom = 0; atom < cells.length; atom++ ) {
+            int index;
+            do {
+                index = random.nextInt( open );
+            } while ( used[ index ] );
+            used[ index ] = true;
+            cells[ atom ] = codec.cellOf( index );
+        }
+        return cells;
+    }
+    
+    /**
+     * Checks that two positions put the same types of atom on the same
+     * squares.
+     * 
+     * @param   level       the level
+     * @param   expected    the square of every atom in the first position
+     * @param   actual      the square of every atom in the second position
+     */
+    private static void assertSameTypes( Level level, int[] expected,
+            int[] actual ) {
+        for ( int a = 0; a < expected.length; a++ ) {
+            boolean found = false;
+            for ( int b = 0; b < actual.length; b++ ) {
+                if ( ( actual[ b ] == expected[ a ] )
+                        && sameType( level, a, b ) ) {
+                    found = true;
+                }
+            }
+            assertTrue( "Atom " + a + " went missing", found );
+        }
+    }
+    
+} // StateCodecTest
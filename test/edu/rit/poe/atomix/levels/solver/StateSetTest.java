@@ -0,0 +1,144 @@
+/*
+ * StateSetTest.java
+ *
+ * Version:
+ *      $Id$
+ *
+ * Copyright (c) 2009 Peter O. Erickson
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package edu.rit.poe.atomix.levels.solver;
+
+import edu.rit.poe.atomix.levels.Moves;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import junit.framework.TestCase;
+
+/**
+ * Checks a <tt>StateSet</tt> against a <tt>HashMap</tt> as it grows well
+ * past the capacity it was made for, and that it keeps every position's
+ * parent and move.
+ * 
+ * @author  Peter O. Erickson
+ * 
+ * @version $Id$
+ */
+public class StateSetTest extends TestCase {
+    
+    /** The number of keys added to each set. */
+    private static final int KEYS = 20000;
+    
+    public void testOneWord() {
+        assertLikeMap( 1, 0 );
+        assertLikeMap( 1, KEYS );
+    }
+    
+    public void testManyWords() {
+        assertLikeMap( 2, 1 );
+        assertLikeMap( 3, 100 );
+    }
+    
+    public void testPath() {
+        StateSet set = new StateSet( 1, 4 );
+        long[] key = new long[ 1 ];
+        for ( int n = 0; n < 10; n++ ) {
+            key[ 0 ] = n;
+            assertEquals( n, set.add( key, 0, n - 1,
+                    ( n == 0 ? Moves.NONE : n ) ) );
+        }
+        assertEquals( 0, set.getPath( 0 ).length );
+        assertTrue( Arrays.equals( new int[] { 1, 2, 3, 4 },
+                set.getPath( 4 ) ) );
+        assertEquals( -1, set.getParent( 0 ) );
+        assertEquals( Moves.NONE, set.getMove( 0 ) );
+        
+        // a shorter way to reach position 9, straight from position 2
+        set.setParent( 9, 2, 42 );
+        assertEquals( 2, set.getParent( 9 ) );
+        assertEquals( 42, set.getMove( 9 ) );
+        assertTrue( Arrays.equals( new int[] { 1, 2, 42 },
+                set.getPath( 9 ) ) );
+    }
+    
+    /**
+     * Adds random keys to a set, some of them more than once, and checks
+     * every answer against a map from key to position number.
+     * 
+     * @param   words       the number of words in a key
+     * @param   capacity    the capacity to create the set with
+     */
+    private static void assertLikeMap( int words, int capacity ) {
+        Random random = new Random( words * 31 + capacity );
+        StateSet set = new StateSet( words, capacity );
+        Map<List<Long>, Integer> map = new HashMap<List<Long>, Integer>();
+        
+        // draw from few enough keys that many are added twice, and keys that
+        // differ only in a later word
+        long[] key = new long[ words + 1 ];
+        for ( int i = 0; i < KEYS; i++ ) {
+            key[ 1 ] = random.nextInt( KEYS / 2 ) - KEYS / 4;
+            for ( int w = 1; w < words; w++ ) {
+                key[ w + 1 ] = random.nextInt( 2 );
+            }
+            List<Long> boxed = box( key, 1, words );
+            Integer expected = map.get( boxed );
+            assertEquals( ( expected == null ? -1 : expected.intValue() ),
+                    set.find( key, 1 ) );
+            
+            int n = set.add( key, 1, i - 1, i );
+            if ( expected == null ) {
+                assertEquals( map.size(), n );
+                map.put( boxed, n );
+            } else {
+                assertEquals( -1, n );
+            }
+            assertEquals( map.size(), set.size() );
+        }
+        
+        long[] keys = set.getKeys();
+        for ( Map.Entry<List<Long>, Integer> entry : map.entrySet() ) {
+            int n = entry.getValue();
+            assertEquals( entry.getKey(), box( keys, n * words, words ) );
+            long[] copy = new long[ words ];
+            System.arraycopy( keys, n * words, copy, 0, words );
+            assertEquals( n, set.find( copy, 0 ) );
+        }
+    }
+    
+    /**
+     * Copies a key into a list, to use as a map key.
+     * 
+     * @param   key     the array holding the key
+     * @param   offset  the index of the key's first word in the array
+     * @param   words   the number of words in the key
+     * 
+     * @return          the words of the key
+     */
+    private static List<Long> box( long[] key, int offset, int words ) {
+        List<Long> list = new ArrayList<Long>( words );
+        for ( int w = 0; w < words; w++ ) {
+            list.add( key[ offset + w ] );
+        }
+        return list;
+    }
+    
+} // StateSetTest
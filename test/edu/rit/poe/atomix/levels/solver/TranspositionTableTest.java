@@ -0,0 +1,220 @@
+/*
+ * TranspositionTableTest.java
+ *
+ * Version:
+ *      $Id$
+ *
+ * Copyright (c) 2009 Peter O. Erickson
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package edu.rit.poe.atomix.levels.solver;
+
+import edu.rit.poe.atomix.levels.Level;
+import edu.rit.poe.atomix.levels.Moves;
+import junit.framework.TestCase;
+
+/**
+ * Checks the replacement order, generations, statistics and byte budget of
+ * a <tt>TranspositionTable</tt>, and that IDA* stays optimal with a cache
+ * and a heuristic that says nothing.
+ * 
+ * @author  Peter O. Erickson
+ * 
+ * @version $Id$
+ */
+public class TranspositionTableTest extends TestCase {
+    
+    /**
+     * Hashes that all start their probe run at the first slot of a table of
+     * any size, since their low 32 bits are zero.
+     */
+    private static final long A = 1L << 32;
+    private static final long B = 2L << 32;
+    private static final long C = 3L << 32;
+    private static final long D = 4L << 32;
+    private static final long E = 5L << 32;
+    
+    public void testMissing() {
+        TranspositionTable table = new TranspositionTable( 1 << 10 );
+        assertEquals( TranspositionTable.MISSING, table.find( A ) );
+        table.store( A, 3, 42 );
+        assertEquals( TranspositionTable.MISSING, table.find( B ) );
+        assertEquals( TranspositionTable.MISSING, table.find( 0 ) );
+        
+        long data = table.find( A );
+        assertTrue( data != TranspositionTable.MISSING );
+        assertEquals( 3, TranspositionTable.getDepth( data ) );
+        assertEquals( 42, TranspositionTable.getMove( data ) );
+        assertTrue( table.isCurrent( data ) );
+        
+        // the same hash is overwritten in place, deeper or not
+        table.store( A, 1, Moves.NONE );
+        data = table.find( A );
+        assertEquals( 1, TranspositionTable.getDepth( data ) );
+        assertEquals( Moves.NONE, TranspositionTable.getMove( data ) );
+        assertEquals( 1, table.size() );
+    }
+    
+    public void testDepthPreferred() {
+        // a table of one probe run, so every hash competes for it
+        TranspositionTable table =
+                new TranspositionTable( TranspositionTable.MIN_BYTES );
+        assertEquals( 4, table.getCapacity() );
+        table.store( A, 5, 0 );
+        table.store( B, 2, 0 );
+        table.store( C, 9, 0 );
+        table.store( D, 7, 0 );
+        assertEquals( 4, table.size() );
+        
+        // the shallowest entry goes, even for a shallower one
+        table.store( E, 1, 0 );
+        assertEquals( TranspositionTable.MISSING, table.find( B ) );
+        assertEquals( 1, TranspositionTable.getDepth( table.find( E ) ) );
+        
+        table.store( B, 6, 0 );
+        assertEquals( TranspositionTable.MISSING, table.find( E ) );
+        assertEquals( 5, TranspositionTable.getDepth( table.find( A ) ) );
+        assertEquals( 9, TranspositionTable.getDepth( table.find( C ) ) );
+        assertEquals( 7, TranspositionTable.getDepth( table.find( D ) ) );
+        assertEquals( 6, TranspositionTable.getDepth( table.find( B ) ) );
+        assertEquals( 4, table.size() );
+    }
+    
+    public void testOlderGenerationFirst() {
+        TranspositionTable table =
+                new TranspositionTable( TranspositionTable.MIN_BYTES );
+        table.store( A, 100, 0 );
+        table.store( B, 1, 0 );
+        table.nextGeneration();
+        assertFalse( table.isCurrent( table.find( A ) ) );
+        table.store( C, 50, 0 );
+        table.store( D, 60, 0 );
+        
+        // the old entries go first, the deep one too, before any current one
+        table.store( E, 2, 0 );
+        assertEquals( TranspositionTable.MISSING, table.find( B ) );
+        table.store( B, 3, 0 );
+        assertEquals( TranspositionTable.MISSING, table.find( A ) );
+        
+        // then the shallowest current one
+        table.store( A, 4, 0 );
+        assertEquals( TranspositionTable.MISSING, table.find( E ) );
+        assertTrue( table.isCurrent( table.find( A ) ) );
+        assertTrue( table.isCurrent( table.find( B ) ) );
+        assertTrue( table.isCurrent( table.find( C ) ) );
+        assertTrue( table.isCurrent( table.find( D ) ) );
+    }
+    
+    public void testGenerationWrap() {
+        TranspositionTable table = new TranspositionTable( 1 << 10 );
+        table.store( A, 7, 0 );
+        for ( int i = 1; i < ( 1 << 14 ); i++ ) {
+            table.nextGeneration();
+            assertFalse( table.isCurrent( table.find( A ) ) );
+        }
+        
+        // the generation the entry was stored in comes round again
+        table.nextGeneration();
+        assertEquals( TranspositionTable.MISSING, table.find( A ) );
+        assertEquals( 0, table.size() );
+        assertEquals( 1 << 14, table.getLookups() );
+    }
+    
+    public void testStatistics() {
+        TranspositionTable table = new TranspositionTable( 1 << 10 );
+        assertEquals( 64, table.getCapacity() );
+        assertEquals( 0.0, table.getHitRate() );
+        for ( long hash = 1; hash <= 16; hash++ ) {
+            table.store( hash, 0, 0 );
+        }
+        assertEquals( 16, table.size() );
+        assertEquals( 0.25, table.getOccupancy() );
+        
+        for ( long hash = 1; hash <= 32; hash++ ) {
+            table.find( hash );
+        }
+        assertEquals( 32, table.getLookups() );
+        assertEquals( 16, table.getHits() );
+        assertEquals( 0.5, table.getHitRate() );
+        
+        table.clear();
+        assertEquals( 0, table.size() );
+        assertEquals( 0, table.getLookups() );
+        assertEquals( 0, table.getHits() );
+        assertEquals( TranspositionTable.MISSING, table.find( 1 ) );
+    }
+    
+    public void testBudget() {
+        assertEquals( 0, TranspositionTable.getCapacity(
+                TranspositionTable.MIN_BYTES - 1 ) );
+        try {
+            new TranspositionTable( TranspositionTable.MIN_BYTES - 1 );
+            fail( "Made a table over its budget" );
+        } catch ( IllegalArgumentException e ) {
+            // expected
+        }
+        
+        int[] budgets = { TranspositionTable.MIN_BYTES, 100, 1000, 4096,
+                ( 1 << 20 ) + 5 };
+        for ( int bytes : budgets ) {
+            TranspositionTable table = new TranspositionTable( bytes );
+            assertTrue( table.getBytes() <= bytes );
+            assertTrue( table.getBytes() * 2 > bytes );
+            assertEquals( TranspositionTable.getCapacity( bytes ),
+                    table.getCapacity() );
+        }
+    }
+    
+    public void testBadDepth() {
+        TranspositionTable table = new TranspositionTable( 1 << 10 );
+        table.store( A, 0xffff, 0 );
+        assertEquals( 0xffff, TranspositionTable.getDepth( table.find( A ) ) );
+        int[] depths = { -1, 0x10000 };
+        for ( int depth : depths ) {
+            try {
+                table.store( B, depth, 0 );
+                fail( "Stored depth " + depth );
+            } catch ( IllegalArgumentException e ) {
+                // expected
+            }
+        }
+        assertEquals( TranspositionTable.MISSING, table.find( B ) );
+    }
+    
+    public void testIdaStarZeroHeuristic() throws Exception {
+        Heuristic zero = new Heuristic() {
+            public int estimate( int[] cells ) {
+                return 0;
+            }
+        };
+        
+        // with no estimate to cut it off, a search reaches every bound, and
+        // the cache must not prune a position reached with fewer moves
+        for ( boolean reducing : new boolean[] { true, false } ) {
+            Level level = SolverTest.loadLevel( 1 );
+            IdaStarSolver solver = new IdaStarSolver( level, zero );
+            solver.setReducing( reducing );
+            SolverTest.assertSolves( solver, SolverTest.LEVEL_1_MOVES );
+            assertTrue( solver.getTable().getHits() > 0 );
+        }
+        SolverTest.assertSolves( new IdaStarSolver(
+                SolverTest.loadLevel( 10 ), zero ),
+                SolverTest.LEVEL_10_MOVES );
+    }
+    
+} // TranspositionTableTest